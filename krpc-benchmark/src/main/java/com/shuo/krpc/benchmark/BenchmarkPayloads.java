@@ -0,0 +1,84 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.constant.RpcConstant;
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark Payloads
+ * <p>
+ * Builds the requests, responses and provider lists shared by the benchmarks, shaped like
+ * ordinary service traffic: a small domain object as the argument and the result.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class BenchmarkPayloads {
+
+    /**
+     * A typical domain object
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class User implements Serializable {
+
+        private long id;
+
+        private String name;
+
+        private String email;
+
+        private List<String> roles;
+    }
+
+    public static User createUser() {
+        List<String> roles = new ArrayList<>();
+        roles.add("admin");
+        roles.add("developer");
+        return new User(10001L, "shuo", "shuo@example.com", roles);
+    }
+
+    public static RpcRequest createRequest() {
+        return RpcRequest.builder()
+                .serviceName(BenchmarkService.class.getName())
+                .methodName("echo")
+                .serviceVersion(RpcConstant.DEFAULT_SERVICE_VERSION)
+                .parameterTypes(new Class[]{User.class})
+                .args(new Object[]{createUser()})
+                .build();
+    }
+
+    public static RpcResponse createResponse() {
+        RpcResponse rpcResponse = new RpcResponse();
+        rpcResponse.setData(createUser());
+        rpcResponse.setDataType(User.class);
+        rpcResponse.setMessage("ok");
+        return rpcResponse;
+    }
+
+    /**
+     * Create a list of providers of the benchmark service.
+     *
+     * @param size The number of providers.
+     * @return The providers, listening on consecutive ports.
+     */
+    public static List<ServiceMetaInfo> createServiceMetaInfoList(int size) {
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceName(BenchmarkService.class.getName());
+            serviceMetaInfo.setServiceHost("10.0.0." + (i % 250 + 1));
+            serviceMetaInfo.setServicePort(8080 + i);
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+        return serviceMetaInfoList;
+    }
+}
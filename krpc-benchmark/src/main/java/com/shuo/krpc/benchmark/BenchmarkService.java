@@ -0,0 +1,29 @@
+package com.shuo.krpc.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Benchmark Service
+ * <p>
+ * The service called by the round-trip benchmarks.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public interface BenchmarkService {
+
+    /**
+     * Return the user unchanged.
+     *
+     * @param user The user to echo.
+     * @return The same user.
+     */
+    BenchmarkPayloads.User echo(BenchmarkPayloads.User user);
+
+    /**
+     * Return the user unchanged, asynchronously.
+     *
+     * @param user The user to echo.
+     * @return A future of the same user.
+     */
+    CompletableFuture<BenchmarkPayloads.User> echoAsync(BenchmarkPayloads.User user);
+}
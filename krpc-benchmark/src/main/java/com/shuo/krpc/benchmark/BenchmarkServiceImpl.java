@@ -0,0 +1,21 @@
+package com.shuo.krpc.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Benchmark Service Implementation
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class BenchmarkServiceImpl implements BenchmarkService {
+
+    @Override
+    public BenchmarkPayloads.User echo(BenchmarkPayloads.User user) {
+        return user;
+    }
+
+    @Override
+    public CompletableFuture<BenchmarkPayloads.User> echoAsync(BenchmarkPayloads.User user) {
+        return CompletableFuture.completedFuture(user);
+    }
+}
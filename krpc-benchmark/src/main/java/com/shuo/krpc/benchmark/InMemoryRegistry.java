@@ -0,0 +1,69 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.Registry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-Memory Registry
+ * <p>
+ * A registry stand-in that keeps service nodes in process memory, so that round-trip benchmarks
+ * run offline without an etcd, ZooKeeper or Redis server. It is registered under the
+ * {@code memory} key through the custom SPI directory.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class InMemoryRegistry implements Registry {
+
+    /**
+     * Service nodes, keyed by service key
+     */
+    private final Map<String, List<ServiceMetaInfo>> serviceMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(RegistryConfig registryConfig) {
+    }
+
+    @Override
+    public void register(ServiceMetaInfo serviceMetaInfo) {
+        List<ServiceMetaInfo> serviceMetaInfoList = serviceMap.computeIfAbsent(
+                serviceMetaInfo.getServiceKey(), key -> new CopyOnWriteArrayList<>());
+        serviceMetaInfoList.removeIf(metaInfo ->
+                metaInfo.getServiceNodeKey().equals(serviceMetaInfo.getServiceNodeKey()));
+        serviceMetaInfoList.add(serviceMetaInfo);
+    }
+
+    @Override
+    public void unregister(ServiceMetaInfo serviceMetaInfo) {
+        List<ServiceMetaInfo> serviceMetaInfoList =
+                serviceMap.get(serviceMetaInfo.getServiceKey());
+        if (serviceMetaInfoList != null) {
+            serviceMetaInfoList.removeIf(metaInfo ->
+                    metaInfo.getServiceNodeKey().equals(serviceMetaInfo.getServiceNodeKey()));
+        }
+    }
+
+    @Override
+    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+        return serviceMap.getOrDefault(serviceKey, Collections.emptyList());
+    }
+
+    @Override
+    public void destroy() {
+        serviceMap.clear();
+    }
+
+    @Override
+    public void sendHeartBeat() {
+    }
+
+    @Override
+    public void watch(String serviceNodeKey) {
+    }
+}
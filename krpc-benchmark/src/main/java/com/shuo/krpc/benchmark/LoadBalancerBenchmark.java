@@ -0,0 +1,64 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.loadbalancer.LoadBalancer;
+import com.shuo.krpc.loadbalancer.LoadBalancerFactory;
+import com.shuo.krpc.loadbalancer.LoadBalancerKeys;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load Balancer Benchmark
+ * <p>
+ * Measures provider selection of every load balancer over provider lists of different sizes.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBalancerBenchmark {
+
+    @Param({LoadBalancerKeys.ROUND_ROBIN, LoadBalancerKeys.RANDOM,
+            LoadBalancerKeys.CONSISTENT_HASHING, LoadBalancerKeys.LEAST_ACTIVE,
+            LoadBalancerKeys.P2C_EWMA, LoadBalancerKeys.WEIGHTED_ROUND_ROBIN})
+    private String loadBalancerKey;
+
+    @Param({"3", "30", "300"})
+    private int providerCount;
+
+    private LoadBalancer loadBalancer;
+
+    private List<ServiceMetaInfo> serviceMetaInfoList;
+
+    private Map<String, Object> requestParams;
+
+    @Setup
+    public void setup() {
+        loadBalancer = LoadBalancerFactory.getInstance(loadBalancerKey);
+        serviceMetaInfoList = BenchmarkPayloads.createServiceMetaInfoList(providerCount);
+        requestParams = Collections.singletonMap("methodName", "echo");
+    }
+
+    @Benchmark
+    public ServiceMetaInfo select() {
+        return loadBalancer.select(requestParams, serviceMetaInfoList);
+    }
+}
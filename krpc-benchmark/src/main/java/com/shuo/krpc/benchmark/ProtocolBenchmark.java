@@ -0,0 +1,83 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.protocol.ProtocolConstant;
+import com.shuo.krpc.protocol.ProtocolMessage;
+import com.shuo.krpc.protocol.ProtocolMessageDecoder;
+import com.shuo.krpc.protocol.ProtocolMessageEncoder;
+import com.shuo.krpc.protocol.ProtocolMessageSerializerEnum;
+import com.shuo.krpc.protocol.ProtocolMessageStatusEnum;
+import com.shuo.krpc.protocol.ProtocolMessageTypeEnum;
+import com.shuo.krpc.serializer.SerializerKeys;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol Benchmark
+ * <p>
+ * Measures encoding and decoding of a request message, including serialization of its body,
+ * for every serializer.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+
+    @Param({SerializerKeys.JDK, SerializerKeys.JSON, SerializerKeys.KRYO, SerializerKeys.HESSIAN})
+    private String serializer;
+
+    private ProtocolMessage<RpcRequest> protocolMessage;
+
+    private Buffer encodedBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum.getEnumByValue(serializer)
+                .getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
+        header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+        header.setRequestId(1L);
+        protocolMessage = new ProtocolMessage<>(header, BenchmarkPayloads.createRequest());
+        encodedBuffer = ProtocolMessageEncoder.encode(protocolMessage);
+    }
+
+    @Benchmark
+    public Buffer encode() throws IOException {
+        return ProtocolMessageEncoder.encode(protocolMessage);
+    }
+
+    @Benchmark
+    public int encodePooled() throws IOException {
+        ByteBuf byteBuf = ProtocolMessageEncoder.encodePooled(protocolMessage);
+        int length = byteBuf.readableBytes();
+        byteBuf.release();
+        return length;
+    }
+
+    @Benchmark
+    public ProtocolMessage<?> decode() throws IOException {
+        return ProtocolMessageDecoder.decode(encodedBuffer);
+    }
+}
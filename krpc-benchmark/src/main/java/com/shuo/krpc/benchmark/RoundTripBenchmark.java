@@ -0,0 +1,111 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.config.RpcConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.proxy.ServiceProxyFactory;
+import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.registry.Registry;
+import com.shuo.krpc.registry.RegistryFactory;
+import com.shuo.krpc.serializer.SerializerKeys;
+import com.shuo.krpc.server.tcp.VertxTcpClient;
+import com.shuo.krpc.server.tcp.VertxTcpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round Trip Benchmark
+ * <p>
+ * Measures throughput and latency of complete calls through a service proxy to a
+ * {@link VertxTcpServer} running in the same process. Providers are found through the
+ * {@link InMemoryRegistry}, so no external registry is needed. Run with {@code -t} to add
+ * concurrent callers.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+    private static final String HOST = "localhost";
+
+    private static final int PORT = 18100;
+
+    @Param({SerializerKeys.JDK, SerializerKeys.KRYO})
+    private String serializer;
+
+    private BenchmarkService benchmarkService;
+
+    private BenchmarkPayloads.User user;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        RpcConfig rpcConfig = new RpcConfig();
+        rpcConfig.setServerHost(HOST);
+        rpcConfig.setServerPort(PORT);
+        rpcConfig.setSerializer(serializer);
+        rpcConfig.getRegistryConfig().setRegistry("memory");
+        rpcConfig.getRegistryConfig().setDiscoverySnapshot(false);
+        RpcApplication.init(rpcConfig);
+
+        // Provider side
+        String serviceName = BenchmarkService.class.getName();
+        LocalRegistry.register(serviceName, BenchmarkServiceImpl.class);
+        Registry registry = RegistryFactory.getInstance(rpcConfig.getRegistryConfig()
+                .getRegistry());
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName(serviceName);
+        serviceMetaInfo.setServiceHost(HOST);
+        serviceMetaInfo.setServicePort(PORT);
+        registry.register(serviceMetaInfo);
+        new VertxTcpServer().doStart(PORT);
+
+        // Consumer side, waiting until the server accepts calls
+        benchmarkService = ServiceProxyFactory.getProxy(BenchmarkService.class);
+        user = BenchmarkPayloads.createUser();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (true) {
+            try {
+                benchmarkService.echo(user);
+                break;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100L);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        VertxTcpClient.close();
+    }
+
+    @Benchmark
+    public BenchmarkPayloads.User syncCall() {
+        return benchmarkService.echo(user);
+    }
+
+    @Benchmark
+    public BenchmarkPayloads.User asyncCall() {
+        return benchmarkService.echoAsync(user).join();
+    }
+}
@@ -0,0 +1,80 @@
+package com.shuo.krpc.benchmark;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.serializer.Serializer;
+import com.shuo.krpc.serializer.SerializerFactory;
+import com.shuo.krpc.serializer.SerializerKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializer Benchmark
+ * <p>
+ * Measures each serializer on a request carrying a domain object argument and on a response
+ * carrying the same object as its data.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({SerializerKeys.JDK, SerializerKeys.JSON, SerializerKeys.KRYO, SerializerKeys.HESSIAN})
+    private String serializerKey;
+
+    private Serializer serializer;
+
+    private RpcRequest rpcRequest;
+
+    private RpcResponse rpcResponse;
+
+    private byte[] requestBytes;
+
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        serializer = SerializerFactory.getInstance(serializerKey);
+        rpcRequest = BenchmarkPayloads.createRequest();
+        rpcResponse = BenchmarkPayloads.createResponse();
+        requestBytes = serializer.serialize(rpcRequest);
+        responseBytes = serializer.serialize(rpcResponse);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() throws IOException {
+        return serializer.serialize(rpcRequest);
+    }
+
+    @Benchmark
+    public RpcRequest deserializeRequest() throws IOException {
+        return serializer.deserialize(requestBytes, RpcRequest.class);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws IOException {
+        return serializer.serialize(rpcResponse);
+    }
+
+    @Benchmark
+    public RpcResponse deserializeResponse() throws IOException {
+        return serializer.deserialize(responseBytes, RpcResponse.class);
+    }
+}
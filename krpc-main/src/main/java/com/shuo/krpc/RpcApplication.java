@@ -1,13 +1,18 @@
 package com.shuo.krpc;
 
+import cn.hutool.core.util.StrUtil;
 import com.shuo.krpc.config.RegistryConfig;
 import com.shuo.krpc.config.RpcConfig;
 import com.shuo.krpc.constant.RpcConstant;
+import com.shuo.krpc.registry.DiscoveryFrontend;
 import com.shuo.krpc.registry.Registry;
 import com.shuo.krpc.registry.RegistryFactory;
 import com.shuo.krpc.utils.ConfigUtils;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * RPC Application
  * Double-checked locking singleton with lazy initialization
@@ -33,9 +38,33 @@ public class RpcApplication {
         registry.init(registryConfig);
         log.info("registry init, config = {}", registryConfig);
 
+        // Serve the last known providers until the registry has been asked again
+        if (registryConfig.isDiscoverySnapshot()) {
+            DiscoveryFrontend.getInstance(registry, registryConfig)
+                    .enableSnapshot(getDiscoverySnapshotFile(newRpcConfig));
+        }
+
         Runtime.getRuntime().addShutdownHook(new Thread(registry::destroy));
     }
 
+    /**
+     * Resolve the discovery snapshot file, defaulting to one named after the application and
+     * registry so that processes sharing a machine do not overwrite each other's snapshot.
+     *
+     * @param rpcConfig The configuration.
+     * @return The snapshot file.
+     */
+    private static Path getDiscoverySnapshotFile(RpcConfig rpcConfig) {
+        RegistryConfig registryConfig = rpcConfig.getRegistryConfig();
+        if (StrUtil.isNotBlank(registryConfig.getDiscoverySnapshotFile())) {
+            return Paths.get(registryConfig.getDiscoverySnapshotFile());
+        }
+        String fileName = String.format("%s-%s-%08x.json", rpcConfig.getName(),
+                registryConfig.getRegistry(), String.valueOf(registryConfig.getAddress())
+                        .hashCode());
+        return Paths.get(System.getProperty("user.home"), ".krpc", fileName);
+    }
+
     /**
      * Initialization
      */
@@ -10,6 +10,7 @@ import com.shuo.krpc.registry.Registry;
 import com.shuo.krpc.registry.RegistryFactory;
 import com.shuo.krpc.server.tcp.VertxTcpServer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -39,23 +40,30 @@ public class ProviderBootstrap {
         final RpcConfig rpcConfig = RpcApplication.getRpcConfig();
 
         // Register services
+        RegistryConfig registryConfig = rpcConfig.getRegistryConfig();
+        Registry registry = RegistryFactory.getInstance(registryConfig.getRegistry());
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
         for (ServiceRegistrationInfo<?> serviceRegistrationInfo : serviceRegistrationInfoList) {
             String serviceName = serviceRegistrationInfo.getServiceName();
-            // Local registration
-            LocalRegistry.register(serviceName, serviceRegistrationInfo.getImplClass());
+            // Local registration, which also sets up the service instances and invoker table
+            LocalRegistry.register(serviceName, serviceRegistrationInfo.getImplClass(),
+                    serviceRegistrationInfo.getScope(), serviceRegistrationInfo.getPoolSize());
 
-            // Register service with the registry center
-            RegistryConfig registryConfig = rpcConfig.getRegistryConfig();
-            Registry registry = RegistryFactory.getInstance(registryConfig.getRegistry());
             ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
             serviceMetaInfo.setServiceName(serviceName);
             serviceMetaInfo.setServiceHost(rpcConfig.getServerHost());
             serviceMetaInfo.setServicePort(rpcConfig.getServerPort());
-            try {
-                registry.register(serviceMetaInfo);
-            } catch (Exception e) {
-                throw new RuntimeException("Service registration failed for " + serviceName, e);
-            }
+            serviceMetaInfo.setWeight(rpcConfig.getWeight());
+            serviceMetaInfo.setWarmup(rpcConfig.getWarmup());
+            serviceMetaInfo.setRegisterTime(System.currentTimeMillis());
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+
+        // Register all services with the registry center in one batch
+        try {
+            registry.registerAll(serviceMetaInfoList);
+        } catch (Exception e) {
+            throw new RuntimeException("Service registration failed", e);
         }
 
         // Start the server
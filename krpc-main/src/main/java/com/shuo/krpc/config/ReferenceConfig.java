@@ -0,0 +1,28 @@
+package com.shuo.krpc.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference Configuration
+ * <p>
+ * Settings of a single service reference (consumer proxy). Values left unset fall back to the
+ * global {@link RpcConfig}.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Data
+public class ReferenceConfig {
+
+    /**
+     * Call timeout in milliseconds for all methods of the service
+     */
+    private Long timeout;
+
+    /**
+     * Call timeouts in milliseconds, keyed by method name
+     */
+    private Map<String, Long> methodTimeouts = new HashMap<>();
+}
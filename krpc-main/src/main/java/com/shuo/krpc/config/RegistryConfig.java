@@ -34,4 +34,69 @@ public class RegistryConfig {
      * timeout
      */
     private Long timeout = 10000L;
+
+    /**
+     * Time in milliseconds a discovered provider list is cached by consumers
+     */
+    private Long discoveryCacheTtl = 30000L;
+
+    /**
+     * Time in milliseconds before the cache TTL runs out at which the list is refreshed in the
+     * background
+     */
+    private Long discoveryRefreshAhead = 5000L;
+
+    /**
+     * Time in milliseconds a service without providers is remembered as missing
+     */
+    private Long discoveryNegativeTtl = 2000L;
+
+    /**
+     * Whether consumers persist discovered providers to disk and load them at startup
+     */
+    private boolean discoverySnapshot = true;
+
+    /**
+     * Path of the discovery snapshot file, by default a file under ~/.krpc named after the
+     * application and registry
+     */
+    private String discoverySnapshotFile;
+
+    /**
+     * Gossip registry: host advertised to other members, by default the local address
+     */
+    private String gossipHost;
+
+    /**
+     * Gossip registry: UDP port the member listens on, or 0 for any free port
+     */
+    private Integer gossipPort = 7946;
+
+    /**
+     * Gossip registry: protocol period in milliseconds, in which one member is probed
+     */
+    private Long gossipInterval = 1000L;
+
+    /**
+     * Gossip registry: time in milliseconds to wait for a direct ack before asking other members
+     * to probe
+     */
+    private Long gossipPingTimeout = 500L;
+
+    /**
+     * Gossip registry: number of members asked to probe a member that missed its direct ack
+     */
+    private Integer gossipIndirectChecks = 3;
+
+    /**
+     * Gossip registry: time a suspect member has to refute before it is declared dead, in
+     * protocol periods per order of magnitude of the member count
+     */
+    private Integer gossipSuspicionMultiplier = 4;
+
+    /**
+     * Gossip registry: number of times each update is piggy-backed, per order of magnitude of
+     * the member count
+     */
+    private Integer gossipRetransmitMultiplier = 4;
 }
@@ -1,11 +1,16 @@
 package com.shuo.krpc.config;
 
+import com.shuo.krpc.constant.RpcConstant;
 import com.shuo.krpc.fault.retry.RetryStrategyKeys;
 import com.shuo.krpc.fault.tolerance.ToleranceStrategyKeys;
 import com.shuo.krpc.loadbalancer.LoadBalancerKeys;
 import com.shuo.krpc.serializer.SerializerKeys;
+import com.shuo.krpc.server.dispatcher.DispatcherKeys;
 import lombok.Data;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * RPC Configuration
  *
@@ -34,6 +39,16 @@ public class RpcConfig {
      */
     private Integer serverPort = 8080;
 
+    /**
+     * Server weight published to the registry, relative to other providers
+     */
+    private Integer weight = RpcConstant.DEFAULT_SERVICE_WEIGHT;
+
+    /**
+     * Server warmup period in milliseconds over which its weight ramps up (0 for none)
+     */
+    private Long warmup = 0L;
+
     /**
      * Serializer
      */
@@ -54,6 +69,42 @@ public class RpcConfig {
      */
     private String tolerantStrategy = ToleranceStrategyKeys.FAIL_FAST;
 
+    /**
+     * Maximum number of other providers a failed call is issued to by the failOver tolerance
+     * strategy
+     */
+    private Integer failOverAttempts = 2;
+
+    /**
+     * Number of persistent connections kept per provider address
+     */
+    private Integer connectionPoolSize = 2;
+
+    /**
+     * Default call timeout in milliseconds (0 to wait without limit)
+     */
+    private Long timeout = 5000L;
+
+    /**
+     * Call timeouts in milliseconds, keyed by service name or serviceName#methodName
+     */
+    private Map<String, Long> timeouts = new HashMap<>();
+
+    /**
+     * Server dispatcher running service invocations
+     */
+    private String dispatcher = DispatcherKeys.WORKER;
+
+    /**
+     * Number of server worker threads
+     */
+    private Integer workerThreads = 200;
+
+    /**
+     * Capacity of the server worker queue
+     */
+    private Integer workerQueueCapacity = 1024;
+
     /**
      * Developer mock mode
      */
@@ -16,4 +16,9 @@ public interface RpcConstant {
      * Default service version number
      */
     String DEFAULT_SERVICE_VERSION = "1.0";
+
+    /**
+     * Default provider weight
+     */
+    int DEFAULT_SERVICE_WEIGHT = 100;
 }
@@ -5,8 +5,10 @@ import com.shuo.krpc.model.RpcResponse;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Fixed Interval Retry Strategy
@@ -19,6 +21,16 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class FixedIntervalRetryStrategy implements RetryStrategy {
 
+    /**
+     * Wait time between attempts in seconds
+     */
+    private static final long WAIT_SECONDS = 3L;
+
+    /**
+     * Maximum number of attempts, including the first one
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
     /**
      * Perform retry with a fixed interval.
      *
@@ -33,8 +45,8 @@ public class FixedIntervalRetryStrategy implements RetryStrategy {
     public RpcResponse doRetry(Callable<RpcResponse> callable) throws ExecutionException, RetryException {
         Retryer<RpcResponse> retryer = RetryerBuilder.<RpcResponse>newBuilder()
                 .retryIfExceptionOfType(Exception.class)
-                .withWaitStrategy(WaitStrategies.fixedWait(3L, TimeUnit.SECONDS))
-                .withStopStrategy(StopStrategies.stopAfterAttempt(3))
+                .withWaitStrategy(WaitStrategies.fixedWait(WAIT_SECONDS, TimeUnit.SECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(MAX_ATTEMPTS))
                 .withRetryListener(new RetryListener() {
                     @Override
                     public <V> void onRetry(Attempt<V> attempt) {
@@ -44,4 +56,38 @@ public class FixedIntervalRetryStrategy implements RetryStrategy {
                 .build();
         return retryer.call(callable);
     }
-}
\ No newline at end of file
+
+    /**
+     * Perform asynchronous retry with a fixed interval.
+     * <p>
+     * Failed attempts are rescheduled on a delayed executor instead of sleeping, with the same wait
+     * time and attempt limit as {@link #doRetry(Callable)}.
+     *
+     * @param supplier The operation to be retried.
+     * @return A future of the response, failed with the last error if all attempts fail.
+     */
+    @Override
+    public CompletableFuture<RpcResponse> doRetryAsync(
+            Supplier<CompletableFuture<RpcResponse>> supplier) {
+        CompletableFuture<RpcResponse> resultFuture = new CompletableFuture<>();
+        attemptAsync(supplier, 1, resultFuture);
+        return resultFuture;
+    }
+
+    private void attemptAsync(Supplier<CompletableFuture<RpcResponse>> supplier, int attemptNumber,
+                              CompletableFuture<RpcResponse> resultFuture) {
+        RetryStrategy.super.doRetryAsync(supplier).whenComplete((rpcResponse, e) -> {
+            if (e == null) {
+                resultFuture.complete(rpcResponse);
+                return;
+            }
+            log.info("Retry attempt number: {}", attemptNumber);
+            if (attemptNumber >= MAX_ATTEMPTS) {
+                resultFuture.completeExceptionally(e);
+                return;
+            }
+            CompletableFuture.runAsync(() -> attemptAsync(supplier, attemptNumber + 1, resultFuture),
+                    CompletableFuture.delayedExecutor(WAIT_SECONDS, TimeUnit.SECONDS));
+        });
+    }
+}
@@ -3,6 +3,8 @@ package com.shuo.krpc.fault.retry;
 import com.shuo.krpc.model.RpcResponse;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Retry Strategy Interface
@@ -25,4 +27,23 @@ public interface RetryStrategy {
      * @throws Exception If the operation fails after all retries.
      */
     RpcResponse doRetry(Callable<RpcResponse> callable) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Asynchronous retry
+     * <p>
+     * This method starts the given asynchronous operation and, based on the implemented strategy,
+     * starts it again when the returned future fails. No thread is parked while waiting between
+     * attempts. The default implementation makes a single attempt.
+     *
+     * @param supplier The operation to be retried, producing a new future on every attempt.
+     * @return A future of the response of the retried operation.
+     */
+    default CompletableFuture<RpcResponse> doRetryAsync(
+            Supplier<CompletableFuture<RpcResponse>> supplier) {
+        try {
+            return supplier.get();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
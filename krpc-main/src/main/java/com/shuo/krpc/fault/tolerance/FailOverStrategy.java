@@ -1,25 +1,118 @@
 package com.shuo.krpc.fault.tolerance;
 
+import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.server.tcp.VertxTcpClient;
+import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Fail Over Strategy
  * <p>
- * This strategy attempts to recover by trying an alternative solution or another available
- * service instance.
+ * This strategy attempts to recover by issuing the failed call again to another available
+ * service instance. Instances are taken from the providers discovered for the call, skipping
+ * those it has already failed on, so no second registry lookup is made. The call is reissued to
+ * at most {@code failOverAttempts} other instances before the last failure is raised.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
+@Slf4j
 public class FailOverStrategy implements ToleranceStrategy {
 
     @Override
     public RpcResponse doTolerance(Map<String, Object> context, Exception e) {
-        // Log the error and attempt to switch to an alternative solution
-        System.err.println("Failing over due to exception: " + e.getMessage() + ". Trying " +
-                "alternative instance.");
-        // todo: Simulate switching to an alternative (implementation-specific)
+        Exception lastException = e;
+        int maxAttempts = RpcApplication.getRpcConfig().getFailOverAttempts();
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            ServiceMetaInfo serviceMetaInfo = nextServiceNode(context);
+            if (serviceMetaInfo == null) {
+                break;
+            }
+            log.warn("Failing over to {} after: {}", serviceMetaInfo.getServiceAddress(),
+                    lastException.getMessage());
+            try {
+                return VertxTcpClient.doRequest((RpcRequest) context.get(
+                                ToleranceContextKeys.RPC_REQUEST), serviceMetaInfo,
+                        (Long) context.get(ToleranceContextKeys.TIMEOUT));
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Service fault", interruptedException);
+            } catch (Exception attemptException) {
+                getFailedNodes(context).add(serviceMetaInfo);
+                lastException = attemptException;
+            }
+        }
+        throw new RuntimeException("Service fault", lastException);
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> doToleranceAsync(Map<String, Object> context,
+                                                           Throwable e) {
+        return failOverAsync(context, e, RpcApplication.getRpcConfig().getFailOverAttempts());
+    }
+
+    /**
+     * Issue the call to the next instance without blocking, failing over again from its
+     * callback if it fails too.
+     */
+    private CompletableFuture<RpcResponse> failOverAsync(Map<String, Object> context,
+                                                         Throwable e, int remainingAttempts) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null
+                ? e.getCause() : e;
+        ServiceMetaInfo serviceMetaInfo = remainingAttempts > 0 ? nextServiceNode(context) : null;
+        if (serviceMetaInfo == null) {
+            return CompletableFuture.failedFuture(new RuntimeException("Service fault", cause));
+        }
+        log.warn("Failing over to {} after: {}", serviceMetaInfo.getServiceAddress(),
+                cause.getMessage());
+        return VertxTcpClient.doRequestAsync((RpcRequest) context.get(
+                                ToleranceContextKeys.RPC_REQUEST), serviceMetaInfo,
+                        (Long) context.get(ToleranceContextKeys.TIMEOUT))
+                .exceptionallyCompose(attemptException -> {
+                    getFailedNodes(context).add(serviceMetaInfo);
+                    return failOverAsync(context, attemptException, remainingAttempts - 1);
+                });
+    }
+
+    /**
+     * Pick a discovered instance the call has not failed on, starting from a random one so that
+     * the calls failing over from one instance are spread over the others.
+     *
+     * @param context The tolerance context.
+     * @return The instance, or null if there is none left or the context lacks the providers.
+     */
+    @SuppressWarnings("unchecked")
+    private ServiceMetaInfo nextServiceNode(Map<String, Object> context) {
+        if (context == null || !context.containsKey(ToleranceContextKeys.RPC_REQUEST)) {
+            return null;
+        }
+        List<ServiceMetaInfo> serviceMetaInfoList =
+                (List<ServiceMetaInfo>) context.get(ToleranceContextKeys.SERVICE_NODES);
+        Set<ServiceMetaInfo> failedNodes = getFailedNodes(context);
+        if (serviceMetaInfoList == null || serviceMetaInfoList.isEmpty() || failedNodes == null) {
+            return null;
+        }
+        int size = serviceMetaInfoList.size();
+        int offset = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get((offset + i) % size);
+            if (!failedNodes.contains(serviceMetaInfo)) {
+                return serviceMetaInfo;
+            }
+        }
         return null;
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    private static Set<ServiceMetaInfo> getFailedNodes(Map<String, Object> context) {
+        return (Set<ServiceMetaInfo>) context.get(ToleranceContextKeys.FAILED_NODES);
+    }
+}
@@ -0,0 +1,33 @@
+package com.shuo.krpc.fault.tolerance;
+
+/**
+ * Tolerance Context Key Constants
+ * <p>
+ * Keys of the context the service proxy passes to a {@link ToleranceStrategy} when a call fails.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public interface ToleranceContextKeys {
+
+    /**
+     * The request of the failed call ({@link com.shuo.krpc.model.RpcRequest})
+     */
+    String RPC_REQUEST = "rpcRequest";
+
+    /**
+     * The providers discovered for the call ({@code List<ServiceMetaInfo>})
+     */
+    String SERVICE_NODES = "serviceNodes";
+
+    /**
+     * The providers the call has failed on ({@code Set<ServiceMetaInfo>}), added to by
+     * strategies that issue the call again
+     */
+    String FAILED_NODES = "failedNodes";
+
+    /**
+     * The call timeout in milliseconds ({@code Long}), or 0 to wait without limit
+     */
+    String TIMEOUT = "timeout";
+
+}
@@ -3,6 +3,8 @@ package com.shuo.krpc.fault.tolerance;
 import com.shuo.krpc.model.RpcResponse;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Tolerance Strategy Interface
@@ -20,9 +22,35 @@ public interface ToleranceStrategy {
      * This method is responsible for handling exceptions and implementing fault tolerance logic based on the
      * provided context and exception.
      *
-     * @param context The context used to pass data during the process.
+     * @param context The context used to pass data during the process, keyed by
+     *                {@link ToleranceContextKeys}.
      * @param e       The exception that occurred.
      * @return The response after performing fault tolerance.
      */
     RpcResponse doTolerance(Map<String, Object> context, Exception e);
+
+    /**
+     * Asynchronous Fault Tolerance
+     * <p>
+     * This method handles the failure of an asynchronous call. The default implementation applies
+     * {@link #doTolerance(Map, Exception)} to the underlying cause and returns its outcome as a
+     * future; strategies that need to issue further calls should override it so that they never
+     * block.
+     *
+     * @param context The context used to pass data during the process.
+     * @param e       The failure of the asynchronous call.
+     * @return A future of the response after performing fault tolerance.
+     */
+    default CompletableFuture<RpcResponse> doToleranceAsync(Map<String, Object> context,
+                                                            Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null
+                ? e.getCause() : e;
+        Exception exception = cause instanceof Exception
+                ? (Exception) cause : new RuntimeException(cause);
+        try {
+            return CompletableFuture.completedFuture(doTolerance(context, exception));
+        } catch (Exception toleranceException) {
+            return CompletableFuture.failedFuture(toleranceException);
+        }
+    }
 }
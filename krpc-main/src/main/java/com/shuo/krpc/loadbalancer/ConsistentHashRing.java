@@ -0,0 +1,139 @@
+package com.shuo.krpc.loadbalancer;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.ServiceSnapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent Hash Ring
+ * <p>
+ * An immutable hash ring built for one provider list. Virtual nodes are kept as a sorted array
+ * of murmur3 hashes with a parallel array of their owners, so a lookup is a binary search that
+ * needs no locking and can be shared by any number of threads.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+class ConsistentHashRing {
+
+    /**
+     * The provider list the ring was built from, in list order
+     */
+    private final ServiceMetaInfo[] nodes;
+
+    /**
+     * Version of the snapshot the ring was built from, or -1 if it was built from a plain list
+     */
+    private final long version;
+
+    /**
+     * Sorted virtual node hashes
+     */
+    private final int[] hashes;
+
+    /**
+     * Owner of each virtual node, parallel to {@link #hashes}
+     */
+    private final ServiceMetaInfo[] owners;
+
+    /**
+     * Virtual node hashes of each provider address, reused by the next rebuild
+     */
+    private final Map<String, int[]> addressHashes;
+
+    private ConsistentHashRing(ServiceMetaInfo[] nodes, long version, int[] hashes,
+                               ServiceMetaInfo[] owners, Map<String, int[]> addressHashes) {
+        this.nodes = nodes;
+        this.version = version;
+        this.hashes = hashes;
+        this.owners = owners;
+        this.addressHashes = addressHashes;
+    }
+
+    /**
+     * Build a ring for the provider list. Virtual node hashes of providers that were already on
+     * the previous ring are reused rather than recomputed.
+     *
+     * @param serviceMetaInfoList The providers.
+     * @param virtualNodeNum      The number of virtual nodes per provider.
+     * @param previous            The ring being replaced, or null.
+     * @return The new ring.
+     */
+    static ConsistentHashRing build(List<ServiceMetaInfo> serviceMetaInfoList, int virtualNodeNum,
+                                    ConsistentHashRing previous) {
+        ServiceMetaInfo[] nodes = serviceMetaInfoList.toArray(new ServiceMetaInfo[0]);
+        long version = serviceMetaInfoList instanceof ServiceSnapshot
+                ? ((ServiceSnapshot) serviceMetaInfoList).getVersion() : -1;
+        Map<String, int[]> addressHashes = new HashMap<>();
+        // Each virtual node packs its hash into the high bits and its provider index into the
+        // low bits, so one primitive sort orders the ring
+        long[] points = new long[nodes.length * virtualNodeNum];
+        int pointIndex = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            String address = nodes[i].getServiceAddress();
+            int[] nodeHashes = previous == null ? null : previous.addressHashes.get(address);
+            if (nodeHashes == null || nodeHashes.length != virtualNodeNum) {
+                nodeHashes = new int[virtualNodeNum];
+                for (int j = 0; j < virtualNodeNum; j++) {
+                    nodeHashes[j] = MurmurHash.hash32(address + "#" + j);
+                }
+            }
+            addressHashes.put(address, nodeHashes);
+            for (int nodeHash : nodeHashes) {
+                points[pointIndex++] = ((long) nodeHash << 32) | i;
+            }
+        }
+        Arrays.sort(points);
+
+        int[] hashes = new int[points.length];
+        ServiceMetaInfo[] owners = new ServiceMetaInfo[points.length];
+        for (int i = 0; i < points.length; i++) {
+            hashes[i] = (int) (points[i] >> 32);
+            owners[i] = nodes[(int) points[i]];
+        }
+        return new ConsistentHashRing(nodes, version, hashes, owners, addressHashes);
+    }
+
+    /**
+     * Whether the ring was built from exactly these providers.
+     *
+     * @param serviceMetaInfoList The current providers.
+     * @return true if the list is the same snapshot version, or holds the same provider objects
+     *         in the same order.
+     */
+    boolean isBuiltFrom(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (version != -1 && serviceMetaInfoList instanceof ServiceSnapshot) {
+            return ((ServiceSnapshot) serviceMetaInfoList).getVersion() == version;
+        }
+        if (serviceMetaInfoList.size() != nodes.length) {
+            return false;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (serviceMetaInfoList.get(i) != nodes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Select the owner of the first virtual node at or after the hash, wrapping around.
+     *
+     * @param hash The request hash.
+     * @return The selected provider.
+     */
+    ServiceMetaInfo select(int hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == hashes.length) {
+                index = 0;
+            }
+        }
+        return owners[index];
+    }
+}
@@ -1,10 +1,11 @@
 package com.shuo.krpc.loadbalancer;
 
+import cn.hutool.core.lang.hash.MurmurHash;
 import com.shuo.krpc.model.ServiceMetaInfo;
 
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Consistent Hash Load Balancer
@@ -13,26 +14,31 @@ import java.util.TreeMap;
  * requests to service instances in a manner that ensures minimal disruption when service
  * instances are added or removed. Virtual nodes are used to improve load distribution across
  * service instances.
+ * <p>
+ * The ring of each service is built once per provider list and published as an immutable
+ * {@link ConsistentHashRing}. It is only rebuilt when the provider list changes, reusing the
+ * virtual node hashes of the providers that remain, so selection is a lock-free binary search.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 public class ConsistentHashingLoadBalancer implements LoadBalancer {
 
     /**
-     * Consistent hash ring to store virtual nodes.
+     * Number of virtual nodes for each service instance.
      */
-    private final TreeMap<Integer, ServiceMetaInfo> virtualNodes = new TreeMap<>();
+    private static final int VIRTUAL_NODE_NUM = 100;
 
     /**
-     * Number of virtual nodes for each service instance.
+     * Hash rings keyed by service name and then service version
      */
-    private static final int VIRTUAL_NODE_NUM = 100;
+    private final Map<String, Map<String, ConsistentHashRing>> ringCache =
+            new ConcurrentHashMap<>();
 
     /**
      * Selects a service instance using consistent hashing.
      * <p>
-     * It builds a consistent hash ring with virtual nodes for each service instance and selects the
-     * closest virtual node greater than or equal to the hash of the request.
+     * It looks up the hash ring of the providers, rebuilding it if the provider list has changed,
+     * and selects the closest virtual node greater than or equal to the hash of the request.
      *
      * @param requestParams       The request parameters used to determine the selection.
      * @param serviceMetaInfoList The list of available service instances.
@@ -45,33 +51,44 @@ public class ConsistentHashingLoadBalancer implements LoadBalancer {
             return null;
         }
 
-        // Build the virtual node ring
-        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
-            for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
-                int hash = getHash(serviceMetaInfo.getServiceAddress() + "#" + i);
-                virtualNodes.put(hash, serviceMetaInfo);
-            }
-        }
-
-        // Get the hash value of the request
-        int hash = getHash(requestParams);
+        ConsistentHashRing ring = getRing(serviceMetaInfoList);
 
         // Select the closest virtual node greater than or equal to the request hash value
-        Map.Entry<Integer, ServiceMetaInfo> entry = virtualNodes.ceilingEntry(hash);
-        if (entry == null) {
-            // If no virtual node is greater than or equal to the request hash, return the first node in the ring
-            entry = virtualNodes.firstEntry();
+        return ring.select(getHash(requestParams));
+    }
+
+    /**
+     * Get the ring of the providers, building a new one when the list has changed.
+     *
+     * @param serviceMetaInfoList The list of available service instances.
+     * @return The ring matching the list.
+     */
+    private ConsistentHashRing getRing(List<ServiceMetaInfo> serviceMetaInfoList) {
+        ServiceMetaInfo first = serviceMetaInfoList.get(0);
+        String serviceName = String.valueOf(first.getServiceName());
+        Map<String, ConsistentHashRing> versionRings = ringCache.get(serviceName);
+        if (versionRings == null) {
+            versionRings = ringCache.computeIfAbsent(serviceName,
+                    key -> new ConcurrentHashMap<>());
+        }
+        String version = String.valueOf(first.getServiceVersion());
+        ConsistentHashRing ring = versionRings.get(version);
+        if (ring == null || !ring.isBuiltFrom(serviceMetaInfoList)) {
+            // Concurrent callers may both rebuild; either result is a valid ring for the list
+            ring = ConsistentHashRing.build(serviceMetaInfoList, VIRTUAL_NODE_NUM, ring);
+            versionRings.put(version, ring);
         }
-        return entry.getValue();
+        return ring;
     }
 
     /**
-     * Hash function to generate hash values.
+     * Hash function to generate hash values. The bytes of the key's string form are hashed with
+     * murmur3, the same hash the ring uses for its virtual nodes.
      *
      * @param key The key to be hashed.
      * @return The hash value of the key.
      */
     private int getHash(Object key) {
-        return key.hashCode();
+        return MurmurHash.hash32(String.valueOf(key));
     }
-}
\ No newline at end of file
+}
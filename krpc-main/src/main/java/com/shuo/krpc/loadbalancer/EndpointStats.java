@@ -0,0 +1,221 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Endpoint Statistics
+ * <p>
+ * Live call statistics of one provider address, recorded by the client transport and read by
+ * load-aware load balancers. Counters are striped so that many threads sending to the same
+ * provider do not contend on a single memory location.
+ * <p>
+ * Round-trip latency is tracked as a peak EWMA: a slower sample replaces the average at once,
+ * while faster samples pull it down with a weight that grows with the time since the previous
+ * sample. A provider starts at a penalty latency until its first call completes, failed calls
+ * are recorded at the penalty, and while no samples arrive the average decays towards the
+ * penalty. A provider that was slow and is no longer chosen is thus eventually tried again,
+ * while a new, idle or failing provider never looks faster than one that answers.
+ * <p>
+ * Once a provider has been idle for several decay times its statistics are indistinguishable
+ * from new ones, so they are dropped. This keeps the map from growing with every provider
+ * address the process has ever seen.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class EndpointStats {
+
+    /**
+     * Statistics keyed by provider host and then provider port
+     */
+    private static final Map<String, Map<Integer, EndpointStats>> STATS_MAP =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Time constant of the latency average decay
+     */
+    static final long DECAY_TIME_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Latency assumed for a provider without recent samples, and recorded for failed calls
+     */
+    static final long PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Idle time after which the statistics of a provider are dropped, by then within e^-6 of the
+     * penalty
+     */
+    static final long EXPIRE_TIME_NANOS = 6 * DECAY_TIME_NANOS;
+
+    /**
+     * Time before which no sweep for idle statistics is made
+     */
+    private static final AtomicLong NEXT_SWEEP_NANOS =
+            new AtomicLong(System.nanoTime() + EXPIRE_TIME_NANOS);
+
+    /**
+     * Number of calls sent and not yet completed
+     */
+    private final LongAdder activeCount = new LongAdder();
+
+    /**
+     * Latest latency average, replaced as a whole so updates need no locking
+     */
+    private final AtomicReference<Ewma> ewma =
+            new AtomicReference<>(new Ewma(PENALTY_NANOS, System.nanoTime(), false));
+
+    /**
+     * Get the statistics of a provider address, creating them on first use.
+     *
+     * @param serviceMetaInfo The provider.
+     * @return The statistics shared by all providers with the same host and port.
+     */
+    public static EndpointStats of(ServiceMetaInfo serviceMetaInfo) {
+        String host = String.valueOf(serviceMetaInfo.getServiceHost());
+        Integer port = serviceMetaInfo.getServicePort() == null ? 0
+                : serviceMetaInfo.getServicePort();
+        Map<Integer, EndpointStats> portStats = STATS_MAP.get(host);
+        if (portStats == null) {
+            portStats = STATS_MAP.computeIfAbsent(host, key -> new ConcurrentHashMap<>());
+        }
+        EndpointStats endpointStats = portStats.get(port);
+        if (endpointStats == null) {
+            endpointStats = portStats.computeIfAbsent(port, key -> new EndpointStats());
+            // New addresses are what grows the map, so they pay for sweeping it
+            long now = System.nanoTime();
+            long nextSweep = NEXT_SWEEP_NANOS.get();
+            if (now - nextSweep >= 0
+                    && NEXT_SWEEP_NANOS.compareAndSet(nextSweep, now + EXPIRE_TIME_NANOS)) {
+                evictIdle(now);
+            }
+        }
+        return endpointStats;
+    }
+
+    /**
+     * Drop the statistics of providers with no call in flight and no activity for
+     * {@link #EXPIRE_TIME_NANOS}. A caller that looked them up just before may record one call
+     * on the dropped statistics, which only costs that call's sample.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     */
+    static void evictIdle(long now) {
+        for (Map.Entry<String, Map<Integer, EndpointStats>> hostEntry : STATS_MAP.entrySet()) {
+            Map<Integer, EndpointStats> portStats = hostEntry.getValue();
+            portStats.values().removeIf(endpointStats -> endpointStats.isExpired(now));
+            if (portStats.isEmpty()) {
+                STATS_MAP.remove(hostEntry.getKey(), portStats);
+            }
+        }
+    }
+
+    private boolean isExpired(long now) {
+        return getActiveCount() == 0 && now - ewma.get().stamp > EXPIRE_TIME_NANOS;
+    }
+
+    /**
+     * Record a call being sent.
+     */
+    public void onSend() {
+        activeCount.increment();
+    }
+
+    /**
+     * Record a call completing successfully.
+     *
+     * @param latencyNanos The round-trip time of the call in nanoseconds.
+     */
+    public void onComplete(long latencyNanos) {
+        activeCount.decrement();
+        update(Math.max(latencyNanos, 0));
+    }
+
+    /**
+     * Record a call failing. Its round-trip time is not recorded, since a refused connection
+     * fails faster than any provider answers.
+     */
+    public void onFailure() {
+        activeCount.decrement();
+        update(PENALTY_NANOS);
+    }
+
+    private void update(double latency) {
+        long now = System.nanoTime();
+        while (true) {
+            Ewma current = ewma.get();
+            double cost;
+            if (!current.sampled || latency > current.cost) {
+                // The first sample replaces the penalty, and peak sensitivity reacts to a
+                // slowdown immediately
+                cost = latency;
+            } else {
+                double weight = decayWeight(now - current.stamp);
+                cost = current.cost * weight + latency * (1 - weight);
+            }
+            if (ewma.compareAndSet(current, new Ewma(cost, now, true))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of calls in flight to the provider.
+     *
+     * @return The number of outstanding calls.
+     */
+    public long getActiveCount() {
+        return activeCount.sum();
+    }
+
+    /**
+     * Peak EWMA of the round-trip latency, decayed towards the penalty to the current time.
+     *
+     * @return The latency average in nanoseconds, or the penalty if no call has completed.
+     */
+    public double getLatencyEwma() {
+        Ewma current = ewma.get();
+        if (!current.sampled) {
+            return PENALTY_NANOS;
+        }
+        double weight = decayWeight(System.nanoTime() - current.stamp);
+        return current.cost * weight + PENALTY_NANOS * (1 - weight);
+    }
+
+    /**
+     * Load score of the provider: the latency average scaled by the calls in flight, counting
+     * the call being placed.
+     *
+     * @return The score, lower is better.
+     */
+    public double getScore() {
+        return getLatencyEwma() * (getActiveCount() + 1);
+    }
+
+    private static double decayWeight(long elapsedNanos) {
+        return Math.exp(-(double) Math.max(elapsedNanos, 0) / DECAY_TIME_NANOS);
+    }
+
+    /**
+     * Latency average, the time it was last updated and whether it holds a recorded sample
+     */
+    private static final class Ewma {
+
+        private final double cost;
+
+        private final long stamp;
+
+        private final boolean sampled;
+
+        private Ewma(double cost, long stamp, boolean sampled) {
+            this.cost = cost;
+            this.stamp = stamp;
+            this.sampled = sampled;
+        }
+    }
+}
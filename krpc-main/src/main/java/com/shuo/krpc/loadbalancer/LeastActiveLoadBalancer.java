@@ -0,0 +1,59 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Least Active Load Balancer
+ * <p>
+ * This class implements a least-outstanding-requests strategy: it selects the service instance
+ * with the fewest calls in flight, as recorded in {@link EndpointStats} by the client transport.
+ * A slow instance accumulates outstanding calls and therefore receives fewer new ones. Ties are
+ * broken at random so that idle instances share the load evenly.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    /**
+     * Selects the service instance with the fewest outstanding calls.
+     *
+     * @param requestParams       The request parameters used to determine the selection (not
+     *                            used in this implementation).
+     * @param serviceMetaInfoList The list of available service instances.
+     * @return The selected ServiceMetaInfo instance, or null if the list is empty.
+     */
+    @Override
+    public ServiceMetaInfo select(Map<String, Object> requestParams,
+                                  List<ServiceMetaInfo> serviceMetaInfoList) {
+        int size = serviceMetaInfoList.size();
+        if (size == 0) {
+            return null;
+        }
+        // If only one service is available, return it directly.
+        if (size == 1) {
+            return serviceMetaInfoList.get(0);
+        }
+
+        ServiceMetaInfo selected = null;
+        long leastActive = Long.MAX_VALUE;
+        int tieCount = 0;
+        for (int i = 0; i < size; i++) {
+            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(i);
+            long active = EndpointStats.of(serviceMetaInfo).getActiveCount();
+            if (active < leastActive) {
+                leastActive = active;
+                selected = serviceMetaInfo;
+                tieCount = 1;
+            } else if (active == leastActive
+                    && ThreadLocalRandom.current().nextInt(++tieCount) == 0) {
+                // Reservoir sampling keeps each tied instance with equal probability
+                selected = serviceMetaInfo;
+            }
+        }
+        return selected;
+    }
+}
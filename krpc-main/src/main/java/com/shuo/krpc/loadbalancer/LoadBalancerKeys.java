@@ -10,5 +10,8 @@ public interface LoadBalancerKeys {
     String ROUND_ROBIN = "roundRobin";
     String RANDOM = "random";
     String CONSISTENT_HASHING = "consistentHashing";
+    String LEAST_ACTIVE = "leastActive";
+    String P2C_EWMA = "p2cEwma";
+    String WEIGHTED_ROUND_ROBIN = "weightedRoundRobin";
 
 }
@@ -0,0 +1,54 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Peak EWMA Load Balancer
+ * <p>
+ * This class implements the power-of-two-choices strategy: it samples two distinct service
+ * instances at random and selects the one with the lower load score, the peak EWMA of its
+ * round-trip latency multiplied by its outstanding calls (see {@link EndpointStats}). Sampling
+ * two instances instead of scanning all of them keeps the cost constant and avoids every client
+ * herding onto the same least loaded instance.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    /**
+     * Selects the less loaded of two randomly sampled service instances.
+     *
+     * @param requestParams       The request parameters used to determine the selection (not
+     *                            used in this implementation).
+     * @param serviceMetaInfoList The list of available service instances.
+     * @return The selected ServiceMetaInfo instance, or null if the list is empty.
+     */
+    @Override
+    public ServiceMetaInfo select(Map<String, Object> requestParams,
+                                  List<ServiceMetaInfo> serviceMetaInfoList) {
+        int size = serviceMetaInfoList.size();
+        if (size == 0) {
+            return null;
+        }
+        // If only one service is available, return it directly.
+        if (size == 1) {
+            return serviceMetaInfoList.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        // Draw the second index from the remaining instances so the two are distinct
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceMetaInfo firstNode = serviceMetaInfoList.get(first);
+        ServiceMetaInfo secondNode = serviceMetaInfoList.get(second);
+        return EndpointStats.of(secondNode).getScore() < EndpointStats.of(firstNode).getScore()
+                ? secondNode : firstNode;
+    }
+}
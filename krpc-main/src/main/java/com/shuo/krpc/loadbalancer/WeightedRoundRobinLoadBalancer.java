@@ -0,0 +1,76 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weighted Round Robin Load Balancer
+ * <p>
+ * This class implements the smooth weighted round-robin strategy of Nginx: each service instance
+ * receives requests in proportion to the weight it published at registration, interleaved
+ * evenly rather than in bursts. An instance inside its warmup period has its weight ramped up
+ * linearly from its registration time.
+ * <p>
+ * The schedule of each service is kept across calls and rebuilt only when the provider list
+ * changes. Instances that remain on the list keep their state, so a discovery refresh does not
+ * reset the rotation.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class WeightedRoundRobinLoadBalancer implements LoadBalancer {
+
+    /**
+     * Schedules keyed by service name and then service version
+     */
+    private final Map<String, Map<String, WeightedRoundRobinSchedule>> scheduleCache =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Selects a service instance using smooth weighted round-robin.
+     *
+     * @param requestParams       The request parameters used to determine the selection (not
+     *                            used in this implementation).
+     * @param serviceMetaInfoList The list of available service instances.
+     * @return The selected ServiceMetaInfo instance, or null if the list is empty.
+     */
+    @Override
+    public ServiceMetaInfo select(Map<String, Object> requestParams,
+                                  List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList.isEmpty()) {
+            return null;
+        }
+        // If only one service is available, return it directly.
+        if (serviceMetaInfoList.size() == 1) {
+            return serviceMetaInfoList.get(0);
+        }
+
+        return getSchedule(serviceMetaInfoList).select(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the schedule of the providers, building a new one when the list has changed.
+     *
+     * @param serviceMetaInfoList The list of available service instances.
+     * @return The schedule matching the list.
+     */
+    private WeightedRoundRobinSchedule getSchedule(List<ServiceMetaInfo> serviceMetaInfoList) {
+        ServiceMetaInfo first = serviceMetaInfoList.get(0);
+        String serviceName = String.valueOf(first.getServiceName());
+        Map<String, WeightedRoundRobinSchedule> versionSchedules = scheduleCache.get(serviceName);
+        if (versionSchedules == null) {
+            versionSchedules = scheduleCache.computeIfAbsent(serviceName,
+                    key -> new ConcurrentHashMap<>());
+        }
+        String version = String.valueOf(first.getServiceVersion());
+        WeightedRoundRobinSchedule schedule = versionSchedules.get(version);
+        if (schedule == null || !schedule.isBuiltFrom(serviceMetaInfoList)) {
+            // Concurrent callers may both rebuild; either result carries the previous state over
+            schedule = WeightedRoundRobinSchedule.build(serviceMetaInfoList, schedule);
+            versionSchedules.put(version, schedule);
+        }
+        return schedule;
+    }
+}
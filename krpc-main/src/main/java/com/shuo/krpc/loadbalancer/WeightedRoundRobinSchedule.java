@@ -0,0 +1,152 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.constant.RpcConstant;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.ServiceSnapshot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted Round Robin Schedule
+ * <p>
+ * The smooth weighted round-robin state of one provider list, as used by Nginx. Every selection
+ * adds each provider's effective weight to its current weight, picks the provider with the
+ * highest current weight and subtracts the total weight from it. Over a full cycle every provider
+ * is picked in proportion to its weight, with the picks spread out rather than in bursts.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+class WeightedRoundRobinSchedule {
+
+    /**
+     * The provider list the schedule was built from, in list order
+     */
+    private final ServiceMetaInfo[] nodes;
+
+    /**
+     * Version of the snapshot the schedule was built from, or -1 for a plain list
+     */
+    private final long version;
+
+    /**
+     * Current weights, parallel to {@link #nodes}
+     */
+    private final long[] currentWeights;
+
+    /**
+     * Index of each provider address, used to carry current weights over to the next schedule
+     */
+    private final Map<String, Integer> addressIndex;
+
+    private WeightedRoundRobinSchedule(ServiceMetaInfo[] nodes, long version,
+                                       long[] currentWeights, Map<String, Integer> addressIndex) {
+        this.nodes = nodes;
+        this.version = version;
+        this.currentWeights = currentWeights;
+        this.addressIndex = addressIndex;
+    }
+
+    /**
+     * Build a schedule for the provider list. Providers that were already on the previous
+     * schedule keep their current weight, so a list refresh does not restart the cycle.
+     *
+     * @param serviceMetaInfoList The providers.
+     * @param previous            The schedule being replaced, or null.
+     * @return The new schedule.
+     */
+    static WeightedRoundRobinSchedule build(List<ServiceMetaInfo> serviceMetaInfoList,
+                                            WeightedRoundRobinSchedule previous) {
+        ServiceMetaInfo[] nodes = serviceMetaInfoList.toArray(new ServiceMetaInfo[0]);
+        long version = serviceMetaInfoList instanceof ServiceSnapshot
+                ? ((ServiceSnapshot) serviceMetaInfoList).getVersion() : -1;
+        long[] currentWeights = new long[nodes.length];
+        Map<String, Integer> addressIndex = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            String address = nodes[i].getServiceAddress();
+            addressIndex.put(address, i);
+            if (previous != null) {
+                currentWeights[i] = previous.getCurrentWeight(address);
+            }
+        }
+        return new WeightedRoundRobinSchedule(nodes, version, currentWeights, addressIndex);
+    }
+
+    /**
+     * Whether the schedule was built from exactly these providers.
+     *
+     * @param serviceMetaInfoList The current providers.
+     * @return true if the list is the same snapshot version, or holds the same provider objects
+     *         in the same order.
+     */
+    boolean isBuiltFrom(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (version != -1 && serviceMetaInfoList instanceof ServiceSnapshot) {
+            return ((ServiceSnapshot) serviceMetaInfoList).getVersion() == version;
+        }
+        if (serviceMetaInfoList.size() != nodes.length) {
+            return false;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (serviceMetaInfoList.get(i) != nodes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Select the next provider.
+     *
+     * @param now The current time in epoch milliseconds, used for the warmup ramp.
+     * @return The selected provider.
+     */
+    synchronized ServiceMetaInfo select(long now) {
+        long totalWeight = 0;
+        int selected = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            long weight = getEffectiveWeight(nodes[i], now);
+            currentWeights[i] += weight;
+            totalWeight += weight;
+            if (currentWeights[i] > currentWeights[selected]) {
+                selected = i;
+            }
+        }
+        currentWeights[selected] -= totalWeight;
+        return nodes[selected];
+    }
+
+    /**
+     * Effective weight of a provider: its published weight, scaled down linearly while it is
+     * still inside its warmup period so a cold provider is not flooded. The result is at least 1
+     * for a provider with a positive weight.
+     *
+     * @param serviceMetaInfo The provider.
+     * @param now             The current time in epoch milliseconds.
+     * @return The effective weight.
+     */
+    static long getEffectiveWeight(ServiceMetaInfo serviceMetaInfo, long now) {
+        Integer weight = serviceMetaInfo.getWeight();
+        if (weight == null) {
+            return RpcConstant.DEFAULT_SERVICE_WEIGHT;
+        }
+        if (weight <= 0) {
+            return 0;
+        }
+        Long warmup = serviceMetaInfo.getWarmup();
+        Long registerTime = serviceMetaInfo.getRegisterTime();
+        if (warmup == null || warmup <= 0 || registerTime == null) {
+            return weight;
+        }
+        long uptime = now - registerTime;
+        if (uptime >= warmup) {
+            return weight;
+        }
+        return Math.max(1, weight * Math.max(uptime, 0) / warmup);
+    }
+
+    private synchronized long getCurrentWeight(String address) {
+        Integer index = addressIndex.get(address);
+        return index == null ? 0 : currentWeights[index];
+    }
+}
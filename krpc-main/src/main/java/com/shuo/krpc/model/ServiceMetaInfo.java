@@ -1,6 +1,7 @@
 package com.shuo.krpc.model;
 
 import cn.hutool.core.util.StrUtil;
+import com.shuo.krpc.constant.RpcConstant;
 import lombok.Data;
 
 /**
@@ -19,12 +20,28 @@ public class ServiceMetaInfo {
 
     private Integer servicePort;
 
+    /**
+     * Weight of the provider relative to other providers of the same service
+     */
+    private Integer weight = RpcConstant.DEFAULT_SERVICE_WEIGHT;
+
+    /**
+     * Warmup period in milliseconds over which the weight ramps up after registration (0 for
+     * none)
+     */
+    private Long warmup = 0L;
+
+    /**
+     * Time the provider registered, in epoch milliseconds
+     */
+    private Long registerTime;
+
     /**
      * Service key getter
      * @return
      */
     public String getServiceKey() {
-        return String.format("%s:%s", serviceName, serviceVersion);
+        return serviceName + ":" + serviceVersion;
     }
 
     /**
@@ -32,7 +49,7 @@ public class ServiceMetaInfo {
      * @return
      */
     public String getServiceNodeKey() {
-        return String.format("%s/%s:%s", getServiceKey(), serviceHost, servicePort);
+        return getServiceKey() + "/" + serviceHost + ":" + servicePort;
     }
 
     public String getServiceAddress() {
@@ -1,5 +1,7 @@
 package com.shuo.krpc.model;
 
+import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.registry.ServiceScopeEnum;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -24,5 +26,20 @@ public class ServiceRegistrationInfo<T> {
      * The implementation class of the service.
      */
     private Class<? extends T> implClass;
+
+    /**
+     * The lifecycle of the service instances.
+     */
+    private ServiceScopeEnum scope = ServiceScopeEnum.SINGLETON;
+
+    /**
+     * The maximum number of instances when the scope is pooled.
+     */
+    private int poolSize = LocalRegistry.DEFAULT_POOL_SIZE;
+
+    public ServiceRegistrationInfo(String serviceName, Class<? extends T> implClass) {
+        this.serviceName = serviceName;
+        this.implClass = implClass;
+    }
 }
 
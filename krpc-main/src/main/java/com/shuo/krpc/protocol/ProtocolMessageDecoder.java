@@ -4,9 +4,12 @@ import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
 import com.shuo.krpc.serializer.Serializer;
 import com.shuo.krpc.serializer.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.vertx.core.buffer.Buffer;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Protocol message decoder.
@@ -55,8 +58,12 @@ public class ProtocolMessageDecoder {
         header.setRequestId(buffer.getLong(5));
         header.setBodyLength(buffer.getInt(13));
 
-        // Handle sticky packet problem by only reading the specified length of data
-        byte[] bodyBytes = buffer.getBytes(17, 17 + header.getBodyLength());
+        // Handle sticky packet problem by only reading the specified length of data, through a
+        // read-only view over the received bytes rather than a copy
+        ByteBuf body = buffer.getByteBuf()
+                .slice(ProtocolConstant.MESSAGE_HEADER_LENGTH, header.getBodyLength())
+                .asReadOnly();
+        InputStream bodyInputStream = new ByteBufInputStream(body);
 
         // Deserialize the message body
         ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum
@@ -74,11 +81,11 @@ public class ProtocolMessageDecoder {
         Serializer serializer = SerializerFactory.getInstance(serializerEnum.getValue());
         return switch (messageTypeEnum) {
             case REQUEST -> {
-                RpcRequest request = serializer.deserialize(bodyBytes, RpcRequest.class);
+                RpcRequest request = serializer.deserialize(bodyInputStream, RpcRequest.class);
                 yield new ProtocolMessage<>(header, request);
             }
             case RESPONSE -> {
-                RpcResponse response = serializer.deserialize(bodyBytes, RpcResponse.class);
+                RpcResponse response = serializer.deserialize(bodyInputStream, RpcResponse.class);
                 yield new ProtocolMessage<>(header, response);
             }
             default -> throw new RuntimeException("Unsupported message type");
@@ -2,7 +2,13 @@ package com.shuo.krpc.protocol;
 
 import com.shuo.krpc.serializer.Serializer;
 import com.shuo.krpc.serializer.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
 
 import java.io.IOException;
 
@@ -30,6 +36,16 @@ import java.io.IOException;
  */
 public class ProtocolMessageEncoder {
 
+    /**
+     * Initial capacity of an encoding buffer, grown as the serializer writes
+     */
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+
+    /**
+     * Offset of the body length field within the header
+     */
+    private static final int BODY_LENGTH_OFFSET = 13;
+
     /**
      * Encode the protocol message into a buffer.
      *
@@ -41,17 +57,62 @@ public class ProtocolMessageEncoder {
         if (protocolMessage == null || protocolMessage.getHeader() == null) {
             return Buffer.buffer();
         }
+        ByteBuf byteBuf = Unpooled.buffer(INITIAL_BUFFER_CAPACITY);
+        encode(protocolMessage, byteBuf);
+        return Buffer.buffer(byteBuf);
+    }
 
-        ProtocolMessage.Header header = protocolMessage.getHeader();
+    /**
+     * Encode the protocol message into a buffer taken from the pooled allocator.
+     * <p>
+     * The caller owns the returned buffer and must release it once it has been written.
+     *
+     * @param protocolMessage The protocol message to encode.
+     * @return The pooled buffer containing the serialized protocol message.
+     * @throws IOException If an I/O error occurs during encoding.
+     */
+    public static ByteBuf encodePooled(ProtocolMessage<?> protocolMessage) throws IOException {
+        ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(INITIAL_BUFFER_CAPACITY);
+        try {
+            encode(protocolMessage, byteBuf);
+            return byteBuf;
+        } catch (IOException | RuntimeException e) {
+            byteBuf.release();
+            throw e;
+        }
+    }
 
-        // Sequentially write bytes to the buffer
-        Buffer buffer = Buffer.buffer();
-        buffer.appendByte(header.getMagic());
-        buffer.appendByte(header.getVersion());
-        buffer.appendByte(header.getSerializer());
-        buffer.appendByte(header.getType());
-        buffer.appendByte(header.getStatus());
-        buffer.appendLong(header.getRequestId());
+    /**
+     * Encode the protocol message into a pooled buffer and write it to the socket.
+     * <p>
+     * The buffer is handed to the socket without copying and returned to the pool once the write
+     * has completed.
+     *
+     * @param socket          The socket to write to.
+     * @param protocolMessage The protocol message to encode.
+     * @return A future completed when the write has completed.
+     * @throws IOException If an I/O error occurs during encoding.
+     */
+    public static Future<Void> write(NetSocket socket, ProtocolMessage<?> protocolMessage)
+            throws IOException {
+        ByteBuf byteBuf = encodePooled(protocolMessage);
+        return socket.write(Buffer.buffer(byteBuf)).onComplete(ar -> byteBuf.release());
+    }
+
+    /**
+     * Encode the protocol message into the given buffer.
+     * <p>
+     * The header is written first with a placeholder body length, the serializer then streams
+     * the body directly behind it, and the actual body length is patched in afterwards, so the
+     * body is never held in an intermediate array.
+     *
+     * @param protocolMessage The protocol message to encode.
+     * @param byteBuf         The buffer to write to.
+     * @throws IOException If an I/O error occurs during encoding.
+     */
+    private static void encode(ProtocolMessage<?> protocolMessage, ByteBuf byteBuf)
+            throws IOException {
+        ProtocolMessage.Header header = protocolMessage.getHeader();
 
         // Get the serializer
         ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum
@@ -62,11 +123,20 @@ public class ProtocolMessageEncoder {
         }
 
         Serializer serializer = SerializerFactory.getInstance(serializerEnum.getValue());
-        byte[] bodyBytes = serializer.serialize(protocolMessage.getBody());
 
-        // Write body length and data
-        buffer.appendInt(bodyBytes.length);
-        buffer.appendBytes(bodyBytes);
-        return buffer;
+        // Sequentially write bytes to the buffer, reserving the body length
+        int headerIndex = byteBuf.writerIndex();
+        byteBuf.writeByte(header.getMagic());
+        byteBuf.writeByte(header.getVersion());
+        byteBuf.writeByte(header.getSerializer());
+        byteBuf.writeByte(header.getType());
+        byteBuf.writeByte(header.getStatus());
+        byteBuf.writeLong(header.getRequestId());
+        byteBuf.writeInt(0);
+
+        // Stream the body and back-patch its length
+        int bodyIndex = byteBuf.writerIndex();
+        serializer.serialize(protocolMessage.getBody(), new ByteBufOutputStream(byteBuf));
+        byteBuf.setInt(headerIndex + BODY_LENGTH_OFFSET, byteBuf.writerIndex() - bodyIndex);
     }
 }
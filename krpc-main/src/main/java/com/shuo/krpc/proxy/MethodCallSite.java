@@ -0,0 +1,136 @@
+package com.shuo.krpc.proxy;
+
+import cn.hutool.core.collection.CollUtil;
+import com.shuo.krpc.constant.RpcConstant;
+import com.shuo.krpc.fault.retry.RetryStrategy;
+import com.shuo.krpc.fault.tolerance.ToleranceStrategy;
+import com.shuo.krpc.loadbalancer.LoadBalancer;
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.DiscoveryFrontend;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Method Call Site
+ * <p>
+ * This class holds everything about invoking one interface method that does not change from call
+ * to call: the service and method names, parameter types, service key, resolved timeout and the
+ * discovery front-end, load balancer, fault strategies and transport. It is built once per method
+ * and proxy, so a call only allocates its request and its {@link RemoteCall} state.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Getter
+public class MethodCallSite {
+
+    private final String serviceName;
+
+    private final String methodName;
+
+    private final Class<?>[] parameterTypes;
+
+    private final String serviceKey;
+
+    /**
+     * Whether the method returns a future and is invoked asynchronously
+     */
+    private final boolean async;
+
+    /**
+     * Call timeout in milliseconds, or 0 to wait without limit
+     */
+    private final long timeout;
+
+    private final DiscoveryFrontend discoveryFrontend;
+
+    private final LoadBalancer loadBalancer;
+
+    private final RetryStrategy retryStrategy;
+
+    private final ToleranceStrategy toleranceStrategy;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final RpcTransport transport;
+
+    /**
+     * Load balancer parameters, which only carry the method name
+     */
+    private final Map<String, Object> requestParams;
+
+    public MethodCallSite(Method method, long timeout, DiscoveryFrontend discoveryFrontend,
+                          LoadBalancer loadBalancer, RetryStrategy retryStrategy,
+                          ToleranceStrategy toleranceStrategy) {
+        this(method, timeout, discoveryFrontend, loadBalancer, retryStrategy, toleranceStrategy,
+                RpcTransport.TCP);
+    }
+
+    MethodCallSite(Method method, long timeout, DiscoveryFrontend discoveryFrontend,
+                   LoadBalancer loadBalancer, RetryStrategy retryStrategy,
+                   ToleranceStrategy toleranceStrategy, RpcTransport transport) {
+        this.serviceName = method.getDeclaringClass().getName();
+        this.methodName = method.getName();
+        this.parameterTypes = method.getParameterTypes();
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName(serviceName);
+        serviceMetaInfo.setServiceVersion(RpcConstant.DEFAULT_SERVICE_VERSION);
+        this.serviceKey = serviceMetaInfo.getServiceKey();
+        this.async = ServiceProxy.isAsync(method);
+        this.timeout = timeout;
+        this.discoveryFrontend = discoveryFrontend;
+        this.loadBalancer = loadBalancer;
+        this.retryStrategy = retryStrategy;
+        this.toleranceStrategy = toleranceStrategy;
+        this.transport = transport;
+        this.requestParams = Collections.singletonMap("methodName", methodName);
+    }
+
+    /**
+     * Construct the request of a call.
+     *
+     * @param args The call arguments.
+     * @return The request.
+     */
+    public RpcRequest newRequest(Object[] args) {
+        return new RpcRequest(serviceName, methodName, RpcConstant.DEFAULT_SERVICE_VERSION,
+                parameterTypes, args);
+    }
+
+    /**
+     * Discover the service providers.
+     *
+     * @return The providers, or null if the registry could not be reached.
+     */
+    public List<ServiceMetaInfo> discoverServiceNodes() {
+        return discoveryFrontend.serviceDiscovery(serviceKey);
+    }
+
+    /**
+     * Discover the service providers without blocking.
+     *
+     * @return A future of the providers, or of null if the registry could not be reached.
+     */
+    public CompletableFuture<List<ServiceMetaInfo>> discoverServiceNodesAsync() {
+        return discoveryFrontend.serviceDiscoveryAsync(serviceKey);
+    }
+
+    /**
+     * Select one of the discovered providers with the load balancer.
+     *
+     * @param serviceMetaInfoList The discovered providers.
+     * @return The selected service provider.
+     * @throws RuntimeException If no provider is available.
+     */
+    public ServiceMetaInfo selectServiceNode(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (CollUtil.isEmpty(serviceMetaInfoList)) {
+            throw new RuntimeException("No service address available");
+        }
+        return loadBalancer.select(requestParams, serviceMetaInfoList);
+    }
+}
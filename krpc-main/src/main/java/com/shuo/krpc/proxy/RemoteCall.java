@@ -0,0 +1,119 @@
+package com.shuo.krpc.proxy;
+
+import com.shuo.krpc.fault.tolerance.ToleranceContextKeys;
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Remote Call
+ * <p>
+ * The state of one proxy call: its request and the providers discovered and selected for it.
+ * The call is itself the operation handed to the retry strategy and the continuation of the
+ * asynchronous discovery, so a successful call allocates this object and its request rather
+ * than a capturing lambda per step.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+final class RemoteCall implements Callable<RpcResponse>, Supplier<CompletableFuture<RpcResponse>>,
+        Function<List<ServiceMetaInfo>, CompletionStage<RpcResponse>> {
+
+    private final MethodCallSite callSite;
+
+    private final RpcRequest rpcRequest;
+
+    private List<ServiceMetaInfo> serviceMetaInfoList;
+
+    private ServiceMetaInfo serviceMetaInfo;
+
+    RemoteCall(MethodCallSite callSite, RpcRequest rpcRequest) {
+        this.callSite = callSite;
+        this.rpcRequest = rpcRequest;
+    }
+
+    /**
+     * Make the call, blocking until the result is known.
+     *
+     * @return The result of the remote method.
+     * @throws Exception If the call fails and the tolerance strategy does not recover.
+     */
+    Object invoke() throws Exception {
+        serviceMetaInfoList = callSite.discoverServiceNodes();
+        serviceMetaInfo = callSite.selectServiceNode(serviceMetaInfoList);
+        RpcResponse rpcResponse;
+        try {
+            rpcResponse = callSite.getRetryStrategy().doRetry(this);
+        } catch (Exception e) {
+            rpcResponse = callSite.getToleranceStrategy().doTolerance(
+                    createToleranceContext(), e);
+        }
+        return rpcResponse.getData();
+    }
+
+    /**
+     * Make the call without blocking.
+     *
+     * @return A future of the result of the remote method.
+     */
+    CompletableFuture<Object> invokeAsync() {
+        return callSite.discoverServiceNodesAsync().thenCompose(this)
+                .thenApply(RpcResponse::getData);
+    }
+
+    /**
+     * Send the request once to the selected provider.
+     */
+    @Override
+    public RpcResponse call() throws Exception {
+        return callSite.getTransport().send(rpcRequest, serviceMetaInfo, callSite.getTimeout());
+    }
+
+    /**
+     * Send the request once to the selected provider without blocking.
+     */
+    @Override
+    public CompletableFuture<RpcResponse> get() {
+        return callSite.getTransport().sendAsync(rpcRequest, serviceMetaInfo,
+                callSite.getTimeout());
+    }
+
+    /**
+     * Continue an asynchronous call once its providers are discovered.
+     */
+    @Override
+    public CompletionStage<RpcResponse> apply(List<ServiceMetaInfo> serviceMetaInfoList) {
+        this.serviceMetaInfoList = serviceMetaInfoList;
+        this.serviceMetaInfo = callSite.selectServiceNode(serviceMetaInfoList);
+        return callSite.getRetryStrategy().doRetryAsync(this)
+                .exceptionallyCompose(e -> callSite.getToleranceStrategy().doToleranceAsync(
+                        createToleranceContext(), e));
+    }
+
+    /**
+     * Build the context handed to the tolerance strategy when the call fails, so that it can
+     * issue the call again to the other discovered providers.
+     *
+     * @return the tolerance context, keyed by {@link ToleranceContextKeys}
+     */
+    private Map<String, Object> createToleranceContext() {
+        Set<ServiceMetaInfo> failedNodes = new HashSet<>();
+        failedNodes.add(serviceMetaInfo);
+        Map<String, Object> context = new HashMap<>();
+        context.put(ToleranceContextKeys.RPC_REQUEST, rpcRequest);
+        context.put(ToleranceContextKeys.SERVICE_NODES, serviceMetaInfoList);
+        context.put(ToleranceContextKeys.FAILED_NODES, failedNodes);
+        context.put(ToleranceContextKeys.TIMEOUT, callSite.getTimeout());
+        return context;
+    }
+}
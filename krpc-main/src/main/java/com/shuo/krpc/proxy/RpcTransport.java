@@ -0,0 +1,61 @@
+package com.shuo.krpc.proxy;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.server.tcp.VertxTcpClient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * RPC Transport
+ * <p>
+ * Sends a request to the provider selected for a call. Proxies use the TCP client; tests replace
+ * it to drive the call path without a network.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+interface RpcTransport {
+
+    /**
+     * Transport over the shared {@link VertxTcpClient}
+     */
+    RpcTransport TCP = new RpcTransport() {
+        @Override
+        public RpcResponse send(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo,
+                                long timeoutMillis) throws Exception {
+            return VertxTcpClient.doRequest(rpcRequest, serviceMetaInfo, timeoutMillis);
+        }
+
+        @Override
+        public CompletableFuture<RpcResponse> sendAsync(RpcRequest rpcRequest,
+                                                        ServiceMetaInfo serviceMetaInfo,
+                                                        long timeoutMillis) {
+            return VertxTcpClient.doRequestAsync(rpcRequest, serviceMetaInfo, timeoutMillis);
+        }
+    };
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * @param rpcRequest      The request.
+     * @param serviceMetaInfo The provider to send it to.
+     * @param timeoutMillis   The time to wait in milliseconds, or 0 to wait without limit.
+     * @return The response.
+     * @throws Exception If the request fails or times out.
+     */
+    RpcResponse send(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo, long timeoutMillis)
+            throws Exception;
+
+    /**
+     * Send a request without blocking.
+     *
+     * @param rpcRequest      The request.
+     * @param serviceMetaInfo The provider to send it to.
+     * @param timeoutMillis   The time to wait in milliseconds, or 0 to wait without limit.
+     * @return A future of the response.
+     */
+    CompletableFuture<RpcResponse> sendAsync(RpcRequest rpcRequest,
+                                             ServiceMetaInfo serviceMetaInfo,
+                                             long timeoutMillis);
+}
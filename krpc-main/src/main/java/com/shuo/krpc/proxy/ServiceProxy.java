@@ -1,28 +1,22 @@
 package com.shuo.krpc.proxy;
 
-import cn.hutool.core.collection.CollUtil;
 import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.config.ReferenceConfig;
 import com.shuo.krpc.config.RpcConfig;
-import com.shuo.krpc.constant.RpcConstant;
-import com.shuo.krpc.fault.retry.RetryStrategy;
 import com.shuo.krpc.fault.retry.RetryStrategyFactory;
-import com.shuo.krpc.fault.tolerance.ToleranceStrategy;
 import com.shuo.krpc.fault.tolerance.ToleranceStrategyFactory;
-import com.shuo.krpc.model.RpcRequest;
-import com.shuo.krpc.model.RpcResponse;
-import com.shuo.krpc.model.ServiceMetaInfo;
-import com.shuo.krpc.registry.Registry;
+import com.shuo.krpc.registry.DiscoveryFrontend;
 import com.shuo.krpc.registry.RegistryFactory;
-import com.shuo.krpc.server.tcp.VertxTcpClient;
-import com.shuo.krpc.loadbalancer.LoadBalancer;
 import com.shuo.krpc.loadbalancer.LoadBalancerFactory;
 
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Service Proxy
@@ -30,11 +24,50 @@ import java.util.Map;
  * This class acts as a proxy for services, enabling dynamic invocation using JDK dynamic proxies.
  * It facilitates sending requests to remote services and receiving responses, utilizing the
  * specified serializer and making TCP connections to service providers discovered via the registry.
+ * <p>
+ * Methods returning {@link CompletableFuture} or {@link CompletionStage} are invoked
+ * asynchronously: the proxy returns at once and the future is completed when the response
+ * arrives, with retry and tolerance strategies applied without blocking.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 public class ServiceProxy implements InvocationHandler {
 
+    /**
+     * Settings of the service reference this proxy belongs to
+     */
+    private final ReferenceConfig referenceConfig;
+
+    /**
+     * Call sites of the invoked methods, built on first use
+     */
+    private final Map<Method, MethodCallSite> callSiteCache = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the call site of a method on first use
+     */
+    private final Function<Method, MethodCallSite> callSiteFactory;
+
+    public ServiceProxy() {
+        this(new ReferenceConfig());
+    }
+
+    public ServiceProxy(ReferenceConfig referenceConfig) {
+        this.referenceConfig = referenceConfig;
+        this.callSiteFactory = this::createCallSite;
+    }
+
+    /**
+     * Create a proxy whose call sites are built by the given factory instead of from the global
+     * configuration.
+     *
+     * @param callSiteFactory builds the call site of a method
+     */
+    ServiceProxy(Function<Method, MethodCallSite> callSiteFactory) {
+        this.referenceConfig = new ReferenceConfig();
+        this.callSiteFactory = callSiteFactory;
+    }
+
     /**
      * Invokes the proxy method. It creates the request, serializes it, sends it to the
      * appropriate services, and deserializes the response.
@@ -48,50 +81,77 @@ public class ServiceProxy implements InvocationHandler {
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        // Construct the request
-        String serviceName = method.getDeclaringClass().getName();
-        RpcRequest rpcRequest = RpcRequest.builder()
-                .serviceName(serviceName)
-                .methodName(method.getName())
-                .parameterTypes(method.getParameterTypes())
-                .args(args)
-                .build();
-
-        // Retrieve the service provider address from the registry
-        RpcConfig rpcConfig = RpcApplication.getRpcConfig();
-        Registry registry =
-                RegistryFactory.getInstance(rpcConfig.getRegistryConfig().getRegistry());
-
-        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
-        serviceMetaInfo.setServiceName(serviceName);
-        serviceMetaInfo.setServiceVersion(RpcConstant.DEFAULT_SERVICE_VERSION);
-        List<ServiceMetaInfo> serviceMetaInfoList =
-                registry.serviceDiscovery(serviceMetaInfo.getServiceKey());
-        if (CollUtil.isEmpty(serviceMetaInfoList)) {
-            throw new RuntimeException("No service address available");
+        MethodCallSite cachedCallSite = callSiteCache.get(method);
+        MethodCallSite callSite = cachedCallSite != null ? cachedCallSite
+                : callSiteCache.computeIfAbsent(method, callSiteFactory);
+
+        // Construct the request, and make the call through its per-call state
+        RemoteCall remoteCall = new RemoteCall(callSite, callSite.newRequest(args));
+
+        // Asynchronous methods get a future completed from the event loop, and resolve their
+        // service node without blocking either
+        if (callSite.isAsync()) {
+            return remoteCall.invokeAsync();
         }
+        return remoteCall.invoke();
+    }
 
-        // Select service node based on load balancer
-        LoadBalancer loadBalancer = LoadBalancerFactory.getInstance(rpcConfig.getLoadBalancer());
-        // Use method name as load balancer parameter
-        Map<String, Object> requestParams = new HashMap<>();
-        requestParams.put("methodName", rpcRequest.getMethodName());
-        ServiceMetaInfo selectedServiceMetaInfo = loadBalancer.select(requestParams,
-                serviceMetaInfoList);
-
-        // Send TCP request
-        RpcResponse rpcResponse;
-        try {
-            RetryStrategy retryStrategy = RetryStrategyFactory.getInstance(rpcConfig.getRetryStrategy());
-            rpcResponse = retryStrategy.doRetry(() ->
-                    VertxTcpClient.doRequest(rpcRequest, selectedServiceMetaInfo)
-            );
-        } catch (Exception e) {
-            // Tolerance strategy
-            ToleranceStrategy tolerantStrategy =
-                    ToleranceStrategyFactory.getInstance(rpcConfig.getTolerantStrategy());
-            rpcResponse = tolerantStrategy.doTolerance(null, e);
+    /**
+     * Build the call site of a method, resolving its timeout and looking up the discovery
+     * front-end of the registry, load balancer and fault strategies from the global
+     * configuration.
+     *
+     * @param method the interface method
+     * @return the call site
+     */
+    private MethodCallSite createCallSite(Method method) {
+        RpcConfig rpcConfig = RpcApplication.getRpcConfig();
+        return new MethodCallSite(method,
+                resolveTimeout(method, rpcConfig),
+                DiscoveryFrontend.getInstance(
+                        RegistryFactory.getInstance(rpcConfig.getRegistryConfig().getRegistry()),
+                        rpcConfig.getRegistryConfig()),
+                LoadBalancerFactory.getInstance(rpcConfig.getLoadBalancer()),
+                RetryStrategyFactory.getInstance(rpcConfig.getRetryStrategy()),
+                ToleranceStrategyFactory.getInstance(rpcConfig.getTolerantStrategy()));
+    }
+
+    /**
+     * Resolve the call timeout of a method. The most specific setting wins: the reference's
+     * method timeout, the reference's timeout, the global serviceName#methodName and serviceName
+     * timeouts, and finally the global default.
+     *
+     * @param method    the interface method
+     * @param rpcConfig the global configuration
+     * @return the timeout in milliseconds, or 0 to wait without limit
+     */
+    private long resolveTimeout(Method method, RpcConfig rpcConfig) {
+        String serviceName = method.getDeclaringClass().getName();
+        Long timeout = referenceConfig.getMethodTimeouts().get(method.getName());
+        if (timeout == null) {
+            timeout = referenceConfig.getTimeout();
+        }
+        if (timeout == null) {
+            timeout = rpcConfig.getTimeouts().get(serviceName + "#" + method.getName());
+        }
+        if (timeout == null) {
+            timeout = rpcConfig.getTimeouts().get(serviceName);
+        }
+        if (timeout == null) {
+            timeout = rpcConfig.getTimeout();
         }
-        return rpcResponse.getData();
+        return timeout == null ? 0 : timeout;
+    }
+
+    /**
+     * Whether the method is invoked asynchronously, i.e. it returns a {@link CompletableFuture}
+     * or {@link CompletionStage} of the result.
+     *
+     * @param method the interface method
+     * @return true if the proxy should return a future instead of blocking
+     */
+    static boolean isAsync(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
     }
 }
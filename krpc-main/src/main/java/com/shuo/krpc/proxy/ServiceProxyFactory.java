@@ -1,6 +1,7 @@
 package com.shuo.krpc.proxy;
 
 import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.config.ReferenceConfig;
 
 import java.lang.reflect.Proxy;
 
@@ -19,13 +20,25 @@ public class ServiceProxyFactory {
      * @return
      */
     public static <T> T getProxy(Class<T> serviceClass) {
+        return getProxy(serviceClass, new ReferenceConfig());
+    }
+
+    /**
+     * Get proxy based on service class with reference-specific settings
+     *
+     * @param serviceClass
+     * @param referenceConfig settings overriding the global configuration for this reference
+     * @param <T>
+     * @return
+     */
+    public static <T> T getProxy(Class<T> serviceClass, ReferenceConfig referenceConfig) {
         if (RpcApplication.getRpcConfig().isMock()) {
             return getMockProxy(serviceClass);
         }
         return (T) Proxy.newProxyInstance(
                 serviceClass.getClassLoader(),
                 new Class[]{serviceClass},
-                new ServiceProxy());
+                new ServiceProxy(referenceConfig));
     }
 
     /**
@@ -0,0 +1,80 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Blocking registry adapter
+ * <p>
+ * Base class of registries implemented natively on asynchronous clients. Subclasses implement
+ * the asynchronous variants of registration and discovery, and this class provides the blocking
+ * methods of {@link Registry} by waiting for them, so existing callers keep working unchanged.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public abstract class BlockingRegistryAdapter implements Registry {
+
+    @Override
+    public void register(ServiceMetaInfo serviceMetaInfo) {
+        await(registerAsync(serviceMetaInfo));
+    }
+
+    @Override
+    public void registerAll(List<ServiceMetaInfo> serviceMetaInfoList) {
+        await(registerAllAsync(serviceMetaInfoList));
+    }
+
+    @Override
+    public void unregister(ServiceMetaInfo serviceMetaInfo) {
+        await(unregisterAsync(serviceMetaInfo));
+    }
+
+    @Override
+    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+        return await(serviceDiscoveryAsync(serviceKey));
+    }
+
+    @Override
+    public CompletableFuture<Void> registerAsync(ServiceMetaInfo serviceMetaInfo) {
+        return registerAllAsync(Collections.singletonList(serviceMetaInfo));
+    }
+
+    @Override
+    public abstract CompletableFuture<Void> registerAllAsync(
+            List<ServiceMetaInfo> serviceMetaInfoList);
+
+    @Override
+    public abstract CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo);
+
+    @Override
+    public abstract CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(
+            String serviceKey);
+
+    /**
+     * Wait for a future, rethrowing its failure as it was raised.
+     *
+     * @param future The future.
+     * @return The result.
+     * @throws RuntimeException If the future failed, the original exception if it was unchecked.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof ExecutionException
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
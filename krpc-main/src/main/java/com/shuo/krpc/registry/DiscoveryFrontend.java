@@ -0,0 +1,333 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Discovery front-end
+ * <p>
+ * Sits in front of any {@link Registry} on the consumer side and shields it from bursts of
+ * discovery calls:
+ * <ul>
+ *     <li>Only one registry lookup per service key is in flight at a time; concurrent callers
+ *     of a cold key wait for that lookup instead of issuing their own (single-flight).</li>
+ *     <li>A provider list is refreshed in the background shortly before its TTL runs out, and
+ *     callers keep getting the current list, stale or not, while the refresh runs.</li>
+ *     <li>A service with no providers is remembered for a short TTL, so lookups of a missing
+ *     service do not all reach the registry.</li>
+ * </ul>
+ * With a {@link DiscoverySnapshot} attached, the lists are also persisted after every change and
+ * loaded back at startup, where they are served until the registry has been asked again.
+ * <p>
+ * Registries that keep their providers up to date through a watch push every change to the
+ * front-end, which caches the new list at once instead of serving the old one until its TTL runs
+ * out. A list pushed while a lookup is in flight is not overwritten by the older lookup result.
+ * <p>
+ * Lookups go through the registry's asynchronous discovery. Blocking callers wait for the lookup
+ * in flight, while {@link #serviceDiscoveryAsync(String)} starts a cold lookup on the refresh
+ * executor and returns at once, so an asynchronous call never waits on the registry.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class DiscoveryFrontend {
+
+    /**
+     * Front-ends keyed by the registry they wrap
+     */
+    private static final Map<Registry, DiscoveryFrontend> instanceMap = new ConcurrentHashMap<>();
+
+    /**
+     * Executor of background refreshes, shared by all front-ends
+     */
+    private static final Executor REFRESH_EXECUTOR = Executors.newFixedThreadPool(2,
+            new DefaultThreadFactory("krpc-discovery-refresh", true));
+
+    private final Registry registry;
+
+    private final long cacheTtl;
+
+    private final long refreshAhead;
+
+    private final long negativeTtl;
+
+    private final LongSupplier clock;
+
+    private final Executor refreshExecutor;
+
+    /**
+     * Provider lists keyed by service key
+     */
+    private final Map<String, Entry> entryMap = new ConcurrentHashMap<>();
+
+    /**
+     * On-disk copy of the provider lists, or null if not enabled
+     */
+    private volatile DiscoverySnapshot discoverySnapshot;
+
+    /**
+     * Registry lookups in flight, keyed by service key
+     */
+    private final Map<String, CompletableFuture<List<ServiceMetaInfo>>> inFlightMap =
+            new ConcurrentHashMap<>();
+
+    public DiscoveryFrontend(Registry registry, RegistryConfig registryConfig) {
+        this(registry, registryConfig, System::currentTimeMillis, REFRESH_EXECUTOR);
+    }
+
+    DiscoveryFrontend(Registry registry, RegistryConfig registryConfig, LongSupplier clock,
+                      Executor refreshExecutor) {
+        this.registry = registry;
+        this.cacheTtl = registryConfig.getDiscoveryCacheTtl();
+        this.refreshAhead = Math.min(registryConfig.getDiscoveryRefreshAhead(), cacheTtl);
+        this.negativeTtl = registryConfig.getDiscoveryNegativeTtl();
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+        registry.setServiceChangeListener(this::onServiceChange);
+    }
+
+    /**
+     * Get the front-end of a registry, creating it on first use.
+     *
+     * @param registry       The registry.
+     * @param registryConfig The configuration providing the cache TTLs.
+     * @return The front-end shared by all callers of the registry.
+     */
+    public static DiscoveryFrontend getInstance(Registry registry, RegistryConfig registryConfig) {
+        DiscoveryFrontend discoveryFrontend = instanceMap.get(registry);
+        if (discoveryFrontend == null) {
+            discoveryFrontend = instanceMap.computeIfAbsent(registry,
+                    key -> new DiscoveryFrontend(key, registryConfig));
+        }
+        return discoveryFrontend;
+    }
+
+    /**
+     * Discover the providers of a service.
+     *
+     * @param serviceKey The key of the service.
+     * @return The providers, an empty list if the service has none, or null if the registry
+     *         could not be reached and nothing is cached.
+     */
+    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+        Entry entry = entryMap.get(serviceKey);
+        if (entry != null) {
+            if (clock.getAsLong() < entry.refreshAt) {
+                return entry.serviceMetaInfoList;
+            }
+            if (!entry.serviceMetaInfoList.isEmpty()) {
+                // Serve the current list while it is refreshed in the background
+                refresh(serviceKey, refreshExecutor);
+                return entry.serviceMetaInfoList;
+            }
+        }
+        return refresh(serviceKey, Runnable::run).join();
+    }
+
+    /**
+     * Discover the providers of a service without blocking.
+     *
+     * @param serviceKey The key of the service.
+     * @return A future of the providers, an empty list if the service has none, or null if the
+     *         registry could not be reached and nothing is cached.
+     */
+    public CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
+        Entry entry = entryMap.get(serviceKey);
+        if (entry != null) {
+            if (clock.getAsLong() < entry.refreshAt) {
+                return CompletableFuture.completedFuture(entry.serviceMetaInfoList);
+            }
+            if (!entry.serviceMetaInfoList.isEmpty()) {
+                refresh(serviceKey, refreshExecutor);
+                return CompletableFuture.completedFuture(entry.serviceMetaInfoList);
+            }
+        }
+        return refresh(serviceKey, refreshExecutor);
+    }
+
+    /**
+     * Drop the cached providers of a service, so the next discovery asks the registry.
+     *
+     * @param serviceKey The key of the service.
+     */
+    public void invalidate(String serviceKey) {
+        entryMap.remove(serviceKey);
+    }
+
+    /**
+     * Persist the provider lists to a snapshot file, first loading the lists it already holds.
+     * Loaded lists are served right away and refreshed from the registry on first use.
+     *
+     * @param file The snapshot file.
+     */
+    public void enableSnapshot(Path file) {
+        DiscoverySnapshot snapshot = new DiscoverySnapshot(file);
+        snapshot.load().forEach((serviceKey, serviceMetaInfoList) -> {
+            if (!serviceMetaInfoList.isEmpty()) {
+                entryMap.putIfAbsent(serviceKey, new Entry(
+                        ServiceSnapshot.of(serviceMetaInfoList), Long.MIN_VALUE, false));
+            }
+        });
+        discoverySnapshot = snapshot;
+        log.info("Discovery snapshot enabled: {}", file);
+    }
+
+    /**
+     * Start a lookup unless one is already in flight.
+     *
+     * @param executor The executor starting the lookup.
+     * @return The lookup in flight.
+     */
+    private CompletableFuture<List<ServiceMetaInfo>> refresh(String serviceKey,
+                                                             Executor executor) {
+        CompletableFuture<List<ServiceMetaInfo>> future = new CompletableFuture<>();
+        CompletableFuture<List<ServiceMetaInfo>> inFlight =
+                inFlightMap.putIfAbsent(serviceKey, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        try {
+            executor.execute(() -> load(serviceKey, future));
+        } catch (RuntimeException e) {
+            inFlightMap.remove(serviceKey, future);
+            future.complete(null);
+            log.warn("Failed to schedule discovery refresh: {}", serviceKey, e);
+        }
+        return future;
+    }
+
+    /**
+     * Look the service up in the registry.
+     */
+    private void load(String serviceKey, CompletableFuture<List<ServiceMetaInfo>> future) {
+        CompletableFuture<List<ServiceMetaInfo>> lookup;
+        try {
+            lookup = registry.serviceDiscoveryAsync(serviceKey);
+        } catch (Exception e) {
+            lookup = CompletableFuture.failedFuture(e);
+        }
+        lookup.whenComplete((serviceMetaInfoList, e) -> {
+            if (e != null) {
+                log.error("Failed to discover service: {}", serviceKey, e);
+            }
+            complete(serviceKey, future, e == null ? serviceMetaInfoList : null);
+        });
+    }
+
+    /**
+     * Cache the result of a lookup. On failure the previous list, if any, is kept and retried
+     * after the negative TTL.
+     */
+    private void complete(String serviceKey, CompletableFuture<List<ServiceMetaInfo>> future,
+                          List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList == null) {
+            // Keep serving the previous list and back off before trying again
+            Entry previous = entryMap.computeIfPresent(serviceKey, (key, entry) ->
+                    new Entry(entry.serviceMetaInfoList, clock.getAsLong() + negativeTtl,
+                            entry.pushed));
+            if (previous != null) {
+                serviceMetaInfoList = previous.serviceMetaInfoList;
+            }
+        } else {
+            serviceMetaInfoList = store(serviceKey, serviceMetaInfoList, false);
+        }
+
+        inFlightMap.remove(serviceKey, future);
+        future.complete(serviceMetaInfoList);
+    }
+
+    /**
+     * Follow a change pushed by the registry. A dropped service keeps its list, which is served
+     * while it is looked up again.
+     */
+    private void onServiceChange(String serviceKey, List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList == null) {
+            entryMap.computeIfPresent(serviceKey, (key, entry) ->
+                    new Entry(entry.serviceMetaInfoList, Long.MIN_VALUE, false));
+        } else {
+            store(serviceKey, serviceMetaInfoList, true);
+        }
+    }
+
+    /**
+     * Cache a provider list, unless it was looked up and the registry has pushed a newer one
+     * since.
+     *
+     * @param pushed Whether the list was pushed by the registry.
+     * @return The list cached.
+     */
+    private List<ServiceMetaInfo> store(String serviceKey,
+                                        List<ServiceMetaInfo> serviceMetaInfoList,
+                                        boolean pushed) {
+        long refreshAt = clock.getAsLong()
+                + (serviceMetaInfoList.isEmpty() ? negativeTtl : cacheTtl - refreshAhead);
+        Entry previous = entryMap.get(serviceKey);
+        Entry entry = entryMap.compute(serviceKey, (key, current) ->
+                !pushed && current != null && current.pushed
+                        && isNewer(current.serviceMetaInfoList, serviceMetaInfoList)
+                        ? new Entry(current.serviceMetaInfoList, refreshAt, true)
+                        : new Entry(serviceMetaInfoList, refreshAt, pushed));
+        DiscoverySnapshot snapshot = discoverySnapshot;
+        if (snapshot != null && (previous == null
+                || previous.serviceMetaInfoList != entry.serviceMetaInfoList)) {
+            snapshot.scheduleWrite(this::getServiceMap);
+        }
+        return entry.serviceMetaInfoList;
+    }
+
+    /**
+     * Whether a cached list is a later snapshot of the registry cache than another.
+     */
+    private static boolean isNewer(List<ServiceMetaInfo> cached,
+                                   List<ServiceMetaInfo> serviceMetaInfoList) {
+        return cached instanceof ServiceSnapshot && serviceMetaInfoList instanceof ServiceSnapshot
+                && ((ServiceSnapshot) cached).getVersion()
+                > ((ServiceSnapshot) serviceMetaInfoList).getVersion();
+    }
+
+    /**
+     * The cached provider lists of services that have providers.
+     */
+    private Map<String, List<ServiceMetaInfo>> getServiceMap() {
+        Map<String, List<ServiceMetaInfo>> serviceMap = new HashMap<>();
+        entryMap.forEach((serviceKey, entry) -> {
+            if (!entry.serviceMetaInfoList.isEmpty()) {
+                serviceMap.put(serviceKey, entry.serviceMetaInfoList);
+            }
+        });
+        return serviceMap;
+    }
+
+    /**
+     * A cached provider list and the time it should be refreshed
+     */
+    private static final class Entry {
+
+        private final List<ServiceMetaInfo> serviceMetaInfoList;
+
+        private final long refreshAt;
+
+        /**
+         * Whether the list was pushed by the registry rather than looked up
+         */
+        private final boolean pushed;
+
+        private Entry(List<ServiceMetaInfo> serviceMetaInfoList, long refreshAt, boolean pushed) {
+            this.serviceMetaInfoList = serviceMetaInfoList;
+            this.refreshAt = refreshAt;
+            this.pushed = pushed;
+        }
+    }
+}
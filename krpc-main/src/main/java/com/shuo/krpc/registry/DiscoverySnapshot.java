@@ -0,0 +1,121 @@
+package com.shuo.krpc.registry;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Discovery snapshot
+ * <p>
+ * Persists the discovered provider lists to a local JSON file, so a consumer can start serving
+ * from the last known providers and keep working while the registry is unreachable. Writes run
+ * on a background thread, coalescing bursts of changes into one write, and go to a temporary
+ * file that is then moved over the snapshot, so a reader never sees a partial file.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class DiscoverySnapshot {
+
+    /**
+     * Writer of all snapshots, started on first use
+     */
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("krpc-discovery-snapshot", true));
+
+    private final Path file;
+
+    /**
+     * Whether a write is scheduled and has not started yet
+     */
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    public DiscoverySnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the provider lists from the snapshot file.
+     *
+     * @return The provider lists keyed by service key, or an empty map if the file is missing
+     *         or unreadable.
+     */
+    public Map<String, List<ServiceMetaInfo>> load() {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyMap();
+        }
+        try {
+            JSONObject jsonObject = JSONUtil.parseObj(Files.readString(file,
+                    StandardCharsets.UTF_8));
+            Map<String, List<ServiceMetaInfo>> serviceMap = new HashMap<>();
+            for (String serviceKey : jsonObject.keySet()) {
+                JSONArray jsonArray = jsonObject.getJSONArray(serviceKey);
+                serviceMap.put(serviceKey, jsonArray.toList(ServiceMetaInfo.class));
+            }
+            return serviceMap;
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable discovery snapshot: {}", file, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Write the provider lists in the background. Calls made before the pending write starts
+     * are merged into it, and the state is read when the write runs, so it is always current.
+     *
+     * @param state Supplier of the provider lists keyed by service key.
+     */
+    public void scheduleWrite(Supplier<Map<String, List<ServiceMetaInfo>>> state) {
+        if (writeScheduled.compareAndSet(false, true)) {
+            WRITE_EXECUTOR.execute(() -> {
+                writeScheduled.set(false);
+                try {
+                    write(state.get());
+                } catch (IOException e) {
+                    log.warn("Failed to write discovery snapshot: {}", file, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Replace the snapshot file with the provider lists.
+     *
+     * @param serviceMap The provider lists keyed by service key.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(Map<String, List<ServiceMetaInfo>> serviceMap) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tempFile, JSONUtil.toJsonStr(serviceMap), StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
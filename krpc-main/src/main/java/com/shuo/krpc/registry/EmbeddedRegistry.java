@@ -0,0 +1,499 @@
+package com.shuo.krpc.registry;
+
+import cn.hutool.cron.CronUtil;
+import cn.hutool.cron.task.Task;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Embedded registry
+ * <p>
+ * Registers and discovers services through an {@link EmbeddedRegistryServer}. If no server is
+ * listening on a loopback address, one is started in-process, so discovery works offline without
+ * any external registry.
+ * <p>
+ * Like the etcd registry, all local nodes share one lease that the heartbeat keeps alive, and
+ * each discovered service is watched by prefix. Responses and pushed changes are handled in
+ * order on the connection's event loop, so the listing of a service is cached before any later
+ * change is applied to it. Registration and discovery only send a request and complete a future
+ * from its response, so they never block; the blocking methods wait for them through
+ * {@link BlockingRegistryAdapter}.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class EmbeddedRegistry extends BlockingRegistryAdapter {
+
+    private final Vertx vertx = Vertx.vertx();
+
+    private NetClient netClient;
+
+    private String host;
+
+    private int port;
+
+    private long timeout;
+
+    /**
+     * Server started in-process by this registry, if any
+     */
+    private EmbeddedRegistryServer localServer;
+
+    /**
+     * Current connection, or null before the first request and after a disconnection
+     */
+    private CompletableFuture<NetSocket> connection;
+
+    /**
+     * Callbacks of the requests awaiting a response, keyed by request ID
+     */
+    private final Map<Long, Consumer<JsonNode>> pendingRequestMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastRequestId = new AtomicLong();
+
+    /**
+     * All locally registered nodes keyed by their node key (for lease renewal)
+     */
+    private final Map<String, ServiceMetaInfo> localRegisteredNodeMap = new ConcurrentHashMap<>();
+
+    /**
+     * Lease shared by all locally registered nodes, or 0 before the first registration
+     */
+    private volatile long leaseId;
+
+    /**
+     * Grant of the process lease in flight, or null if none is
+     */
+    private CompletableFuture<Long> leaseGrant;
+
+    /**
+     * Cached services in registry
+     */
+    private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
+
+    /**
+     * Lease duration in milliseconds
+     */
+    long leaseDuration = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Heartbeat schedule cron expression
+     */
+    private static final String HEARTBEAT_SCHEDULE = "*/10 * * * * *";
+
+    private String heartbeatScheduleId;
+
+    /**
+     * Reads node metadata, ignoring the derived keys serialized from its getters
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public void init(RegistryConfig registryConfig) {
+        String address = registryConfig.getAddress();
+        URI uri = URI.create(address.contains("://") ? address : "tcp://" + address);
+        host = uri.getHost();
+        port = uri.getPort() == -1 ? EmbeddedRegistryServer.DEFAULT_PORT : uri.getPort();
+        timeout = registryConfig.getTimeout();
+        netClient = vertx.createNetClient(new NetClientOptions()
+                .setConnectTimeout(Math.toIntExact(timeout)));
+
+        try {
+            getConnection();
+        } catch (Exception e) {
+            if (!isLoopback(host)) {
+                throw new RuntimeException("Failed to connect to embedded registry " + address, e);
+            }
+            startLocalServer();
+        }
+
+        // Start heartbeat scheduler
+        sendHeartBeat();
+    }
+
+    /**
+     * Register several services under the process lease in one request.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @return A future completed once the server has stored the services.
+     */
+    @Override
+    public CompletableFuture<Void> registerAllAsync(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getLeaseIdAsync()
+                .thenCompose(grantedLeaseId -> putAsync(grantedLeaseId, serviceMetaInfoList))
+                .thenRun(() -> {
+                    for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                        localRegisteredNodeMap.put(serviceMetaInfo.getServiceNodeKey(),
+                                serviceMetaInfo);
+                    }
+                });
+    }
+
+    @Override
+    public CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo) {
+        String serviceNodeKey = serviceMetaInfo.getServiceNodeKey();
+        ObjectNode request = createRequest("delete");
+        request.putArray("keys").add(serviceNodeKey);
+        return callAsync(request, response -> {
+        }).thenRun(() -> localRegisteredNodeMap.remove(serviceNodeKey));
+    }
+
+    @Override
+    public CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
+        // Try to fetch from cache
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
+        if (cachedServiceMetaInfoList != null) {
+            return CompletableFuture.completedFuture(cachedServiceMetaInfoList);
+        }
+
+        // List the service and keep the cache up to date from its prefix watch
+        return watchAsync(serviceKey)
+                .<List<ServiceMetaInfo>>thenApply(response ->
+                        registryServiceCache.readCache(serviceKey))
+                .whenComplete((serviceMetaInfoList, e) -> {
+                    if (e != null) {
+                        log.error("Failed to get service list for key: {}", serviceKey, e);
+                    }
+                });
+    }
+
+    @Override
+    public void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+        registryServiceCache.setChangeListener(listener);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Deactivate current node");
+        if (heartbeatScheduleId != null) {
+            CronUtil.remove(heartbeatScheduleId);
+        }
+        // Deactivate node: revoking the lease deletes every key attached to it
+        try {
+            if (leaseId != 0) {
+                call(createRequest("revoke").put("leaseId", leaseId));
+            }
+        } catch (Exception e) {
+            log.error("Failed to revoke lease", e);
+        } finally {
+            leaseId = 0;
+            localRegisteredNodeMap.clear();
+            // Release resources
+            vertx.close();
+            if (localServer != null) {
+                localServer.close();
+            }
+        }
+    }
+
+    @Override
+    public void sendHeartBeat() {
+        // Keep the lease alive every 10 seconds
+        heartbeatScheduleId = CronUtil.schedule(HEARTBEAT_SCHEDULE, (Task) () -> {
+            try {
+                renew();
+            } catch (Exception e) {
+                log.error("Failed to renew registered nodes", e);
+            }
+        });
+
+        CronUtil.setMatchSecond(true);
+        if (!CronUtil.getScheduler().isStarted()) {
+            CronUtil.start();
+        }
+    }
+
+    /**
+     * Watch all nodes of a service by prefix, listing them into the cache first.
+     *
+     * @param serviceKey The key of the service whose nodes should be watched.
+     */
+    @Override
+    public void watch(String serviceKey) {
+        await(watchAsync(serviceKey));
+    }
+
+    private CompletableFuture<JsonNode> watchAsync(String serviceKey) {
+        return callAsync(createRequest("watch").put("prefix", serviceKey + "/"), response -> {
+            List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+            for (JsonNode kv : response.path("kvs")) {
+                serviceMetaInfoList.add(toServiceMetaInfo(kv.path("value")));
+            }
+            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
+        });
+    }
+
+    /**
+     * Keep the lease alive. If the server no longer knows it, for instance after a restart, a
+     * new lease is granted and all local nodes are registered again.
+     */
+    void renew() {
+        long currentLeaseId = leaseId;
+        if (currentLeaseId == 0 || localRegisteredNodeMap.isEmpty()) {
+            return;
+        }
+        JsonNode response = call(createRequest("keepAlive").put("leaseId", currentLeaseId));
+        if (response.path("found").asBoolean()) {
+            return;
+        }
+        synchronized (this) {
+            if (leaseId == currentLeaseId) {
+                leaseId = 0;
+            }
+        }
+        log.warn("Lease {} lost, registering local nodes again", currentLeaseId);
+        await(getLeaseIdAsync().thenCompose(grantedLeaseId -> putAsync(grantedLeaseId,
+                new ArrayList<>(localRegisteredNodeMap.values()))));
+    }
+
+    private CompletableFuture<JsonNode> putAsync(long leaseId,
+                                                 List<ServiceMetaInfo> serviceMetaInfoList) {
+        ObjectNode request = createRequest("put").put("leaseId", leaseId);
+        ArrayNode kvs = request.putArray("kvs");
+        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+            kvs.addObject()
+                    .put("key", serviceMetaInfo.getServiceNodeKey())
+                    .set("value", OBJECT_MAPPER.valueToTree(serviceMetaInfo));
+        }
+        return callAsync(request, response -> {
+        });
+    }
+
+    /**
+     * Get the process lease, granting it on first use. Concurrent callers share the grant in
+     * flight.
+     *
+     * @return A future of the lease ID.
+     */
+    private synchronized CompletableFuture<Long> getLeaseIdAsync() {
+        if (leaseId != 0) {
+            return CompletableFuture.completedFuture(leaseId);
+        }
+        if (leaseGrant != null) {
+            return leaseGrant;
+        }
+        CompletableFuture<Long> grant = grantAsync().thenApply(response -> {
+            long grantedLeaseId = response.path("leaseId").asLong();
+            synchronized (this) {
+                leaseId = grantedLeaseId;
+            }
+            return grantedLeaseId;
+        });
+        leaseGrant = grant;
+        // May run inline if the grant has already completed, so the local future is returned
+        grant.whenComplete((grantedLeaseId, e) -> {
+            synchronized (this) {
+                if (leaseGrant == grant) {
+                    leaseGrant = null;
+                }
+            }
+        });
+        return grant;
+    }
+
+    /**
+     * Ask the server for a new lease.
+     *
+     * @return A future of the grant response.
+     */
+    CompletableFuture<JsonNode> grantAsync() {
+        return callAsync(createRequest("grant").put("ttl", leaseDuration), response -> {
+        });
+    }
+
+    /**
+     * Apply changes pushed for a watched prefix to the cached list of its service, copying the
+     * list once per message however many nodes changed.
+     *
+     * @param message The pushed changes.
+     */
+    private void applyEvents(JsonNode message) {
+        String prefix = message.path("prefix").asText();
+        String serviceKey = prefix.substring(0, prefix.length() - 1);
+        Map<String, ServiceMetaInfo> changes = new LinkedHashMap<>();
+        for (JsonNode event : message.path("events")) {
+            String key = event.path("key").asText();
+            // Re-insert so that the map keeps the order of the last change of each node
+            changes.remove(key);
+            if (EmbeddedRegistryServer.EVENT_PUT.equals(event.path("type").asText())) {
+                changes.put(key, toServiceMetaInfo(event.path("value")));
+            } else {
+                changes.put(key, null);
+            }
+        }
+        registryServiceCache.updateCache(serviceKey, changes);
+    }
+
+    private static ObjectNode createRequest(String op) {
+        return OBJECT_MAPPER.createObjectNode().put("op", op);
+    }
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * @param request The request.
+     * @return The response.
+     */
+    private JsonNode call(ObjectNode request) {
+        return await(callAsync(request, response -> {
+        }));
+    }
+
+    /**
+     * Send a request.
+     *
+     * @param request    The request.
+     * @param onResponse Called with a successful response on the connection's event loop,
+     *                   before any message received after it is handled.
+     * @return A future of the response, failed if the request fails or times out.
+     */
+    private CompletableFuture<JsonNode> callAsync(ObjectNode request,
+                                                  Consumer<JsonNode> onResponse) {
+        long requestId = lastRequestId.incrementAndGet();
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pendingRequestMap.put(requestId, response -> {
+            if (response.path("ok").asBoolean()) {
+                onResponse.accept(response);
+                future.complete(response);
+            } else {
+                future.completeExceptionally(
+                        new RuntimeException(response.path("error").asText()));
+            }
+        });
+        getConnectionAsync().whenComplete((socket, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                EmbeddedRegistryServer.write(socket, request.put("id", requestId));
+            }
+        });
+        return future.orTimeout(timeout, TimeUnit.MILLISECONDS).handle((response, e) -> {
+            pendingRequestMap.remove(requestId);
+            if (e != null) {
+                throw new RuntimeException("Embedded registry request failed: "
+                        + request.path("op").asText(), e);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Get the connection, connecting first if there is none.
+     */
+    private NetSocket getConnection() throws Exception {
+        return getConnectionAsync().get(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized CompletableFuture<NetSocket> getConnectionAsync() {
+        if (connection == null || connection.isCompletedExceptionally()) {
+            connection = connect();
+        }
+        return connection;
+    }
+
+    private CompletableFuture<NetSocket> connect() {
+        CompletableFuture<NetSocket> future = netClient.connect(port, host)
+                .toCompletionStage().toCompletableFuture();
+        return future.thenApply(socket -> {
+            socket.handler(RecordParser.newDelimited("\n", buffer -> {
+                try {
+                    handleMessage(OBJECT_MAPPER.readTree(buffer.getBytes()));
+                } catch (IOException e) {
+                    log.error("Malformed message from embedded registry", e);
+                    socket.close();
+                }
+            }));
+            socket.closeHandler(v -> onDisconnect(socket));
+            return socket;
+        });
+    }
+
+    private void handleMessage(JsonNode message) {
+        if ("event".equals(message.path("op").asText())) {
+            applyEvents(message);
+            return;
+        }
+        Consumer<JsonNode> callback = pendingRequestMap.remove(message.path("id").asLong());
+        if (callback != null) {
+            callback.accept(message);
+        }
+    }
+
+    /**
+     * Drop the connection and everything that depended on it. Watches end with the connection,
+     * so cached services are listed again on the next discovery; the lease lives on the server
+     * and is checked by the next heartbeat.
+     */
+    private void onDisconnect(NetSocket socket) {
+        synchronized (this) {
+            if (connection != null && connection.getNow(null) == socket) {
+                connection = null;
+            }
+        }
+        log.warn("Disconnected from embedded registry {}:{}", host, port);
+        registryServiceCache.clearCache();
+    }
+
+    /**
+     * Start a server in-process, or connect to the one another registry started meanwhile.
+     */
+    private void startLocalServer() {
+        EmbeddedRegistryServer server = new EmbeddedRegistryServer();
+        try {
+            server.start(port);
+            localServer = server;
+        } catch (Exception e) {
+            log.info("Embedded registry port {} already taken, connecting to it", port);
+        }
+        try {
+            getConnection();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to connect to embedded registry on port " + port, e);
+        }
+    }
+
+    private static boolean isLoopback(String host) {
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static ServiceMetaInfo toServiceMetaInfo(JsonNode value) {
+        try {
+            return OBJECT_MAPPER.treeToValue(value, ServiceMetaInfo.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Malformed service node: " + value, e);
+        }
+    }
+}
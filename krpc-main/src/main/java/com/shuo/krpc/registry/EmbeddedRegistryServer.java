@@ -0,0 +1,381 @@
+package com.shuo.krpc.registry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Embedded Registry Server
+ * <p>
+ * A small in-memory registry served over Vert.x TCP, so that discovery can run without an
+ * external etcd, ZooKeeper or Redis. It is started in-process by {@link EmbeddedRegistry} or on
+ * its own through {@link #main(String[])}.
+ * <p>
+ * Requests and responses are newline-delimited JSON objects, and values are opaque JSON trees
+ * that are stored and sent back as they were received. Keys are kept in a sorted map so a
+ * prefix read is a range scan, each key is attached to a lease that expires unless kept alive,
+ * and every change is pushed to the connections watching a prefix of the key. All state is
+ * guarded by the server's monitor, and responses and pushes are written while holding it, so a
+ * watcher always receives the listing of a prefix before any change made after it.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class EmbeddedRegistryServer {
+
+    /**
+     * Default port of a standalone server
+     */
+    public static final int DEFAULT_PORT = 2381;
+
+    /**
+     * Interval in milliseconds between two scans for expired leases
+     */
+    private static final long EXPIRY_CHECK_INTERVAL = 500;
+
+    /**
+     * Change event types
+     */
+    static final String EVENT_PUT = "PUT";
+
+    static final String EVENT_DELETE = "DELETE";
+
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Vertx vertx = Vertx.vertx();
+
+    private NetServer netServer;
+
+    /**
+     * All keys in key order
+     */
+    private final TreeMap<String, Node> nodes = new TreeMap<>();
+
+    /**
+     * Live leases keyed by lease ID
+     */
+    private final Map<Long, Lease> leases = new HashMap<>();
+
+    /**
+     * Watching connections keyed by watched prefix
+     */
+    private final Map<String, Set<NetSocket>> watchers = new HashMap<>();
+
+    /**
+     * Revision of the last change
+     */
+    private long revision;
+
+    private long lastLeaseId;
+
+    private static class Node {
+
+        private final JsonNode value;
+
+        private final long leaseId;
+
+        private final long modRevision;
+
+        private Node(JsonNode value, long leaseId, long modRevision) {
+            this.value = value;
+            this.leaseId = leaseId;
+            this.modRevision = modRevision;
+        }
+    }
+
+    private static class Lease {
+
+        private final long ttl;
+
+        private final Set<String> keys = new HashSet<>();
+
+        private long expireTime;
+
+        private Lease(long ttl) {
+            this.ttl = ttl;
+            this.expireTime = System.currentTimeMillis() + ttl;
+        }
+    }
+
+    /**
+     * Start a standalone server.
+     *
+     * @param args The port to listen on, {@value #DEFAULT_PORT} by default.
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new EmbeddedRegistryServer().start(port);
+    }
+
+    /**
+     * Start listening, blocking until the server is bound.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @return The port the server listens on.
+     */
+    public int start(int port) {
+        netServer = vertx.createNetServer().connectHandler(this::handleConnection);
+        try {
+            netServer.listen(port).toCompletionStage().toCompletableFuture().join();
+        } catch (Exception e) {
+            vertx.close();
+            throw new RuntimeException("Failed to start embedded registry on port " + port, e);
+        }
+        vertx.setPeriodic(EXPIRY_CHECK_INTERVAL, timerId -> expireLeases());
+        log.info("Embedded registry started on port {}", netServer.actualPort());
+        return netServer.actualPort();
+    }
+
+    /**
+     * Stop the server and drop all of its state.
+     */
+    public void close() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+        synchronized (this) {
+            nodes.clear();
+            leases.clear();
+            watchers.clear();
+        }
+    }
+
+    private void handleConnection(NetSocket socket) {
+        socket.handler(RecordParser.newDelimited("\n", buffer -> {
+            try {
+                handleRequest(socket, OBJECT_MAPPER.readTree(buffer.getBytes()));
+            } catch (IOException e) {
+                log.error("Malformed request from {}", socket.remoteAddress(), e);
+                socket.close();
+            }
+        }));
+        socket.closeHandler(v -> removeWatcher(socket, null));
+    }
+
+    private void handleRequest(NetSocket socket, JsonNode request) {
+        ObjectNode response = OBJECT_MAPPER.createObjectNode()
+                .put("id", request.path("id").asLong());
+        String op = request.path("op").asText();
+        String prefix = request.path("prefix").asText();
+        long leaseId = request.path("leaseId").asLong();
+        synchronized (this) {
+            try {
+                switch (op) {
+                    case "grant":
+                        response.put("leaseId", grant(request.path("ttl").asLong()));
+                        break;
+                    case "keepAlive":
+                        response.put("found", keepAlive(leaseId));
+                        break;
+                    case "revoke":
+                        revoke(leaseId);
+                        break;
+                    case "put":
+                        put(leaseId, request.path("kvs"));
+                        break;
+                    case "delete":
+                        List<String> keys = new ArrayList<>();
+                        request.path("keys").forEach(key -> keys.add(key.asText()));
+                        delete(keys);
+                        break;
+                    case "get":
+                        response.set("kvs", range(prefix));
+                        break;
+                    case "watch":
+                        watchers.computeIfAbsent(prefix, key -> new HashSet<>()).add(socket);
+                        response.set("kvs", range(prefix));
+                        break;
+                    case "unwatch":
+                        removeWatcher(socket, prefix);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operation: " + op);
+                }
+                response.put("ok", true).put("revision", revision);
+            } catch (Exception e) {
+                response.put("ok", false).put("error", String.valueOf(e.getMessage()));
+            }
+            write(socket, response);
+        }
+    }
+
+    private long grant(long ttl) {
+        long leaseId = ++lastLeaseId;
+        leases.put(leaseId, new Lease(ttl));
+        return leaseId;
+    }
+
+    private boolean keepAlive(long leaseId) {
+        Lease lease = leases.get(leaseId);
+        if (lease == null) {
+            return false;
+        }
+        lease.expireTime = System.currentTimeMillis() + lease.ttl;
+        return true;
+    }
+
+    private void revoke(long leaseId) {
+        Lease lease = leases.remove(leaseId);
+        if (lease != null) {
+            removeKeys(lease.keys);
+        }
+    }
+
+    private void put(long leaseId, JsonNode kvs) {
+        Lease lease = leases.get(leaseId);
+        if (lease == null) {
+            throw new IllegalStateException("Lease not found: " + leaseId);
+        }
+        List<ObjectNode> events = new ArrayList<>(kvs.size());
+        for (JsonNode kv : kvs) {
+            String key = kv.path("key").asText();
+            JsonNode value = kv.path("value");
+            Node previous = nodes.put(key, new Node(value, leaseId, ++revision));
+            if (previous != null && previous.leaseId != leaseId) {
+                Lease previousLease = leases.get(previous.leaseId);
+                if (previousLease != null) {
+                    previousLease.keys.remove(key);
+                }
+            }
+            lease.keys.add(key);
+            events.add(createEvent(EVENT_PUT, key, value));
+        }
+        notifyWatchers(events);
+    }
+
+    private void delete(List<String> keys) {
+        for (String key : keys) {
+            Node node = nodes.get(key);
+            if (node != null) {
+                Lease lease = leases.get(node.leaseId);
+                if (lease != null) {
+                    lease.keys.remove(key);
+                }
+            }
+        }
+        removeKeys(keys);
+    }
+
+    private void removeKeys(Iterable<String> keys) {
+        List<ObjectNode> events = new ArrayList<>();
+        for (String key : keys) {
+            if (nodes.remove(key) != null) {
+                revision++;
+                events.add(createEvent(EVENT_DELETE, key, null));
+            }
+        }
+        notifyWatchers(events);
+    }
+
+    private synchronized void expireLeases() {
+        long now = System.currentTimeMillis();
+        Iterator<Lease> iterator = leases.values().iterator();
+        while (iterator.hasNext()) {
+            Lease lease = iterator.next();
+            if (lease.expireTime <= now) {
+                iterator.remove();
+                log.info("Lease expired with {} keys", lease.keys.size());
+                removeKeys(lease.keys);
+            }
+        }
+    }
+
+    private ArrayNode range(String prefix) {
+        ArrayNode kvs = OBJECT_MAPPER.createArrayNode();
+        for (Map.Entry<String, Node> entry : nodes.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            kvs.addObject()
+                    .put("key", entry.getKey())
+                    .put("modRevision", entry.getValue().modRevision)
+                    .set("value", entry.getValue().value);
+        }
+        return kvs;
+    }
+
+    /**
+     * Push the events to every connection watching a prefix of their keys, one message per
+     * watched prefix.
+     */
+    private void notifyWatchers(List<ObjectNode> events) {
+        if (events.isEmpty() || watchers.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Set<NetSocket>> entry : watchers.entrySet()) {
+            String prefix = entry.getKey();
+            ArrayNode matched = OBJECT_MAPPER.createArrayNode();
+            for (ObjectNode event : events) {
+                if (event.path("key").asText().startsWith(prefix)) {
+                    matched.add(event);
+                }
+            }
+            if (matched.isEmpty()) {
+                continue;
+            }
+            ObjectNode message = OBJECT_MAPPER.createObjectNode()
+                    .put("op", "event")
+                    .put("prefix", prefix)
+                    .put("revision", revision);
+            message.set("events", matched);
+            for (NetSocket socket : entry.getValue()) {
+                write(socket, message);
+            }
+        }
+    }
+
+    /**
+     * Stop pushing a prefix to a connection.
+     *
+     * @param prefix The prefix, or null for every prefix the connection watches.
+     */
+    private synchronized void removeWatcher(NetSocket socket, String prefix) {
+        Iterator<Map.Entry<String, Set<NetSocket>>> iterator = watchers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Set<NetSocket>> entry = iterator.next();
+            if (prefix == null || prefix.equals(entry.getKey())) {
+                entry.getValue().remove(socket);
+                if (entry.getValue().isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static ObjectNode createEvent(String type, String key, JsonNode value) {
+        ObjectNode event = OBJECT_MAPPER.createObjectNode()
+                .put("type", type)
+                .put("key", key);
+        if (value != null) {
+            event.set("value", value);
+        }
+        return event;
+    }
+
+    /**
+     * Write a message followed by the delimiter.
+     */
+    static void write(NetSocket socket, JsonNode message) {
+        try {
+            socket.write(Buffer.buffer(OBJECT_MAPPER.writeValueAsBytes(message))
+                    .appendString("\n"));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write registry message", e);
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package com.shuo.krpc.registry;
 
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.collection.ConcurrentHashSet;
 import cn.hutool.cron.CronUtil;
 import cn.hutool.cron.task.Task;
 import cn.hutool.json.JSONUtil;
 import com.shuo.krpc.config.RegistryConfig;
 import com.shuo.krpc.model.ServiceMetaInfo;
 import io.etcd.jetcd.*;
+import io.etcd.jetcd.kv.GetResponse;
+import io.etcd.jetcd.lease.LeaseKeepAliveResponse;
+import io.etcd.jetcd.op.Op;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
+import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.support.CloseableClient;
 import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchResponse;
+import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Etcd registry
@@ -25,20 +34,45 @@ import java.util.stream.Collectors;
  * Manages service registration and discovery using etcd. It provides functionality to register,
  * unregister, discover services, handle heartbeat checks, and manage watch mechanisms for service
  * nodes
+ * <p>
+ * All nodes registered by one process share a single lease, which is kept alive over jetcd's
+ * streaming keep-alive rather than by re-registering. If the lease is lost, for example after a
+ * long network partition, a new one is granted and the local nodes are published again.
+ * <p>
+ * Discovery lists a service once and then follows a single prefix watch on it, so the cached
+ * provider list is kept current from change events without listing etcd again.
+ * <p>
+ * Registration and discovery are built on jetcd's futures and never block; the blocking methods
+ * wait for them through {@link BlockingRegistryAdapter}.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 @Slf4j
-public class EtcdRegistry implements Registry {
+public class EtcdRegistry extends BlockingRegistryAdapter {
 
     private Client client;
 
     private KV kvClient;
 
     /**
-     * A set of all locally registered nodes' keys (for lease renewal)
+     * All locally registered nodes keyed by their etcd key (published again if the lease is lost)
+     */
+    private final Map<String, ServiceMetaInfo> localRegisteredNodeMap = new ConcurrentHashMap<>();
+
+    /**
+     * Lease shared by all locally registered nodes, or 0 before the first registration
+     */
+    private volatile long leaseId;
+
+    /**
+     * Grant of the process lease in flight, or null if none is
+     */
+    private CompletableFuture<Long> leaseGrant;
+
+    /**
+     * Keep-alive stream of the lease
      */
-    private final Set<String> localRegisteredNodeKeySet = new ConcurrentHashSet<>();
+    private CloseableClient keepAliveClient;
 
     /**
      * Cached services in registry
@@ -46,9 +80,9 @@ public class EtcdRegistry implements Registry {
     private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
 
     /**
-     * A set of all watching keys
+     * Prefix watches keyed by service key
      */
-    private final Set<String> watchingKeySet = new ConcurrentHashSet<>();
+    private final Map<String, ServiceWatch> serviceWatchMap = new ConcurrentHashMap<>();
 
     /**
      * Root node
@@ -61,10 +95,28 @@ public class EtcdRegistry implements Registry {
     private static final int LEASE_DURATION_SECONDS = 30;
 
     /**
-     * Heartbeat schedule cron expression
+     * Maximum number of operations in one transaction (the etcd server default)
+     */
+    private static final int MAX_TXN_OPS = 128;
+
+    /**
+     * Lease check schedule cron expression
      */
     private static final String HEARTBEAT_SCHEDULE = "*/10 * * * * *";
 
+    public EtcdRegistry() {
+    }
+
+    /**
+     * Create a registry over an existing client, without starting the heartbeat.
+     *
+     * @param client The etcd client.
+     */
+    EtcdRegistry(Client client) {
+        this.client = client;
+        this.kvClient = client.getKVClient();
+    }
+
     @Override
     public void init(RegistryConfig registryConfig) {
         client = Client.builder()
@@ -77,85 +129,101 @@ public class EtcdRegistry implements Registry {
         sendHeartBeat();
     }
 
+    /**
+     * Register several services under the process lease, in as few transactions as etcd allows.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @return A future completed once every transaction is committed.
+     */
     @Override
-    public void register(ServiceMetaInfo serviceMetaInfo) throws Exception {
-        // Create lease and kv clients
-        Lease leaseClient = client.getLeaseClient();
-
-        // Create a lease
-        long leaseId = leaseClient.grant(LEASE_DURATION_SECONDS).get().getID();
-
-        // Create service info
-        String registerKey = ETCD_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-        ByteSequence key = getByteSequence(registerKey);
-        ByteSequence value = getByteSequence(JSONUtil.toJsonStr(serviceMetaInfo));
-
-        // Associate service information with lease
-        PutOption putOption = PutOption.builder().withLeaseId(leaseId).build();
-        kvClient.put(key, value, putOption).get();
-
-        localRegisteredNodeKeySet.add(registerKey);
-        log.info("Service registered: {}", serviceMetaInfo.getServiceNodeKey());
+    public CompletableFuture<Void> registerAllAsync(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getLeaseIdAsync().thenCompose(grantedLeaseId -> {
+            // Associate service information with the process lease
+            PutOption putOption = PutOption.builder().withLeaseId(grantedLeaseId).build();
+            List<CompletableFuture<Void>> commits = new ArrayList<>();
+            for (int from = 0; from < serviceMetaInfoList.size(); from += MAX_TXN_OPS) {
+                List<ServiceMetaInfo> batch = serviceMetaInfoList.subList(from,
+                        Math.min(from + MAX_TXN_OPS, serviceMetaInfoList.size()));
+                Op[] ops = new Op[batch.size()];
+                for (int i = 0; i < ops.length; i++) {
+                    ServiceMetaInfo serviceMetaInfo = batch.get(i);
+                    String registerKey = ETCD_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
+                    ops[i] = Op.put(getByteSequence(registerKey),
+                            getByteSequence(JSONUtil.toJsonStr(serviceMetaInfo)), putOption);
+                }
+                commits.add(kvClient.txn().Then(ops).commit().thenRun(() -> {
+                    for (ServiceMetaInfo serviceMetaInfo : batch) {
+                        localRegisteredNodeMap.put(
+                                ETCD_ROOT_PATH + serviceMetaInfo.getServiceNodeKey(),
+                                serviceMetaInfo);
+                        log.info("Service registered: {}", serviceMetaInfo.getServiceNodeKey());
+                    }
+                }));
+            }
+            return CompletableFuture.allOf(commits.toArray(new CompletableFuture[0]));
+        });
     }
 
     @Override
-    public void unregister(ServiceMetaInfo serviceMetaInfo) {
+    public CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo) {
         String unregisterKey = ETCD_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-        try {
-            kvClient.delete(getByteSequence(unregisterKey)).get();
-            localRegisteredNodeKeySet.remove(unregisterKey);
+        return kvClient.delete(getByteSequence(unregisterKey)).handle((response, e) -> {
+            if (e != null) {
+                log.error("Failed to unregister service: {}",
+                        serviceMetaInfo.getServiceNodeKey(), e);
+                throw new RuntimeException("Error unregistering service", e);
+            }
+            localRegisteredNodeMap.remove(unregisterKey);
             log.info("Service unregistered: {}", serviceMetaInfo.getServiceNodeKey());
-            registryServiceCache.clearCache(unregisterKey);
-        } catch (Exception e) {
-            log.error("Failed to unregister service: {}", serviceMetaInfo.getServiceNodeKey(), e);
-            throw new RuntimeException("Error unregistering service", e);
-        }
+            return null;
+        });
     }
 
     @Override
-    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+    public CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
         // Try to fetch from cache
         List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
         if (cachedServiceMetaInfoList != null) {
-            return cachedServiceMetaInfoList;
+            return CompletableFuture.completedFuture(cachedServiceMetaInfoList);
         }
 
-        String searchPrefix = ETCD_ROOT_PATH + serviceKey + "/";
+        // List the service once and keep the cache up to date from its prefix watch
+        return getServiceWatch(serviceKey).loadAsync().whenComplete((serviceMetaInfoList, e) -> {
+            if (e != null) {
+                log.error("Failed to get service list for key: {}", serviceKey, e);
+            }
+        });
+    }
 
-        try {
-            GetOption getOption = GetOption.builder().isPrefix(true).build();
-            List<KeyValue> keyValues = kvClient.get(getByteSequence(searchPrefix), getOption)
-                    .get()
-                    .getKvs();
-
-            List<ServiceMetaInfo> serviceMetaInfoList = keyValues.stream()
-                    .map(keyValue -> {
-                        String key = keyValue.getKey().toString(StandardCharsets.UTF_8);
-                        // Watch key
-                        watch(key);
-
-                        String value = keyValue.getValue().toString(StandardCharsets.UTF_8);
-                        return JSONUtil.toBean(value, ServiceMetaInfo.class);
-                    })
-                    .collect(Collectors.toList());
-            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
-            return serviceMetaInfoList;
-        } catch (Exception e) {
-            log.error("Failed to get service list for key: {}", serviceKey, e);
-            return null;
-        }
+    @Override
+    public void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+        registryServiceCache.setChangeListener(listener);
     }
 
     @Override
     public void destroy() {
         log.info("Deactivate current node");
-        // Deactivate node
-        for (String key : localRegisteredNodeKeySet) {
+        // Deactivate node: revoking the lease deletes every key attached to it
+        long currentLeaseId;
+        synchronized (this) {
+            currentLeaseId = leaseId;
+            leaseId = 0;
+            if (keepAliveClient != null) {
+                keepAliveClient.close();
+                keepAliveClient = null;
+            }
+        }
+        localRegisteredNodeMap.clear();
+        serviceWatchMap.values().forEach(ServiceWatch::reset);
+        if (currentLeaseId != 0) {
             try {
-                kvClient.delete(getByteSequence(key)).get();
+                client.getLeaseClient().revoke(currentLeaseId).get();
             } catch (Exception e) {
-                log.error("Failed to deactivate key: {}", key, e);
-                throw new RuntimeException(key + " failed to deactivate", e);
+                log.error("Failed to revoke lease: {}", currentLeaseId, e);
+                throw new RuntimeException(currentLeaseId + " failed to revoke", e);
             }
         }
 
@@ -171,28 +239,17 @@ public class EtcdRegistry implements Registry {
         }
     }
 
+    /**
+     * The lease itself is renewed by the keep-alive stream. This schedules a periodic check that
+     * publishes the local nodes again under a new lease if the previous one was lost and could
+     * not be replaced at the time.
+     */
     @Override
     public void sendHeartBeat() {
-        // Renew every 10 seconds
+        // Check every 10 seconds
         CronUtil.schedule(HEARTBEAT_SCHEDULE, (Task) () -> {
-            for (String key : localRegisteredNodeKeySet) {
-                try {
-                    List<KeyValue> keyValues = kvClient
-                            .get(getByteSequence(key))
-                            .get()
-                            .getKvs();
-                    if (CollUtil.isEmpty(keyValues)) {
-                        continue;
-                    }
-
-                    KeyValue keyValue = keyValues.get(0);
-                    String value = keyValue.getValue().toString(StandardCharsets.UTF_8);
-                    ServiceMetaInfo serviceMetaInfo = JSONUtil.toBean(value, ServiceMetaInfo.class);
-                    register(serviceMetaInfo);
-                } catch (Exception e) {
-                    log.error("Failed to renew lease for key: {}", key, e);
-                    throw new RuntimeException(key + " failed to renew", e);
-                }
+            if (leaseId == 0 && !localRegisteredNodeMap.isEmpty()) {
+                republish();
             }
         });
 
@@ -200,35 +257,249 @@ public class EtcdRegistry implements Registry {
         CronUtil.start();
     }
 
+    /**
+     * Watch all nodes of a service with a single prefix watch, listing them first if the service
+     * is not watched yet.
+     *
+     * @param serviceKey The key of the service whose nodes should be watched.
+     */
     @Override
-    public void watch(String serviceNodeKey) {
-        Watch watchClient = client.getWatchClient();
-        // Start watching
-        boolean newWatch = watchingKeySet.add(serviceNodeKey);
-        if (newWatch) {
-            watchClient.watch(getByteSequence(serviceNodeKey), response -> {
-                for (WatchEvent event : response.getEvents()) {
-                    switch (event.getEventType()) {
-                        case DELETE:
-                            // Remove cache for specific service key
-                            registryServiceCache.clearCache(serviceNodeKey);
-                            break;
-                        case PUT:
-                            String updatedValue = event.getKeyValue().getValue()
-                                    .toString(StandardCharsets.UTF_8);
-                            ServiceMetaInfo updatedMetaInfo = JSONUtil.toBean(updatedValue,
-                                    ServiceMetaInfo.class);
-                            registryServiceCache.updateCache(serviceNodeKey, updatedMetaInfo);
-                            break;
-                        default:
-                            break;
-                    }
+    public void watch(String serviceKey) {
+        try {
+            await(getServiceWatch(serviceKey).loadAsync());
+        } catch (Exception e) {
+            log.error("Failed to watch service: {}", serviceKey, e);
+            throw new RuntimeException(serviceKey + " failed to watch", e);
+        }
+    }
+
+    private ServiceWatch getServiceWatch(String serviceKey) {
+        return serviceWatchMap.computeIfAbsent(serviceKey, ServiceWatch::new);
+    }
+
+    /**
+     * Get the process lease, granting it and starting its keep-alive stream on first use.
+     * Concurrent callers share the grant in flight.
+     *
+     * @return A future of the lease ID.
+     */
+    private synchronized CompletableFuture<Long> getLeaseIdAsync() {
+        if (leaseId != 0) {
+            return CompletableFuture.completedFuture(leaseId);
+        }
+        if (leaseGrant != null) {
+            return leaseGrant;
+        }
+        CompletableFuture<Long> grant = client.getLeaseClient().grant(LEASE_DURATION_SECONDS)
+                .thenApply(response -> keepAlive(response.getID()));
+        leaseGrant = grant;
+        // May run inline if the grant has already completed, so the local future is returned
+        grant.whenComplete((grantedLeaseId, e) -> {
+            synchronized (this) {
+                if (leaseGrant == grant) {
+                    leaseGrant = null;
                 }
-            });
+            }
+        });
+        return grant;
+    }
+
+    /**
+     * Start the keep-alive stream of a newly granted lease and make it the process lease.
+     *
+     * @param grantedLeaseId The lease.
+     * @return The lease ID.
+     */
+    private synchronized long keepAlive(long grantedLeaseId) {
+        keepAliveClient = client.getLeaseClient().keepAlive(grantedLeaseId,
+                new StreamObserver<LeaseKeepAliveResponse>() {
+                    @Override
+                    public void onNext(LeaseKeepAliveResponse response) {
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        log.warn("Lease keep-alive failed: {}", grantedLeaseId, throwable);
+                        onLeaseLost(grantedLeaseId);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        onLeaseLost(grantedLeaseId);
+                    }
+                });
+        leaseId = grantedLeaseId;
+        return leaseId;
+    }
+
+    /**
+     * Drop a lost lease and publish the local nodes again under a new one.
+     *
+     * @param lostLeaseId The lease that was lost.
+     */
+    private void onLeaseLost(long lostLeaseId) {
+        synchronized (this) {
+            if (leaseId != lostLeaseId) {
+                return;
+            }
+            leaseId = 0;
+            if (keepAliveClient != null) {
+                keepAliveClient.close();
+                keepAliveClient = null;
+            }
         }
+        republish();
+    }
+
+    /**
+     * Publish all local nodes again under the process lease.
+     */
+    private void republish() {
+        registerAllAsync(new ArrayList<>(localRegisteredNodeMap.values()))
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        // Retried by the next scheduled check
+                        log.error("Failed to publish local nodes again", e);
+                    }
+                });
     }
 
     private ByteSequence getByteSequence(String str) {
         return ByteSequence.from(str, StandardCharsets.UTF_8);
     }
+
+    /**
+     * The nodes of one service, kept up to date by a prefix watch
+     * <p>
+     * The service is listed once, and the watch starts right after the revision of that listing,
+     * so no change is missed. Each PUT or DELETE event is then applied as a delta and the cached
+     * provider list is replaced. Events at or below the revision already applied are discarded.
+     * If the watch fails, for example because its start revision was compacted, the state is
+     * reset and the next discovery lists the service again.
+     */
+    private class ServiceWatch {
+
+        private final String serviceKey;
+
+        private final String prefix;
+
+        /**
+         * Nodes keyed by etcd key, in listing and then arrival order
+         */
+        private final Map<String, ServiceMetaInfo> nodes = new LinkedHashMap<>();
+
+        /**
+         * Revision of the last listing or event applied
+         */
+        private long revision;
+
+        private Watch.Watcher watcher;
+
+        private ServiceWatch(String serviceKey) {
+            this.serviceKey = serviceKey;
+            this.prefix = ETCD_ROOT_PATH + serviceKey + "/";
+        }
+
+        /**
+         * List the service and start watching it, unless that has already been done.
+         *
+         * @return A future of the current provider list, failed if the listing fails.
+         */
+        CompletableFuture<List<ServiceMetaInfo>> loadAsync() {
+            synchronized (this) {
+                if (watcher != null) {
+                    return CompletableFuture.completedFuture(publish());
+                }
+            }
+            return kvClient.get(getByteSequence(prefix),
+                    GetOption.builder().isPrefix(true).build()).thenApply(this::start);
+        }
+
+        /**
+         * Cache the listing and watch the service from the revision after it.
+         *
+         * @param getResponse The listing.
+         * @return The current provider list.
+         */
+        private synchronized List<ServiceMetaInfo> start(GetResponse getResponse) {
+            if (watcher != null) {
+                // Another discovery listed the service and started watching meanwhile
+                return publish();
+            }
+            nodes.clear();
+            for (KeyValue keyValue : getResponse.getKvs()) {
+                nodes.put(keyValue.getKey().toString(StandardCharsets.UTF_8),
+                        toServiceMetaInfo(keyValue));
+            }
+            revision = getResponse.getHeader().getRevision();
+
+            WatchOption watchOption = WatchOption.builder()
+                    .isPrefix(true)
+                    .withRevision(revision + 1)
+                    .build();
+            watcher = client.getWatchClient().watch(getByteSequence(prefix), watchOption,
+                    Watch.listener(this::apply, throwable -> {
+                        log.warn("Watch failed for service: {}", serviceKey, throwable);
+                        reset();
+                    }, this::reset));
+            return publish();
+        }
+
+        /**
+         * Apply the events of a watch response as deltas to the node list.
+         *
+         * @param response The watch response.
+         */
+        private synchronized void apply(WatchResponse response) {
+            // Every key written by one transaction shares its revision, so events are compared
+            // with the revision applied before this response rather than the previous event
+            long appliedRevision = revision;
+            boolean changed = false;
+            for (WatchEvent event : response.getEvents()) {
+                KeyValue keyValue = event.getKeyValue();
+                if (keyValue.getModRevision() <= appliedRevision) {
+                    // Already reflected by the listing or an earlier event
+                    continue;
+                }
+                String key = keyValue.getKey().toString(StandardCharsets.UTF_8);
+                switch (event.getEventType()) {
+                    case PUT:
+                        nodes.put(key, toServiceMetaInfo(keyValue));
+                        changed = true;
+                        break;
+                    case DELETE:
+                        changed |= nodes.remove(key) != null;
+                        break;
+                    default:
+                        break;
+                }
+                revision = Math.max(revision, keyValue.getModRevision());
+            }
+            if (changed && watcher != null) {
+                publish();
+            }
+        }
+
+        /**
+         * Stop watching and drop the cached nodes, so the next discovery lists them again.
+         */
+        private synchronized void reset() {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+            nodes.clear();
+            revision = 0;
+            registryServiceCache.clearCache(serviceKey);
+        }
+
+        private List<ServiceMetaInfo> publish() {
+            return registryServiceCache.writeCache(serviceKey, new ArrayList<>(nodes.values()));
+        }
+
+        private ServiceMetaInfo toServiceMetaInfo(KeyValue keyValue) {
+            return JSONUtil.toBean(keyValue.getValue().toString(StandardCharsets.UTF_8),
+                    ServiceMetaInfo.class);
+        }
+    }
 }
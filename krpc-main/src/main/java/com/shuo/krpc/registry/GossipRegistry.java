@@ -0,0 +1,863 @@
+package com.shuo.krpc.registry;
+
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
+/**
+ * Gossip registry
+ * <p>
+ * A decentralized registry in which providers and consumers form a SWIM membership over UDP, so
+ * no external registry is needed. Each protocol period a member pings one other member in
+ * shuffled round-robin order; a member that misses its ack is probed indirectly through a few
+ * others, then suspected, and declared dead if it does not refute the suspicion in time.
+ * <p>
+ * Membership changes and {@link ServiceMetaInfo} changes are piggy-backed on the pings and acks,
+ * each update a number of times proportional to the logarithm of the member count, so an update
+ * reaches every member in O(log N) periods. Joining members and, periodically, random pairs of
+ * members exchange their full state to repair anything a lost datagram left behind. Discovery is
+ * served from the local membership table without any remote round trip.
+ * <p>
+ * The registry address is a comma-separated list of seed members ({@code host:port}) to join
+ * through.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class GossipRegistry implements Registry {
+
+    /**
+     * Member states
+     */
+    static final String STATUS_ALIVE = "ALIVE";
+
+    static final String STATUS_SUSPECT = "SUSPECT";
+
+    static final String STATUS_DEAD = "DEAD";
+
+    /**
+     * Budget in bytes for the updates piggy-backed on one message, so that pings fit a typical
+     * MTU
+     */
+    private static final int MAX_PIGGYBACK_BYTES = 1200;
+
+    /**
+     * Largest datagram a member accepts
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * Protocol periods between two full state exchanges with a random member
+     */
+    private static final int PUSH_PULL_PERIODS = 30;
+
+    /**
+     * Protocol periods a dead member is remembered, so stale gossip cannot bring it back
+     */
+    private static final int DEAD_RETENTION_PERIODS = 30;
+
+    /**
+     * Services of a member sent per state datagram
+     */
+    private static final int SERVICES_PER_RECORD = 100;
+
+    /**
+     * What the receiver of a state datagram sends back
+     */
+    private static final String REPLY_NONE = "none";
+
+    private static final String REPLY_SELF = "self";
+
+    private static final String REPLY_ALL = "all";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Vertx vertx;
+
+    private DatagramSocket socket;
+
+    private long interval;
+
+    private long pingTimeout;
+
+    private int indirectChecks;
+
+    private int suspicionMultiplier;
+
+    private int retransmitMultiplier;
+
+    private final List<String> seeds = new ArrayList<>();
+
+    /**
+     * This member
+     */
+    private Member self;
+
+    /**
+     * Last version given to a local service change
+     */
+    private long lastServiceVersion;
+
+    /**
+     * Other members keyed by member ID
+     */
+    private final Map<String, Member> members = new HashMap<>();
+
+    /**
+     * Providers of the live members, keyed by service key and then node key
+     */
+    private final Map<String, Map<String, ServiceMetaInfo>> serviceIndex = new HashMap<>();
+
+    /**
+     * Cached services in registry, rewritten from the index on every change
+     */
+    private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
+
+    /**
+     * Updates still to be piggy-backed, keyed by what they are about so that a newer update
+     * replaces an older one
+     */
+    private final Map<String, Update> updateQueue = new LinkedHashMap<>();
+
+    /**
+     * Probe order of the current round
+     */
+    private final List<String> probeOrder = new ArrayList<>();
+
+    private int probeIndex;
+
+    private Probe probe;
+
+    /**
+     * Indirect probes run for other members, keyed by the sequence number of our ping
+     */
+    private final Map<Long, Relay> relays = new HashMap<>();
+
+    private long lastSequence;
+
+    private long period;
+
+    private static class Member {
+
+        private final String id;
+
+        private final String host;
+
+        private final int port;
+
+        private long incarnation;
+
+        private String status = STATUS_ALIVE;
+
+        /**
+         * When a suspect member is declared dead, or a dead member is forgotten
+         */
+        private long deadline;
+
+        /**
+         * Services keyed by node key; removed services are kept as entries without metadata
+         */
+        private final Map<String, ServiceEntry> services = new HashMap<>();
+
+        private Member(String id, String host, int port) {
+            this.id = id;
+            this.host = host;
+            this.port = port;
+        }
+
+        private boolean isLive() {
+            return !STATUS_DEAD.equals(status);
+        }
+    }
+
+    private static class ServiceEntry {
+
+        private final long version;
+
+        private final ServiceMetaInfo serviceMetaInfo;
+
+        private ServiceEntry(long version, ServiceMetaInfo serviceMetaInfo) {
+            this.version = version;
+            this.serviceMetaInfo = serviceMetaInfo;
+        }
+    }
+
+    private static class Update {
+
+        private final ObjectNode body;
+
+        private final int size;
+
+        private int transmits;
+
+        private Update(ObjectNode body) {
+            this.body = body;
+            this.size = body.toString().length();
+        }
+    }
+
+    private static class Probe {
+
+        private final long sequence;
+
+        private final String memberId;
+
+        private boolean acked;
+
+        private Probe(long sequence, String memberId) {
+            this.sequence = sequence;
+            this.memberId = memberId;
+        }
+    }
+
+    private static class Relay {
+
+        private final String host;
+
+        private final int port;
+
+        private final long sequence;
+
+        private Relay(String host, int port, long sequence) {
+            this.host = host;
+            this.port = port;
+            this.sequence = sequence;
+        }
+    }
+
+    @Override
+    public void init(RegistryConfig registryConfig) {
+        interval = registryConfig.getGossipInterval();
+        pingTimeout = registryConfig.getGossipPingTimeout();
+        indirectChecks = registryConfig.getGossipIndirectChecks();
+        suspicionMultiplier = registryConfig.getGossipSuspicionMultiplier();
+        retransmitMultiplier = registryConfig.getGossipRetransmitMultiplier();
+        String host = StrUtil.blankToDefault(registryConfig.getGossipHost(),
+                NetUtil.getLocalhostStr());
+
+        vertx = Vertx.vertx();
+        socket = vertx.createDatagramSocket(new DatagramSocketOptions()
+                .setReceiveBufferSize(MAX_DATAGRAM_SIZE));
+        try {
+            socket.listen(registryConfig.getGossipPort(), "0.0.0.0")
+                    .toCompletionStage().toCompletableFuture().join();
+        } catch (Exception e) {
+            vertx.close();
+            throw new RuntimeException("Failed to bind gossip port "
+                    + registryConfig.getGossipPort(), e);
+        }
+        int port = socket.localAddress().port();
+        synchronized (this) {
+            self = new Member(host + ":" + port, host, port);
+            for (String seed : StrUtil.splitTrim(registryConfig.getAddress(), ',')) {
+                if (seed.contains("://")) {
+                    seed = StrUtil.subAfter(seed, "://", false);
+                }
+                if (!seed.contains(":")) {
+                    vertx.close();
+                    throw new RuntimeException("Gossip seed must be host:port: " + seed);
+                }
+                if (!seed.equals(self.id)) {
+                    seeds.add(seed);
+                }
+            }
+            enqueue(createMemberUpdate(self));
+        }
+        socket.handler(this::handlePacket);
+        vertx.setPeriodic(interval, timerId -> tick());
+        log.info("Gossip member {} started with seeds {}", self.id, seeds);
+
+        // Join through the seeds
+        synchronized (this) {
+            sendStateToSeeds();
+        }
+    }
+
+    @Override
+    public void register(ServiceMetaInfo serviceMetaInfo) {
+        registerAll(Collections.singletonList(serviceMetaInfo));
+    }
+
+    @Override
+    public synchronized void registerAll(List<ServiceMetaInfo> serviceMetaInfoList) {
+        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+            putLocalService(serviceMetaInfo.getServiceNodeKey(), serviceMetaInfo);
+        }
+    }
+
+    @Override
+    public synchronized void unregister(ServiceMetaInfo serviceMetaInfo) {
+        putLocalService(serviceMetaInfo.getServiceNodeKey(), null);
+    }
+
+    @Override
+    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
+        return cachedServiceMetaInfoList != null ? cachedServiceMetaInfoList
+                : Collections.emptyList();
+    }
+
+    @Override
+    public void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+        registryServiceCache.setChangeListener(listener);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Deactivate current node");
+        synchronized (this) {
+            // Leave gracefully: tell every live member directly rather than waiting to be
+            // suspected
+            self.incarnation++;
+            self.status = STATUS_DEAD;
+            for (Member member : members.values()) {
+                if (member.isLive()) {
+                    sendRecord(member.host, member.port, self, REPLY_NONE);
+                }
+            }
+        }
+        close();
+    }
+
+    /**
+     * Stop taking part in the protocol without telling anyone, as a crashed member would.
+     */
+    void close() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    @Override
+    public void sendHeartBeat() {
+        // No heartbeat is needed: members are probed by the gossip protocol itself
+    }
+
+    @Override
+    public void watch(String serviceNodeKey) {
+        // Every member already receives all changes
+    }
+
+    /**
+     * ID of this member.
+     */
+    String getMemberId() {
+        return self.id;
+    }
+
+    /**
+     * Run one protocol period.
+     */
+    private synchronized void tick() {
+        period++;
+        long now = System.currentTimeMillis();
+        expireMembers(now);
+
+        // The previous probe got no ack, directly or indirectly
+        if (probe != null && !probe.acked) {
+            Member member = members.get(probe.memberId);
+            if (member != null && STATUS_ALIVE.equals(member.status)) {
+                applyMemberUpdate(member.id, member.host, member.port, member.incarnation,
+                        STATUS_SUSPECT);
+            }
+        }
+        probe = null;
+
+        if (period % PUSH_PULL_PERIODS == 0 || countLiveMembers() == 0) {
+            pushPull();
+        }
+
+        Member target = nextProbeTarget();
+        if (target == null) {
+            return;
+        }
+        Probe current = new Probe(++lastSequence, target.id);
+        probe = current;
+        send(target.host, target.port, createMessage("ping").put("seq", current.sequence));
+        vertx.setTimer(pingTimeout, timerId -> probeIndirectly(current));
+    }
+
+    /**
+     * Ask other members to probe a member that missed its direct ack.
+     */
+    private synchronized void probeIndirectly(Probe current) {
+        if (current != probe || current.acked) {
+            return;
+        }
+        Member target = members.get(current.memberId);
+        if (target == null) {
+            return;
+        }
+        List<Member> candidates = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (STATUS_ALIVE.equals(member.status) && member != target) {
+                candidates.add(member);
+            }
+        }
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+        for (Member member : candidates.subList(0, Math.min(indirectChecks, candidates.size()))) {
+            send(member.host, member.port, createMessage("pingReq")
+                    .put("seq", current.sequence)
+                    .put("targetHost", target.host)
+                    .put("targetPort", target.port));
+        }
+    }
+
+    private synchronized void handlePacket(DatagramPacket packet) {
+        JsonNode message;
+        try {
+            message = OBJECT_MAPPER.readTree(packet.data().getBytes());
+        } catch (IOException e) {
+            log.warn("Malformed gossip message from {}", packet.sender());
+            return;
+        }
+        for (JsonNode update : message.path("updates")) {
+            applyUpdate(update);
+        }
+
+        String senderHost = packet.sender().host();
+        int senderPort = packet.sender().port();
+        long sequence = message.path("seq").asLong();
+        switch (message.path("type").asText()) {
+            case "ping":
+                send(senderHost, senderPort, createMessage("ack").put("seq", sequence));
+                break;
+            case "ack":
+                if (probe != null && probe.sequence == sequence) {
+                    probe.acked = true;
+                }
+                Relay relay = relays.remove(sequence);
+                if (relay != null) {
+                    send(relay.host, relay.port, createMessage("ack").put("seq", relay.sequence));
+                }
+                break;
+            case "pingReq":
+                long relaySequence = ++lastSequence;
+                relays.put(relaySequence, new Relay(senderHost, senderPort, sequence));
+                send(message.path("targetHost").asText(), message.path("targetPort").asInt(),
+                        createMessage("ping").put("seq", relaySequence));
+                vertx.setTimer(interval, timerId -> removeRelay(relaySequence));
+                break;
+            case "sync":
+                for (JsonNode record : message.path("members")) {
+                    applyRecord(record);
+                }
+                String reply = message.path("reply").asText();
+                if (REPLY_ALL.equals(reply)) {
+                    sendState(senderHost, senderPort, REPLY_NONE);
+                } else if (REPLY_SELF.equals(reply)) {
+                    sendRecord(senderHost, senderPort, self, REPLY_NONE);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void removeRelay(long sequence) {
+        relays.remove(sequence);
+    }
+
+    private void applyUpdate(JsonNode update) {
+        String id = update.path("id").asText();
+        if ("member".equals(update.path("kind").asText())) {
+            applyMemberUpdate(id, update.path("host").asText(), update.path("port").asInt(),
+                    update.path("incarnation").asLong(), update.path("status").asText());
+        } else {
+            applyServiceUpdate(id, update.path("nodeKey").asText(),
+                    update.path("version").asLong(), toServiceMetaInfo(update.get("value")));
+        }
+    }
+
+    /**
+     * Merge a member's full record from a state exchange.
+     */
+    private void applyRecord(JsonNode record) {
+        String id = record.path("id").asText();
+        applyMemberUpdate(id, record.path("host").asText(), record.path("port").asInt(),
+                record.path("incarnation").asLong(), record.path("status").asText());
+        for (JsonNode service : record.path("services")) {
+            applyServiceUpdate(id, service.path("nodeKey").asText(),
+                    service.path("version").asLong(), toServiceMetaInfo(service.get("value")));
+        }
+    }
+
+    /**
+     * Apply a member's state by the SWIM precedence rules: a higher incarnation wins, and at
+     * the same incarnation dead overrides suspect, which overrides alive.
+     */
+    private void applyMemberUpdate(String id, String host, int port, long incarnation,
+                                   String status) {
+        if (id.equals(self.id)) {
+            // Refute a suspicion or death of ourselves, or an incarnation left over from before a
+            // restart, with a higher incarnation
+            boolean refute = incarnation > self.incarnation
+                    || (incarnation == self.incarnation && !STATUS_ALIVE.equals(status));
+            if (refute && self.isLive()) {
+                self.incarnation = incarnation + 1;
+                enqueue(createMemberUpdate(self));
+            }
+            return;
+        }
+        Member member = members.get(id);
+        if (member == null) {
+            if (STATUS_DEAD.equals(status)) {
+                return;
+            }
+            member = new Member(id, host, port);
+            member.incarnation = incarnation;
+            members.put(id, member);
+            log.info("Gossip member joined: {}", id);
+            setStatus(member, status);
+            enqueue(createMemberUpdate(member));
+            // Pull the services of the new member instead of waiting for their gossip
+            sendRecord(host, port, self, REPLY_SELF);
+            return;
+        }
+
+        boolean newer;
+        switch (status) {
+            case STATUS_ALIVE:
+                newer = incarnation > member.incarnation;
+                break;
+            case STATUS_SUSPECT:
+                newer = incarnation > member.incarnation || (incarnation == member.incarnation
+                        && STATUS_ALIVE.equals(member.status));
+                break;
+            case STATUS_DEAD:
+                newer = incarnation > member.incarnation || (incarnation == member.incarnation
+                        && member.isLive());
+                break;
+            default:
+                newer = false;
+                break;
+        }
+        if (!newer) {
+            return;
+        }
+        boolean revived = !member.isLive() && !STATUS_DEAD.equals(status);
+        member.incarnation = incarnation;
+        setStatus(member, status);
+        enqueue(createMemberUpdate(member));
+        if (revived) {
+            log.info("Gossip member rejoined: {}", id);
+            sendRecord(host, port, self, REPLY_SELF);
+        }
+    }
+
+    private void setStatus(Member member, String status) {
+        String previous = member.status;
+        member.status = status;
+        long now = System.currentTimeMillis();
+        if (STATUS_SUSPECT.equals(status)) {
+            member.deadline = now + getSuspicionTimeout();
+            log.info("Gossip member suspected: {}", member.id);
+        } else if (STATUS_DEAD.equals(status)) {
+            member.deadline = now + DEAD_RETENTION_PERIODS * interval;
+            if (!STATUS_DEAD.equals(previous)) {
+                log.info("Gossip member dead: {}", member.id);
+                // Drop the services with their versions, so a restarted member starting from
+                // version 1 is accepted again
+                for (String serviceNodeKey : member.services.keySet()) {
+                    index(serviceNodeKey, null);
+                }
+                member.services.clear();
+            }
+        }
+    }
+
+    /**
+     * Apply a change to one service of a member if it is newer than what is known.
+     */
+    private void applyServiceUpdate(String id, String serviceNodeKey, long version,
+                                    ServiceMetaInfo serviceMetaInfo) {
+        if (id.equals(self.id)) {
+            // Stale news about our own services, e.g. from before a restart: announce the
+            // current state with a newer version
+            ServiceEntry entry = self.services.get(serviceNodeKey);
+            boolean stale = entry == null ? serviceMetaInfo != null : version > entry.version;
+            if (stale) {
+                lastServiceVersion = Math.max(lastServiceVersion, version);
+                putLocalService(serviceNodeKey, entry == null ? null : entry.serviceMetaInfo);
+            }
+            return;
+        }
+        Member member = members.get(id);
+        if (member == null || !member.isLive()) {
+            return;
+        }
+        ServiceEntry entry = member.services.get(serviceNodeKey);
+        if (entry != null && entry.version >= version) {
+            return;
+        }
+        member.services.put(serviceNodeKey, new ServiceEntry(version, serviceMetaInfo));
+        enqueue(createServiceUpdate(member.id, serviceNodeKey, version, serviceMetaInfo));
+        index(serviceNodeKey, serviceMetaInfo);
+    }
+
+    private void putLocalService(String serviceNodeKey, ServiceMetaInfo serviceMetaInfo) {
+        long version = ++lastServiceVersion;
+        self.services.put(serviceNodeKey, new ServiceEntry(version, serviceMetaInfo));
+        enqueue(createServiceUpdate(self.id, serviceNodeKey, version, serviceMetaInfo));
+        index(serviceNodeKey, serviceMetaInfo);
+    }
+
+    /**
+     * Update the provider index and republish the service's cached list.
+     *
+     * @param serviceNodeKey  The node key.
+     * @param serviceMetaInfo The provider, or null if it is gone.
+     */
+    private void index(String serviceNodeKey, ServiceMetaInfo serviceMetaInfo) {
+        String serviceKey = StrUtil.subBefore(serviceNodeKey, "/", true);
+        Map<String, ServiceMetaInfo> nodes = serviceIndex.computeIfAbsent(serviceKey,
+                key -> new LinkedHashMap<>());
+        if (serviceMetaInfo == null) {
+            if (nodes.remove(serviceNodeKey) == null) {
+                return;
+            }
+        } else {
+            nodes.put(serviceNodeKey, serviceMetaInfo);
+        }
+        registryServiceCache.writeCache(serviceKey, new ArrayList<>(nodes.values()));
+    }
+
+    /**
+     * Declare suspects whose time ran out dead, and forget dead members after a while.
+     */
+    private void expireMembers(long now) {
+        Iterator<Member> iterator = members.values().iterator();
+        List<Member> expiredSuspects = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Member member = iterator.next();
+            if (member.deadline > now) {
+                continue;
+            }
+            if (STATUS_SUSPECT.equals(member.status)) {
+                expiredSuspects.add(member);
+            } else if (STATUS_DEAD.equals(member.status)) {
+                iterator.remove();
+            }
+        }
+        for (Member member : expiredSuspects) {
+            applyMemberUpdate(member.id, member.host, member.port, member.incarnation,
+                    STATUS_DEAD);
+        }
+    }
+
+    /**
+     * Exchange full state with a random live member, or with the seeds while alone.
+     */
+    private void pushPull() {
+        List<Member> live = new ArrayList<>();
+        for (Member member : members.values()) {
+            if (member.isLive()) {
+                live.add(member);
+            }
+        }
+        if (!live.isEmpty()) {
+            Member member = live.get(ThreadLocalRandom.current().nextInt(live.size()));
+            sendState(member.host, member.port, REPLY_ALL);
+            return;
+        }
+        sendStateToSeeds();
+    }
+
+    private void sendStateToSeeds() {
+        for (String seed : seeds) {
+            sendState(StrUtil.subBefore(seed, ":", true),
+                    Integer.parseInt(StrUtil.subAfter(seed, ":", true)), REPLY_ALL);
+        }
+    }
+
+    /**
+     * Send the records of this member and of every member known to it.
+     *
+     * @param reply What the receiver should send back.
+     */
+    private void sendState(String host, int port, String reply) {
+        sendRecord(host, port, self, reply);
+        for (Member member : members.values()) {
+            sendRecord(host, port, member, REPLY_NONE);
+        }
+    }
+
+    /**
+     * Send the record of one member, split over several datagrams if it has many services.
+     *
+     * @param reply What the receiver should send back.
+     */
+    private void sendRecord(String host, int port, Member member, String reply) {
+        List<Map.Entry<String, ServiceEntry>> services =
+                new ArrayList<>(member.services.entrySet());
+        int from = 0;
+        do {
+            int to = Math.min(from + SERVICES_PER_RECORD, services.size());
+            ObjectNode message = OBJECT_MAPPER.createObjectNode()
+                    .put("type", "sync")
+                    .put("reply", from == 0 ? reply : REPLY_NONE);
+            message.putArray("members").add(createRecord(member, services.subList(from, to)));
+            send(host, port, message);
+            from = to;
+        } while (from < services.size());
+    }
+
+    private Member nextProbeTarget() {
+        if (probeIndex >= probeOrder.size()) {
+            probeOrder.clear();
+            for (Member member : members.values()) {
+                if (member.isLive()) {
+                    probeOrder.add(member.id);
+                }
+            }
+            Collections.shuffle(probeOrder, ThreadLocalRandom.current());
+            probeIndex = 0;
+        }
+        while (probeIndex < probeOrder.size()) {
+            Member member = members.get(probeOrder.get(probeIndex++));
+            if (member != null && member.isLive()) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a message carrying as many pending updates as fit the piggy-back budget, least
+     * transmitted first. Updates are dropped once sent often enough to have reached everyone
+     * with high probability.
+     */
+    private ObjectNode createMessage(String type) {
+        ObjectNode message = OBJECT_MAPPER.createObjectNode().put("type", type);
+        if (updateQueue.isEmpty()) {
+            return message;
+        }
+        List<Map.Entry<String, Update>> pending = new ArrayList<>(updateQueue.entrySet());
+        pending.sort((a, b) -> Integer.compare(a.getValue().transmits, b.getValue().transmits));
+        int transmitLimit = getTransmitLimit();
+        ArrayNode updates = message.putArray("updates");
+        int size = 0;
+        for (Map.Entry<String, Update> entry : pending) {
+            Update update = entry.getValue();
+            if (size + update.size > MAX_PIGGYBACK_BYTES && size > 0) {
+                continue;
+            }
+            size += update.size;
+            updates.add(update.body);
+            if (++update.transmits >= transmitLimit) {
+                updateQueue.remove(entry.getKey());
+            }
+        }
+        return message;
+    }
+
+    private void enqueue(ObjectNode body) {
+        String subject = body.path("id").asText() + "/" + body.path("nodeKey").asText();
+        updateQueue.remove(subject);
+        updateQueue.put(subject, new Update(body));
+    }
+
+    private static ObjectNode createMemberUpdate(Member member) {
+        return OBJECT_MAPPER.createObjectNode()
+                .put("kind", "member")
+                .put("id", member.id)
+                .put("host", member.host)
+                .put("port", member.port)
+                .put("incarnation", member.incarnation)
+                .put("status", member.status);
+    }
+
+    private static ObjectNode createServiceUpdate(String id, String serviceNodeKey, long version,
+                                                  ServiceMetaInfo serviceMetaInfo) {
+        ObjectNode update = OBJECT_MAPPER.createObjectNode()
+                .put("kind", "service")
+                .put("id", id)
+                .put("nodeKey", serviceNodeKey)
+                .put("version", version);
+        if (serviceMetaInfo != null) {
+            update.set("value", OBJECT_MAPPER.valueToTree(serviceMetaInfo));
+        }
+        return update;
+    }
+
+    private static ObjectNode createRecord(Member member,
+                                           List<Map.Entry<String, ServiceEntry>> services) {
+        ObjectNode record = createMemberUpdate(member);
+        ArrayNode serviceArray = record.putArray("services");
+        for (Map.Entry<String, ServiceEntry> entry : services) {
+            ObjectNode service = serviceArray.addObject()
+                    .put("nodeKey", entry.getKey())
+                    .put("version", entry.getValue().version);
+            if (entry.getValue().serviceMetaInfo != null) {
+                service.set("value", OBJECT_MAPPER.valueToTree(entry.getValue().serviceMetaInfo));
+            }
+        }
+        return record;
+    }
+
+    private void send(String host, int port, ObjectNode message) {
+        try {
+            socket.send(Buffer.buffer(OBJECT_MAPPER.writeValueAsBytes(message)), port, host);
+        } catch (IOException e) {
+            log.error("Failed to encode gossip message", e);
+        }
+    }
+
+    private int countLiveMembers() {
+        int count = 0;
+        for (Member member : members.values()) {
+            if (member.isLive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Order of magnitude of the member count, at least 1
+     */
+    private int getScale() {
+        return Math.max(1, (int) Math.ceil(Math.log10(members.size() + 2)));
+    }
+
+    private int getTransmitLimit() {
+        return retransmitMultiplier * getScale();
+    }
+
+    private long getSuspicionTimeout() {
+        return suspicionMultiplier * getScale() * interval;
+    }
+
+    private static ServiceMetaInfo toServiceMetaInfo(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.treeToValue(value, ServiceMetaInfo.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Malformed service node: " + value, e);
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package com.shuo.krpc.registry;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Local registry
+ * <p>
+ * Besides the implementation class, registering a service sets up how its instances are provided
+ * and builds an invoker table covering every public instance method, so that serving a request
+ * needs no reflection lookups. Instances follow the scope chosen at registration: a singleton (the
+ * default, or an existing object such as a Spring bean), a new prototype per request, or a bounded
+ * pool.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
@@ -15,6 +26,23 @@ public class LocalRegistry {
      */
     private static final Map<String, Class<?>> registrationMap = new ConcurrentHashMap<>();
 
+    /**
+     * Default number of instances of a pooled service
+     */
+    public static final int DEFAULT_POOL_SIZE = 16;
+
+    /**
+     * Service instance providers, keyed by service name
+     */
+    private static final Map<String, ServiceInstanceProvider> instanceProviderMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Method invokers, keyed by service name and then method name (overloads share a key)
+     */
+    private static final Map<String, Map<String, MethodInvoker[]>> invokerMap =
+            new ConcurrentHashMap<>();
+
     /**
      * Register service
      *
@@ -22,6 +50,50 @@ public class LocalRegistry {
      * @param implClass
      */
     public static void register(String serviceName, Class<?> implClass) {
+        register(serviceName, implClass, ServiceScopeEnum.SINGLETON, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Register a service whose instances are created by the registry.
+     *
+     * @param serviceName The name of the service.
+     * @param implClass   The implementation class, with a no-argument constructor.
+     * @param scope       The lifecycle of the service instances.
+     * @param poolSize    The maximum number of instances of a pooled service.
+     */
+    public static void register(String serviceName, Class<?> implClass, ServiceScopeEnum scope,
+                                int poolSize) {
+        ServiceInstanceProvider instanceProvider;
+        switch (scope) {
+            case PROTOTYPE:
+                instanceProvider = new PrototypeInstanceProvider(implClass);
+                break;
+            case POOLED:
+                instanceProvider = new PooledInstanceProvider(implClass, poolSize);
+                break;
+            default:
+                instanceProvider =
+                        new SingletonInstanceProvider(new PrototypeInstanceProvider(implClass)
+                                .acquire());
+                break;
+        }
+        register(serviceName, implClass, instanceProvider);
+    }
+
+    /**
+     * Register an existing object, such as a Spring bean, as the singleton instance of a service.
+     *
+     * @param serviceName The name of the service.
+     * @param instance    The service instance.
+     */
+    public static void register(String serviceName, Object instance) {
+        register(serviceName, instance.getClass(), new SingletonInstanceProvider(instance));
+    }
+
+    private static void register(String serviceName, Class<?> implClass,
+                                 ServiceInstanceProvider instanceProvider) {
+        invokerMap.put(serviceName, buildInvokers(implClass));
+        instanceProviderMap.put(serviceName, instanceProvider);
         registrationMap.put(serviceName, implClass);
     }
 
@@ -35,6 +107,42 @@ public class LocalRegistry {
         return registrationMap.get(serviceName);
     }
 
+    /**
+     * Access the provider of service instances based on name
+     *
+     * @param serviceName The name of the service.
+     * @return The instance provider, or null if the service is not registered.
+     */
+    public static ServiceInstanceProvider getInstanceProvider(String serviceName) {
+        return instanceProviderMap.get(serviceName);
+    }
+
+    /**
+     * Find the invoker of a service method.
+     *
+     * @param serviceName    The name of the service.
+     * @param methodName     The name of the method.
+     * @param parameterTypes The parameter types of the method, or null for none.
+     * @return The matching invoker.
+     * @throws RuntimeException If the service or method is not registered.
+     */
+    public static MethodInvoker getInvoker(String serviceName, String methodName,
+                                           Class<?>[] parameterTypes) {
+        Map<String, MethodInvoker[]> serviceInvokers = invokerMap.get(serviceName);
+        if (serviceInvokers == null) {
+            throw new RuntimeException("Service not found: " + serviceName);
+        }
+        MethodInvoker[] methodInvokers = serviceInvokers.get(methodName);
+        if (methodInvokers != null) {
+            for (MethodInvoker methodInvoker : methodInvokers) {
+                if (methodInvoker.matches(parameterTypes)) {
+                    return methodInvoker;
+                }
+            }
+        }
+        throw new RuntimeException("Method not found: " + serviceName + "#" + methodName);
+    }
+
     /**
      * Remove service based on name
      *
@@ -42,5 +150,23 @@ public class LocalRegistry {
      */
     public static void remove(String serviceName) {
         registrationMap.remove(serviceName);
+        instanceProviderMap.remove(serviceName);
+        invokerMap.remove(serviceName);
+    }
+
+    private static Map<String, MethodInvoker[]> buildInvokers(Class<?> implClass) {
+        Map<String, List<MethodInvoker>> invokers = new HashMap<>();
+        for (Method method : implClass.getMethods()) {
+            // Static helpers such as factories are not service methods
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            invokers.computeIfAbsent(method.getName(), name -> new ArrayList<>())
+                    .add(new MethodInvoker(method));
+        }
+        Map<String, MethodInvoker[]> invokerTable = new HashMap<>();
+        invokers.forEach((name, list) -> invokerTable.put(name,
+                list.toArray(new MethodInvoker[0])));
+        return invokerTable;
     }
 }
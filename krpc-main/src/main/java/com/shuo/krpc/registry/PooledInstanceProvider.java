@@ -0,0 +1,98 @@
+package com.shuo.krpc.registry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled Instance Provider
+ * <p>
+ * This provider keeps a bounded pool of instances for implementations that are not thread-safe.
+ * Instances are created lazily up to the pool size, each serves one request at a time, and a
+ * request arriving while all of them are busy waits for one to be released. The wait is bounded,
+ * since requests may be served on the event loop, and a request that times out fails instead.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class PooledInstanceProvider implements ServiceInstanceProvider {
+
+    /**
+     * Default time in milliseconds a request waits for an instance to be released
+     */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 100L;
+
+    private final PrototypeInstanceProvider factory;
+
+    private final int poolSize;
+
+    private final long acquireTimeout;
+
+    private final BlockingQueue<Object> idleInstances;
+
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    public PooledInstanceProvider(Class<?> implClass, int poolSize) {
+        this(implClass, poolSize, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * Constructor for PooledInstanceProvider.
+     *
+     * @param implClass      The implementation class, with a no-argument constructor.
+     * @param poolSize       The maximum number of instances.
+     * @param acquireTimeout The time in milliseconds a request waits for an instance.
+     */
+    public PooledInstanceProvider(Class<?> implClass, int poolSize, long acquireTimeout) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + poolSize);
+        }
+        this.factory = new PrototypeInstanceProvider(implClass);
+        this.poolSize = poolSize;
+        this.acquireTimeout = acquireTimeout;
+        this.idleInstances = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    @Override
+    public Object acquire() {
+        Object instance = idleInstances.poll();
+        if (instance != null) {
+            return instance;
+        }
+        // Grow the pool while it is below its bound
+        if (createdCount.incrementAndGet() <= poolSize) {
+            try {
+                return factory.acquire();
+            } catch (RuntimeException e) {
+                createdCount.decrementAndGet();
+                throw e;
+            }
+        }
+        createdCount.decrementAndGet();
+        try {
+            instance = idleInstances.poll(acquireTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a service instance", e);
+        }
+        if (instance == null) {
+            throw new RuntimeException("Service instance pool exhausted: all " + poolSize
+                    + " instances busy for " + acquireTimeout + " ms");
+        }
+        return instance;
+    }
+
+    @Override
+    public void release(Object instance) {
+        idleInstances.offer(instance);
+    }
+
+    /**
+     * Number of instances created so far.
+     *
+     * @return The number of live instances, never above the pool size.
+     */
+    public int getCreatedCount() {
+        return createdCount.get();
+    }
+}
@@ -0,0 +1,36 @@
+package com.shuo.krpc.registry;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Prototype Instance Provider
+ * <p>
+ * This provider creates a new instance for every request through the no-argument constructor,
+ * which is resolved once at registration.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class PrototypeInstanceProvider implements ServiceInstanceProvider {
+
+    private final Constructor<?> constructor;
+
+    public PrototypeInstanceProvider(Class<?> implClass) {
+        try {
+            this.constructor = implClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(implClass.getName() +
+                    " has no no-argument constructor", e);
+        }
+        constructor.trySetAccessible();
+    }
+
+    @Override
+    public Object acquire() {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to instantiate " +
+                    constructor.getDeclaringClass().getName(), e);
+        }
+    }
+}
@@ -1,44 +1,63 @@
 package com.shuo.krpc.registry;
 
-import cn.hutool.core.collection.ConcurrentHashSet;
 import cn.hutool.cron.CronUtil;
 import cn.hutool.cron.task.Task;
+import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.shuo.krpc.config.RegistryConfig;
 import com.shuo.krpc.model.ServiceMetaInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.Redisson;
-import org.redisson.api.RBucket;
-import org.redisson.api.RMap;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
 import org.redisson.config.Config;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 /**
  * Redis registry
  * <p>
- * Manages service registration and discovery using Redis. It provides functionality to register,
- * unregister, discover services, handle heartbeat checks, and manage watch mechanisms for service
- * nodes.
+ * Manages service registration and discovery using Redis. Each service keeps its nodes in two
+ * keys: a hash from node key to the node's metadata, and a sorted set from node key to the time
+ * the node expires. Providers renew all of their nodes in one pipelined batch per heartbeat, and
+ * a node whose expiry has passed is no longer discovered and is swept by the next heartbeat of
+ * any process interested in the service.
+ * <p>
+ * Every change is published on a shared change channel, so consumers apply it to their cached
+ * provider list instead of reading the service again.
+ * <p>
+ * Registration and discovery run on Redisson's asynchronous API and never block; the blocking
+ * methods wait for them through {@link BlockingRegistryAdapter}.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 @Slf4j
-public class RedisRegistry implements Registry {
+public class RedisRegistry extends BlockingRegistryAdapter {
 
     private RedissonClient redissonClient;
 
     /**
-     * A set of all locally registered nodes' keys (for lease renewal)
+     * All locally registered nodes keyed by their node key (for lease renewal)
      */
-    private final Set<String> localRegisteredNodeKeySet = new ConcurrentHashSet<>();
+    private final Map<String, ServiceMetaInfo> localRegisteredNodeMap = new ConcurrentHashMap<>();
 
     /**
      * Cached services in registry
@@ -46,15 +65,26 @@ public class RedisRegistry implements Registry {
     private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
 
     /**
-     * A map to store the registration time of each service node
+     * Watched services keyed by service key. A service's cache entry is only written and
+     * changed while holding its watch's lock.
+     */
+    private final Map<String, ServiceWatch> watchingServiceMap = new ConcurrentHashMap<>();
+
+    /**
+     * Subscription to the change channel, started on the first discovery
      */
-    private final Map<String, Instant> registrationTimeMap = new ConcurrentHashMap<>();
+    private CompletableFuture<Void> changeSubscription;
 
     /**
      * Root node
      */
     private static final String REDIS_ROOT_PATH = "rpc:";
 
+    /**
+     * Change channel shared by all services
+     */
+    private static final String CHANGE_CHANNEL = REDIS_ROOT_PATH + "events";
+
     /**
      * Lease duration in seconds
      */
@@ -65,85 +95,124 @@ public class RedisRegistry implements Registry {
      */
     private static final String HEARTBEAT_SCHEDULE = "*/10 * * * * *";
 
+    /**
+     * Change event types
+     */
+    static final String EVENT_PUT = "PUT";
+
+    static final String EVENT_DELETE = "DELETE";
+
+    private String heartbeatScheduleId;
+
     @Override
     public void init(RegistryConfig registryConfig) {
         Config config = new Config();
-        config.useSingleServer().setAddress(registryConfig.getAddress());
+        config.useSingleServer()
+                .setAddress(registryConfig.getAddress())
+                .setUsername(registryConfig.getUsername())
+                .setPassword(registryConfig.getPassword())
+                .setConnectTimeout(Math.toIntExact(registryConfig.getTimeout()));
         redissonClient = Redisson.create(config);
 
         // Start heartbeat scheduler
         sendHeartBeat();
     }
 
+    /**
+     * Register several services in one pipelined batch.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @return A future completed once the batch is executed.
+     */
     @Override
-    public void register(ServiceMetaInfo serviceMetaInfo) {
-        try {
-            String registerKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-            RBucket<String> bucket = redissonClient.getBucket(registerKey);
-            bucket.set(JSONUtil.toJsonStr(serviceMetaInfo),
-                    Duration.ofSeconds(LEASE_DURATION_SECONDS));
-
-            localRegisteredNodeKeySet.add(registerKey);
-            registrationTimeMap.put(registerKey, Instant.now());
-            log.info("Service registered: {}, at time: {}", serviceMetaInfo.getServiceNodeKey(),
-                    registrationTimeMap.get(registerKey));
-        } catch (Exception e) {
-            log.error("Failed to register service: {}", serviceMetaInfo.getServiceNodeKey(), e);
-            throw new RuntimeException("Error registering service", e);
+    public CompletableFuture<Void> registerAllAsync(List<ServiceMetaInfo> serviceMetaInfoList) {
+        if (serviceMetaInfoList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
+        RBatch batch = redissonClient.createBatch();
+        long expireTime = getExpireTime();
+        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+            String serviceKey = serviceMetaInfo.getServiceKey();
+            String serviceNodeKey = serviceMetaInfo.getServiceNodeKey();
+            String value = JSONUtil.toJsonStr(serviceMetaInfo);
+            getNodeMap(batch, serviceKey).fastPutAsync(serviceNodeKey, value);
+            getExpirySet(batch, serviceKey).addAsync(expireTime, serviceNodeKey);
+            batch.getTopic(CHANGE_CHANNEL, StringCodec.INSTANCE).publishAsync(
+                    createEvent(EVENT_PUT, serviceKey, serviceNodeKey, value));
+        }
+        return batch.executeAsync().toCompletableFuture().handle((result, e) -> {
+            if (e != null) {
+                log.error("Failed to register services: {}", serviceMetaInfoList, e);
+                throw new RuntimeException("Error registering service", e);
+            }
+            for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                localRegisteredNodeMap.put(serviceMetaInfo.getServiceNodeKey(), serviceMetaInfo);
+                log.info("Service registered: {}", serviceMetaInfo.getServiceNodeKey());
+            }
+            return null;
+        });
     }
 
     @Override
-    public void unregister(ServiceMetaInfo serviceMetaInfo) {
-        String unregisterKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-        try {
-            redissonClient.getBucket(unregisterKey).delete();
-            localRegisteredNodeKeySet.remove(unregisterKey);
-            registrationTimeMap.remove(unregisterKey);
-            log.info("Service unregistered: {}", serviceMetaInfo.getServiceNodeKey());
-            registryServiceCache.clearCache(unregisterKey);
-        } catch (Exception e) {
-            log.error("Failed to unregister service: {}", serviceMetaInfo.getServiceNodeKey(), e);
-            throw new RuntimeException("Error unregistering service", e);
-        }
+    public CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo) {
+        String serviceNodeKey = serviceMetaInfo.getServiceNodeKey();
+        RBatch batch = redissonClient.createBatch();
+        removeNode(batch, serviceMetaInfo.getServiceKey(), serviceNodeKey);
+        return batch.executeAsync().toCompletableFuture().handle((result, e) -> {
+            if (e != null) {
+                log.error("Failed to unregister service: {}", serviceNodeKey, e);
+                throw new RuntimeException("Error unregistering service", e);
+            }
+            localRegisteredNodeMap.remove(serviceNodeKey);
+            log.info("Service unregistered: {}", serviceNodeKey);
+            return null;
+        });
     }
 
     @Override
-    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+    public CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
         // Try to fetch from cache
         List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
         if (cachedServiceMetaInfoList != null) {
-            return cachedServiceMetaInfoList;
+            return CompletableFuture.completedFuture(cachedServiceMetaInfoList);
         }
 
-        try {
-            RMap<String, String> serviceMap = redissonClient.getMap(REDIS_ROOT_PATH + serviceKey);
-            List<ServiceMetaInfo> serviceMetaInfoList = serviceMap.readAllValues().stream()
-                    .map(value -> JSONUtil.toBean(value, ServiceMetaInfo.class))
-                    .collect(Collectors.toList());
-            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
-            return serviceMetaInfoList;
-        } catch (Exception e) {
-            log.error("Failed to get service list for key: {}", serviceKey, e);
-            return null;
-        }
+        // Subscribe before reading, so no change between the read and the subscription is
+        // missed; changes that the read already reflects are applied again harmlessly
+        return subscribeAsync(serviceKey)
+                .thenCompose(serviceWatch -> serviceWatch.load(serviceKey))
+                .whenComplete((serviceMetaInfoList, e) -> {
+                    if (e != null) {
+                        log.error("Failed to get service list for key: {}", serviceKey, e);
+                    }
+                });
+    }
+
+    @Override
+    public void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+        registryServiceCache.setChangeListener(listener);
     }
 
     @Override
     public void destroy() {
         log.info("Deactivate current node");
+        if (heartbeatScheduleId != null) {
+            CronUtil.remove(heartbeatScheduleId);
+        }
         // Deactivate node
-        for (String key : localRegisteredNodeKeySet) {
-            try {
-                redissonClient.getBucket(key).delete();
-            } catch (Exception e) {
-                log.error("Failed to deactivate key: {}", key, e);
-                throw new RuntimeException(key + " failed to deactivate", e);
+        try {
+            RBatch batch = redissonClient.createBatch();
+            for (ServiceMetaInfo serviceMetaInfo : localRegisteredNodeMap.values()) {
+                removeNode(batch, serviceMetaInfo.getServiceKey(),
+                        serviceMetaInfo.getServiceNodeKey());
             }
-        }
-
-        // Release resources
-        if (redissonClient != null) {
+            batch.execute();
+            localRegisteredNodeMap.clear();
+        } catch (Exception e) {
+            log.error("Failed to deactivate nodes", e);
+            throw new RuntimeException("Nodes failed to deactivate", e);
+        } finally {
+            // Release resources
             redissonClient.shutdown();
         }
     }
@@ -151,29 +220,295 @@ public class RedisRegistry implements Registry {
     @Override
     public void sendHeartBeat() {
         // Renew every 10 seconds
-        CronUtil.schedule(HEARTBEAT_SCHEDULE, (Task) () -> {
-            for (String key : localRegisteredNodeKeySet) {
-                try {
-                    RBucket<String> bucket = redissonClient.getBucket(key);
-                    if (!bucket.isExists()) {
-                        continue;
-                    }
-                    ServiceMetaInfo serviceMetaInfo = JSONUtil.toBean(bucket.get(),
-                            ServiceMetaInfo.class);
-                    register(serviceMetaInfo);
-                } catch (Exception e) {
-                    log.error("Failed to renew lease for key: {}", key, e);
-                    throw new RuntimeException(key + " failed to renew", e);
-                }
+        heartbeatScheduleId = CronUtil.schedule(HEARTBEAT_SCHEDULE, (Task) () -> {
+            try {
+                renew();
+                sweep();
+            } catch (Exception e) {
+                log.error("Failed to renew registered nodes", e);
             }
         });
 
         CronUtil.setMatchSecond(true);
-        CronUtil.start();
+        if (!CronUtil.getScheduler().isStarted()) {
+            CronUtil.start();
+        }
     }
 
+    /**
+     * Apply the changes of a service published on the change channel to its cached list.
+     *
+     * @param serviceKey The key of the service to watch.
+     */
     @Override
-    public void watch(String serviceNodeKey) {
-        // Redis does not natively support watch mechanisms like etcd
+    public void watch(String serviceKey) {
+        await(subscribeAsync(serviceKey));
+    }
+
+    /**
+     * Renew the expiry of all local nodes in one pipelined batch. The metadata is written again
+     * too, so nodes swept during a long pause come back, and a put event is published for each
+     * node that had been swept so that consumers which applied the sweep add it again.
+     */
+    void renew() {
+        if (localRegisteredNodeMap.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        long expireTime = getExpireTime();
+        Map<String, ServiceMetaInfo> renewedNodes = new HashMap<>(localRegisteredNodeMap);
+        Map<String, RFuture<Boolean>> addFutures = new HashMap<>();
+        renewedNodes.forEach((serviceNodeKey, serviceMetaInfo) -> {
+            String serviceKey = serviceMetaInfo.getServiceKey();
+            getNodeMap(batch, serviceKey).fastPutAsync(serviceNodeKey,
+                    JSONUtil.toJsonStr(serviceMetaInfo));
+            // Added rather than updated if the node had been swept
+            addFutures.put(serviceNodeKey,
+                    getExpirySet(batch, serviceKey).addAsync(expireTime, serviceNodeKey));
+        });
+        batch.execute();
+
+        RBatch putBatch = redissonClient.createBatch();
+        boolean restored = false;
+        for (Map.Entry<String, RFuture<Boolean>> entry : addFutures.entrySet()) {
+            if (Boolean.TRUE.equals(entry.getValue().toCompletableFuture().join())) {
+                String serviceNodeKey = entry.getKey();
+                ServiceMetaInfo serviceMetaInfo = renewedNodes.get(serviceNodeKey);
+                putBatch.getTopic(CHANGE_CHANNEL, StringCodec.INSTANCE).publishAsync(
+                        createEvent(EVENT_PUT, serviceMetaInfo.getServiceKey(), serviceNodeKey,
+                                JSONUtil.toJsonStr(serviceMetaInfo)));
+                log.info("Swept service node restored: {}", serviceNodeKey);
+                restored = true;
+            }
+        }
+        if (restored) {
+            putBatch.execute();
+        }
+    }
+
+    /**
+     * Remove the expired nodes of the watched and locally registered services, publishing a
+     * delete event for each node this process removed.
+     */
+    void sweep() {
+        Set<String> serviceKeys = new HashSet<>(watchingServiceMap.keySet());
+        for (ServiceMetaInfo serviceMetaInfo : localRegisteredNodeMap.values()) {
+            serviceKeys.add(serviceMetaInfo.getServiceKey());
+        }
+        if (serviceKeys.isEmpty()) {
+            return;
+        }
+
+        // Find the expired nodes of all services at once
+        RBatch findBatch = redissonClient.createBatch();
+        long now = System.currentTimeMillis();
+        Map<String, RFuture<Collection<String>>> expiredFutures = new HashMap<>();
+        for (String serviceKey : serviceKeys) {
+            expiredFutures.put(serviceKey, getExpirySet(findBatch, serviceKey)
+                    .valueRangeAsync(Double.NEGATIVE_INFINITY, true, now, false));
+        }
+        findBatch.execute();
+
+        // Only the process whose removal succeeds publishes the delete
+        RBatch removeBatch = redissonClient.createBatch();
+        Map<String, RFuture<Boolean>> removeFutures = new HashMap<>();
+        Map<String, String> removedServiceKeys = new HashMap<>();
+        expiredFutures.forEach((serviceKey, future) -> {
+            for (String serviceNodeKey : future.toCompletableFuture().join()) {
+                removeFutures.put(serviceNodeKey,
+                        getExpirySet(removeBatch, serviceKey).removeAsync(serviceNodeKey));
+                removedServiceKeys.put(serviceNodeKey, serviceKey);
+            }
+        });
+        if (removeFutures.isEmpty()) {
+            return;
+        }
+        removeBatch.execute();
+
+        RBatch deleteBatch = redissonClient.createBatch();
+        boolean deleted = false;
+        for (Map.Entry<String, RFuture<Boolean>> entry : removeFutures.entrySet()) {
+            if (Boolean.TRUE.equals(entry.getValue().toCompletableFuture().join())) {
+                String serviceNodeKey = entry.getKey();
+                String serviceKey = removedServiceKeys.get(serviceNodeKey);
+                getNodeMap(deleteBatch, serviceKey).fastRemoveAsync(serviceNodeKey);
+                deleteBatch.getTopic(CHANGE_CHANNEL, StringCodec.INSTANCE).publishAsync(
+                        createEvent(EVENT_DELETE, serviceKey, serviceNodeKey, null));
+                log.info("Expired service node removed: {}", serviceNodeKey);
+                deleted = true;
+            }
+        }
+        if (deleted) {
+            deleteBatch.execute();
+        }
+    }
+
+    /**
+     * Read the live nodes of a service.
+     */
+    private CompletableFuture<List<ServiceMetaInfo>> readServiceNodesAsync(String serviceKey) {
+        RBatch batch = redissonClient.createBatch();
+        RFuture<Map<String, String>> nodesFuture = getNodeMap(batch, serviceKey).readAllMapAsync();
+        RFuture<Collection<String>> liveFuture = getExpirySet(batch, serviceKey)
+                .valueRangeAsync(System.currentTimeMillis(), true, Double.POSITIVE_INFINITY, true);
+        return batch.executeAsync().toCompletableFuture().thenApply(result -> {
+            // Both reads are complete once the batch is
+            Map<String, String> nodes = nodesFuture.toCompletableFuture().join();
+            List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+            for (String serviceNodeKey : liveFuture.toCompletableFuture().join()) {
+                String value = nodes.get(serviceNodeKey);
+                if (value != null) {
+                    serviceMetaInfoList.add(JSONUtil.toBean(value, ServiceMetaInfo.class));
+                }
+            }
+            return serviceMetaInfoList;
+        });
+    }
+
+    /**
+     * Watch a service, subscribing to the change channel on first use.
+     *
+     * @return A future of the service's watch, completed once the channel is subscribed.
+     */
+    private CompletableFuture<ServiceWatch> subscribeAsync(String serviceKey) {
+        CompletableFuture<Void> subscription;
+        synchronized (watchingServiceMap) {
+            if (changeSubscription == null || changeSubscription.isCompletedExceptionally()) {
+                RTopic topic = redissonClient.getTopic(CHANGE_CHANNEL, StringCodec.INSTANCE);
+                changeSubscription = topic.addListenerAsync(String.class,
+                                (channel, message) -> applyEvent(message))
+                        .toCompletableFuture()
+                        .thenCompose(listenerId -> topic.addListenerAsync(new BaseStatusListener() {
+                            private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+                            @Override
+                            public void onSubscribe(String channel) {
+                                if (subscribed.compareAndSet(false, true)) {
+                                    return;
+                                }
+                                // Resubscribed after a reconnection: events may have been
+                                // missed, so read the services again on the next discovery
+                                registryServiceCache.clearCache();
+                            }
+                        }).toCompletableFuture())
+                        .thenApply(listenerId -> null);
+            }
+            subscription = changeSubscription;
+        }
+        return subscription.thenApply(v ->
+                watchingServiceMap.computeIfAbsent(serviceKey, key -> new ServiceWatch()));
+    }
+
+    /**
+     * Apply a change event to the cached provider list of a watched service.
+     *
+     * @param message The change event.
+     */
+    void applyEvent(String message) {
+        JSONObject event = JSONUtil.parseObj(message);
+        String serviceKey = event.getStr("serviceKey");
+        ServiceWatch serviceWatch = watchingServiceMap.get(serviceKey);
+        if (serviceWatch == null) {
+            return;
+        }
+        synchronized (serviceWatch) {
+            if (serviceWatch.loading > 0) {
+                // Applied once the read in flight has been cached
+                serviceWatch.pendingEvents.add(event);
+                return;
+            }
+            applyEvent(serviceKey, event);
+        }
+    }
+
+    private void applyEvent(String serviceKey, JSONObject event) {
+        if (EVENT_PUT.equals(event.getStr("type"))) {
+            registryServiceCache.updateCache(serviceKey,
+                    JSONUtil.toBean(event.getStr("value"), ServiceMetaInfo.class));
+        } else if (EVENT_DELETE.equals(event.getStr("type"))) {
+            registryServiceCache.removeCache(serviceKey, event.getStr("serviceNodeKey"));
+        }
+    }
+
+    /**
+     * A watched service
+     * <p>
+     * Reads of the service are not atomic with the events received meanwhile, so events that
+     * arrive while a read is in flight are held back and applied once its result is cached.
+     */
+    private class ServiceWatch {
+
+        /**
+         * Number of reads in flight
+         */
+        private int loading;
+
+        /**
+         * Events received while reading
+         */
+        private final List<JSONObject> pendingEvents = new ArrayList<>();
+
+        /**
+         * Read the service into the cache, unless another read cached it meanwhile.
+         *
+         * @return A future of the cached provider list.
+         */
+        private CompletableFuture<List<ServiceMetaInfo>> load(String serviceKey) {
+            synchronized (this) {
+                loading++;
+            }
+            return readServiceNodesAsync(serviceKey).handle((serviceMetaInfoList, e) -> {
+                synchronized (this) {
+                    loading--;
+                    if (e == null && registryServiceCache.readCache(serviceKey) == null) {
+                        registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
+                    }
+                    if (loading == 0) {
+                        pendingEvents.forEach(event -> applyEvent(serviceKey, event));
+                        pendingEvents.clear();
+                    }
+                    if (e != null) {
+                        throw new CompletionException(e);
+                    }
+                    return registryServiceCache.readCache(serviceKey);
+                }
+            });
+        }
+    }
+
+    private void removeNode(RBatch batch, String serviceKey, String serviceNodeKey) {
+        getNodeMap(batch, serviceKey).fastRemoveAsync(serviceNodeKey);
+        getExpirySet(batch, serviceKey).removeAsync(serviceNodeKey);
+        batch.getTopic(CHANGE_CHANNEL, StringCodec.INSTANCE)
+                .publishAsync(createEvent(EVENT_DELETE, serviceKey, serviceNodeKey, null));
+    }
+
+    private long getExpireTime() {
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LEASE_DURATION_SECONDS);
+    }
+
+    private static String createEvent(String type, String serviceKey, String serviceNodeKey,
+                                      String value) {
+        return JSONUtil.createObj()
+                .set("type", type)
+                .set("serviceKey", serviceKey)
+                .set("serviceNodeKey", serviceNodeKey)
+                .set("value", value)
+                .toString();
+    }
+
+    /**
+     * Node metadata of a service: node key to JSON metadata
+     */
+    private static RMapAsync<String, String> getNodeMap(RBatch batch, String serviceKey) {
+        return batch.getMap(REDIS_ROOT_PATH + "{" + serviceKey + "}:nodes", StringCodec.INSTANCE);
+    }
+
+    /**
+     * Node expiry of a service: node key scored by expiry time in epoch milliseconds
+     */
+    private static RScoredSortedSetAsync<String> getExpirySet(RBatch batch, String serviceKey) {
+        return batch.getScoredSortedSet(REDIS_ROOT_PATH + "{" + serviceKey + "}:expiry",
+                StringCodec.INSTANCE);
     }
 }
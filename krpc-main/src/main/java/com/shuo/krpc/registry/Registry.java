@@ -5,6 +5,8 @@ import com.shuo.krpc.model.ServiceMetaInfo;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Registry interface
@@ -14,6 +16,10 @@ import java.util.Optional;
  * watch mechanisms for service nodes. This interface should be implemented by
  * classes that interact with a service registry system like etcd, ZooKeeper,
  * etc.
+ * <p>
+ * Registration and discovery also have asynchronous variants. Their defaults simply run the
+ * blocking methods in the calling thread; registries whose clients are asynchronous override them
+ * with non-blocking implementations, usually by extending {@link BlockingRegistryAdapter}.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
@@ -37,6 +43,20 @@ public interface Registry {
      */
     void register(ServiceMetaInfo serviceMetaInfo) throws Exception;
 
+    /**
+     * Register several services at once (used by service providers at startup). Registries that
+     * support batched writes override this to register them in a single round trip.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @throws Exception If the registration fails due to connection issues or
+     *                   other errors.
+     */
+    default void registerAll(List<ServiceMetaInfo> serviceMetaInfoList) throws Exception {
+        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+            register(serviceMetaInfo);
+        }
+    }
+
     /**
      * Unregister a service from the registry (used by service providers).
      *
@@ -45,6 +65,53 @@ public interface Registry {
      */
     void unregister(ServiceMetaInfo serviceMetaInfo);
 
+    /**
+     * Register a service without blocking the caller.
+     *
+     * @param serviceMetaInfo Metadata information about the service to be
+     *                        registered.
+     * @return A future completed once the service is registered.
+     */
+    default CompletableFuture<Void> registerAsync(ServiceMetaInfo serviceMetaInfo) {
+        try {
+            register(serviceMetaInfo);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Register several services at once without blocking the caller.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @return A future completed once all services are registered.
+     */
+    default CompletableFuture<Void> registerAllAsync(List<ServiceMetaInfo> serviceMetaInfoList) {
+        try {
+            registerAll(serviceMetaInfoList);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Unregister a service without blocking the caller.
+     *
+     * @param serviceMetaInfo Metadata information about the service to be
+     *                        unregistered.
+     * @return A future completed once the service is unregistered.
+     */
+    default CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo) {
+        try {
+            unregister(serviceMetaInfo);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Discover services based on the provided service key (used by service
      * consumers).
@@ -57,6 +124,33 @@ public interface Registry {
      */
     List<ServiceMetaInfo> serviceDiscovery(String serviceKey);
 
+    /**
+     * Discover services without blocking the caller.
+     *
+     * @param serviceKey The key representing the target service for which nodes
+     *                   should be discovered.
+     * @return A future of all nodes of the target service, completed exceptionally
+     *         if the registry cannot be reached.
+     */
+    default CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
+        try {
+            return CompletableFuture.completedFuture(serviceDiscovery(serviceKey));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Listen for provider changes the registry learns of on its own, such as through a watch,
+     * so that caches in front of it follow them at once. Registries that do not keep their
+     * providers up to date this way ignore the listener.
+     *
+     * @param listener Called with the key of a changed service and its new providers, or null
+     *                 once the registry no longer holds them and they should be looked up again.
+     */
+    default void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+    }
+
     /**
      * Deactivates the current node by unregistering all services that it has
      * registered. This should be called when the service is shutting down or
@@ -11,4 +11,8 @@ public interface RegistryKeys {
     String ZOOKEEPER = "zookeeper";
 
     String REDIS = "redis";
+
+    String EMBEDDED = "embedded";
+
+    String GOSSIP = "gossip";
 }
@@ -2,34 +2,66 @@ package com.shuo.krpc.registry;
 
 import com.shuo.krpc.model.ServiceMetaInfo;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
+/**
+ * Registry service cache
+ * <p>
+ * Provider lists are published per service key as immutable, versioned
+ * {@link ServiceSnapshot}s. Every change copies the list and replaces the snapshot, so readers
+ * get a consistent list from a single map read and may iterate it on any thread while it is
+ * being updated. An optional listener is told of every published snapshot, so that caches kept in
+ * front of the registry follow its watch instead of waiting for their own TTL.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
 public class RegistryServiceCache {
 
     /**
      * Store cached services
      */
-    private final Map<String, List<ServiceMetaInfo>> serviceCache = new ConcurrentHashMap<>();
+    private final Map<String, ServiceSnapshot> serviceCache = new ConcurrentHashMap<>();
+
+    /**
+     * Called with a service key and its new snapshot, or null once the service is dropped
+     */
+    private volatile BiConsumer<String, List<ServiceMetaInfo>> changeListener;
+
+    /**
+     * Set the listener told of every change to the cache
+     *
+     * @param changeListener Called with a service key and its new snapshot, or null once the
+     *                       service is no longer cached
+     */
+    void setChangeListener(BiConsumer<String, List<ServiceMetaInfo>> changeListener) {
+        this.changeListener = changeListener;
+    }
 
     /**
      * Write new cache for a specific service key
      *
      * @param serviceKey The key representing the service
      * @param newServiceCache The list of ServiceMetaInfo to cache
+     * @return The published snapshot
      */
-    void writeCache(String serviceKey, List<ServiceMetaInfo> newServiceCache) {
-        serviceCache.put(serviceKey, newServiceCache);
+    ServiceSnapshot writeCache(String serviceKey, List<ServiceMetaInfo> newServiceCache) {
+        ServiceSnapshot snapshot = ServiceSnapshot.of(newServiceCache);
+        serviceCache.put(serviceKey, snapshot);
+        notifyChange(serviceKey, snapshot);
+        return snapshot;
     }
 
     /**
      * Read cache for a specific service key
      *
      * @param serviceKey The key representing the service
-     * @return The list of ServiceMetaInfo cached, or null if not found
+     * @return The snapshot cached, or null if not found
      */
-    List<ServiceMetaInfo> readCache(String serviceKey) {
+    ServiceSnapshot readCache(String serviceKey) {
         return serviceCache.get(serviceKey);
     }
 
@@ -37,7 +69,9 @@ public class RegistryServiceCache {
      * Clear the entire cache
      */
     void clearCache() {
-        serviceCache.clear();
+        for (String serviceKey : serviceCache.keySet()) {
+            clearCache(serviceKey);
+        }
     }
 
     /**
@@ -46,22 +80,94 @@ public class RegistryServiceCache {
      * @param serviceKey The key representing the service to be removed from the cache
      */
     void clearCache(String serviceKey) {
-        serviceCache.remove(serviceKey);
+        if (serviceCache.remove(serviceKey) != null) {
+            notifyChange(serviceKey, null);
+        }
     }
 
     /**
-     * Update the cache for a specific service key
+     * Update a node in the cache for a specific service key, adding it if it is not cached yet.
+     * Nothing is done if the service itself is not cached.
      *
      * @param serviceKey The key representing the service
      * @param updatedServiceMetaInfo The updated ServiceMetaInfo to cache
      */
     void updateCache(String serviceKey, ServiceMetaInfo updatedServiceMetaInfo) {
-        if (serviceCache.containsKey(serviceKey)) {
-            List<ServiceMetaInfo> serviceMetaInfos = serviceCache.get(serviceKey);
-            if (serviceMetaInfos != null) {
-                serviceMetaInfos.removeIf(metaInfo -> metaInfo.getServiceNodeKey().equals(updatedServiceMetaInfo.getServiceNodeKey()));
-                serviceMetaInfos.add(updatedServiceMetaInfo);
+        String serviceNodeKey = updatedServiceMetaInfo.getServiceNodeKey();
+        ServiceSnapshot updated = serviceCache.computeIfPresent(serviceKey, (key, snapshot) -> {
+            List<ServiceMetaInfo> serviceMetaInfos = new ArrayList<>(snapshot.size() + 1);
+            for (ServiceMetaInfo serviceMetaInfo : snapshot) {
+                if (!serviceMetaInfo.getServiceNodeKey().equals(serviceNodeKey)) {
+                    serviceMetaInfos.add(serviceMetaInfo);
+                }
             }
+            serviceMetaInfos.add(updatedServiceMetaInfo);
+            return ServiceSnapshot.of(serviceMetaInfos);
+        });
+        if (updated != null) {
+            notifyChange(serviceKey, updated);
+        }
+    }
+
+    /**
+     * Remove a node from the cache for a specific service key
+     *
+     * @param serviceKey The key representing the service
+     * @param serviceNodeKey The key of the node to remove
+     */
+    void removeCache(String serviceKey, String serviceNodeKey) {
+        ServiceSnapshot previous = serviceCache.get(serviceKey);
+        ServiceSnapshot updated = serviceCache.computeIfPresent(serviceKey, (key, snapshot) -> {
+            List<ServiceMetaInfo> serviceMetaInfos = new ArrayList<>(snapshot.size());
+            for (ServiceMetaInfo serviceMetaInfo : snapshot) {
+                if (!serviceMetaInfo.getServiceNodeKey().equals(serviceNodeKey)) {
+                    serviceMetaInfos.add(serviceMetaInfo);
+                }
+            }
+            return serviceMetaInfos.size() == snapshot.size() ? snapshot
+                    : ServiceSnapshot.of(serviceMetaInfos);
+        });
+        if (updated != null && updated != previous) {
+            notifyChange(serviceKey, updated);
+        }
+    }
+
+    /**
+     * Apply several node changes to the cache for a specific service key with a single copy.
+     * Nothing is done if the service itself is not cached.
+     *
+     * @param serviceKey The key representing the service
+     * @param changes Changed nodes keyed by node key in change order; a null value removes the
+     *                node
+     */
+    void updateCache(String serviceKey, Map<String, ServiceMetaInfo> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        ServiceSnapshot updated = serviceCache.computeIfPresent(serviceKey, (key, snapshot) -> {
+            List<ServiceMetaInfo> serviceMetaInfos = new ArrayList<>(
+                    snapshot.size() + changes.size());
+            for (ServiceMetaInfo serviceMetaInfo : snapshot) {
+                if (!changes.containsKey(serviceMetaInfo.getServiceNodeKey())) {
+                    serviceMetaInfos.add(serviceMetaInfo);
+                }
+            }
+            for (ServiceMetaInfo serviceMetaInfo : changes.values()) {
+                if (serviceMetaInfo != null) {
+                    serviceMetaInfos.add(serviceMetaInfo);
+                }
+            }
+            return ServiceSnapshot.of(serviceMetaInfos);
+        });
+        if (updated != null) {
+            notifyChange(serviceKey, updated);
+        }
+    }
+
+    private void notifyChange(String serviceKey, ServiceSnapshot snapshot) {
+        BiConsumer<String, List<ServiceMetaInfo>> listener = changeListener;
+        if (listener != null) {
+            listener.accept(serviceKey, snapshot);
         }
     }
 }
@@ -0,0 +1,29 @@
+package com.shuo.krpc.registry;
+
+/**
+ * Service Instance Provider Interface
+ * <p>
+ * This interface hands out the service instance serving a single request, according to the
+ * scope the service was registered with. Every instance obtained from {@link #acquire()} must be
+ * handed back through {@link #release(Object)} once the invocation is over, which for an
+ * asynchronous service method is when the stage it returned completes.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public interface ServiceInstanceProvider {
+
+    /**
+     * Obtain an instance to serve a request.
+     *
+     * @return The service instance.
+     */
+    Object acquire();
+
+    /**
+     * Return an instance obtained from {@link #acquire()}.
+     *
+     * @param instance The service instance.
+     */
+    default void release(Object instance) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.shuo.krpc.registry;
+
+import lombok.Getter;
+
+/**
+ * ServiceScopeEnum is an enumeration of the lifecycles of service instances held by the
+ * {@link LocalRegistry}. It contains the following scopes:
+ *
+ * <ul>
+ *     <li>SINGLETON - One shared instance serves every request.</li>
+ *     <li>PROTOTYPE - A new instance is created for every request.</li>
+ *     <li>POOLED - A bounded pool of instances, each serving one request at a time, for
+ *     implementations that are not thread-safe.</li>
+ * </ul>
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Getter
+public enum ServiceScopeEnum {
+
+    SINGLETON("singleton"),
+    PROTOTYPE("prototype"),
+    POOLED("pooled");
+
+    private final String value;
+
+    ServiceScopeEnum(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the corresponding enum instance by value.
+     *
+     * @param value The name of the desired scope.
+     * @return The corresponding ServiceScopeEnum, or null if no matching value is found.
+     */
+    public static ServiceScopeEnum getEnumByValue(String value) {
+        for (ServiceScopeEnum anEnum : ServiceScopeEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service Snapshot
+ * <p>
+ * An immutable provider list published by {@link RegistryServiceCache}. Every snapshot carries a
+ * version that is unique within the process, so load balancers can tell in O(1) whether the
+ * state they derived from a list (hash rings, weights) is still current.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public final class ServiceSnapshot extends AbstractList<ServiceMetaInfo> implements RandomAccess {
+
+    /**
+     * Version generator shared by all snapshots
+     */
+    private static final AtomicLong versionGenerator = new AtomicLong(0);
+
+    private final ServiceMetaInfo[] nodes;
+
+    private final long version;
+
+    private ServiceSnapshot(ServiceMetaInfo[] nodes) {
+        this.nodes = nodes;
+        this.version = versionGenerator.incrementAndGet();
+    }
+
+    /**
+     * Create a snapshot holding a copy of the providers.
+     *
+     * @param serviceMetaInfos The providers.
+     * @return The new snapshot, with a new version.
+     */
+    public static ServiceSnapshot of(Collection<ServiceMetaInfo> serviceMetaInfos) {
+        return new ServiceSnapshot(serviceMetaInfos.toArray(new ServiceMetaInfo[0]));
+    }
+
+    /**
+     * Version of the snapshot, unique within the process.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public ServiceMetaInfo get(int index) {
+        return nodes[index];
+    }
+
+    @Override
+    public int size() {
+        return nodes.length;
+    }
+}
@@ -0,0 +1,22 @@
+package com.shuo.krpc.registry;
+
+/**
+ * Singleton Instance Provider
+ * <p>
+ * This provider serves every request with the same instance, such as a Spring-managed bean.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class SingletonInstanceProvider implements ServiceInstanceProvider {
+
+    private final Object instance;
+
+    public SingletonInstanceProvider(Object instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public Object acquire() {
+        return instance;
+    }
+}
@@ -1,22 +1,26 @@
 package com.shuo.krpc.registry;
 
-import cn.hutool.core.collection.ConcurrentHashSet;
 import com.shuo.krpc.config.RegistryConfig;
 import com.shuo.krpc.model.ServiceMetaInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.CuratorCache;
 import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.retry.ExponentialBackoffRetry;
-import org.apache.curator.x.discovery.ServiceDiscovery;
-import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -25,20 +29,34 @@ import java.util.stream.Collectors;
  * Maintains a registry of service metadata using ZooKeeper to manage and discover services dynamically.
  * This registry includes features for registering, unregistering, discovering services, and handling service instance heartbeats.
  * It uses CuratorFramework for client interactions with ZooKeeper and manages a local cache for registered services to optimize lookup operations.
+ * <p>
+ * Each discovered service is mirrored by one long-lived {@link CuratorCache}, whose events are
+ * applied to that service's cached provider list only, so discovery never goes back to ZooKeeper
+ * once a service has been loaded. Asynchronous discovery completes from the cache's initialized
+ * event without blocking. Registration writes the ephemeral instance nodes that Curator's service
+ * discovery would, but through Curator's background operations, and writes them again when the
+ * session reconnects; the blocking methods wait for them through
+ * {@link BlockingRegistryAdapter}.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 @Slf4j
-public class ZooKeeperRegistry implements Registry {
+public class ZooKeeperRegistry extends BlockingRegistryAdapter {
 
     private CuratorFramework client;
 
-    private ServiceDiscovery<ServiceMetaInfo> serviceDiscovery;
+    private final JsonInstanceSerializer<ServiceMetaInfo> serializer =
+            new JsonInstanceSerializer<>(ServiceMetaInfo.class);
+
+    /**
+     * Discovery timeout in milliseconds
+     */
+    private long timeout;
 
     /**
-     * A set of all locally registered nodes' keys (for lease renewal)
+     * All locally registered nodes keyed by their path (for re-registration)
      */
-    private final Set<String> localRegisterNodeKeySet = new ConcurrentHashSet<>();
+    private final Map<String, ServiceMetaInfo> localRegisteredNodeMap = new ConcurrentHashMap<>();
 
     /**
      * Cached services in registry
@@ -46,9 +64,9 @@ public class ZooKeeperRegistry implements Registry {
     private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
 
     /**
-     * A set of all watching keys
+     * Service caches keyed by service key
      */
-    private final Set<String> watchingKeySet = new ConcurrentHashSet<>();
+    private final Map<String, ServiceWatch> serviceWatchMap = new ConcurrentHashMap<>();
 
     /**
      * Root node
@@ -58,6 +76,7 @@ public class ZooKeeperRegistry implements Registry {
 
     @Override
     public void init(RegistryConfig registryConfig) {
+        timeout = registryConfig.getTimeout();
         // Instantiate client with ZooKeeper connection parameters
         client = CuratorFrameworkFactory
                 .builder()
@@ -65,41 +84,64 @@ public class ZooKeeperRegistry implements Registry {
                 .retryPolicy(new ExponentialBackoffRetry(Math.toIntExact(registryConfig.getTimeout()), 3))
                 .build();
 
-        // Instantiate service discovery using ZooKeeper
-        serviceDiscovery = ServiceDiscoveryBuilder.builder(ServiceMetaInfo.class)
-                .client(client)
-                .basePath(ZOOKEEPER_ROOT_PATH)
-                .serializer(new JsonInstanceSerializer<>(ServiceMetaInfo.class))
-                .build();
+        // The session may have expired while disconnected, taking the ephemeral nodes with it
+        client.getConnectionStateListenable().addListener((curatorClient, newState) -> {
+            if (newState == ConnectionState.RECONNECTED) {
+                localRegisteredNodeMap.forEach((registerKey, serviceMetaInfo) ->
+                        createNodeAsync(registerKey, serviceMetaInfo, true)
+                                .whenComplete((v, e) -> {
+                                    if (e != null) {
+                                        log.error("Failed to re-register service: {}",
+                                                registerKey, e);
+                                    }
+                                }));
+            }
+        });
 
         try {
             client.start();
-            serviceDiscovery.start();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Create the instance nodes of several services in the background.
+     *
+     * @param serviceMetaInfoList Metadata information about the services to be registered.
+     * @return A future completed once every node is created.
+     */
     @Override
-    public void register(ServiceMetaInfo serviceMetaInfo) throws Exception {
-        // Register with ZooKeeper
-        serviceDiscovery.registerService(buildServiceInstance(serviceMetaInfo));
-
-        // Add node information to local cache
-        String registerKey = ZOOKEEPER_ROOT_PATH + "/" + serviceMetaInfo.getServiceNodeKey();
-        localRegisterNodeKeySet.add(registerKey);
+    public CompletableFuture<Void> registerAllAsync(List<ServiceMetaInfo> serviceMetaInfoList) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[serviceMetaInfoList.size()];
+        for (int i = 0; i < futures.length; i++) {
+            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(i);
+            String registerKey = getRegisterKey(serviceMetaInfo);
+            futures[i] = createNodeAsync(registerKey, serviceMetaInfo, true).handle((v, e) -> {
+                if (e != null) {
+                    log.error("Failed to register service: {}", registerKey, e);
+                    throw new RuntimeException("Error registering service", e);
+                }
+                // Add node information to local cache
+                localRegisteredNodeMap.put(registerKey, serviceMetaInfo);
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(futures);
     }
 
     @Override
-    public void unregister(ServiceMetaInfo serviceMetaInfo) {
-        try {
-            serviceDiscovery.unregisterService(buildServiceInstance(serviceMetaInfo));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        // Remove from local cache
-        String registerKey = ZOOKEEPER_ROOT_PATH + "/" + serviceMetaInfo.getServiceNodeKey();
-        localRegisterNodeKeySet.remove(registerKey);
+    public CompletableFuture<Void> unregisterAsync(ServiceMetaInfo serviceMetaInfo) {
+        String registerKey = getRegisterKey(serviceMetaInfo);
+        return deleteNodeAsync(registerKey).handle((v, e) -> {
+            if (e != null) {
+                log.error("Failed to unregister service: {}", registerKey, e);
+                throw new RuntimeException("Error unregistering service", e);
+            }
+            // Remove from local cache
+            localRegisteredNodeMap.remove(registerKey);
+            return null;
+        });
     }
 
     @Override
@@ -111,23 +153,22 @@ public class ZooKeeperRegistry implements Registry {
         }
 
         try {
-            // Query service information
-            Collection<ServiceInstance<ServiceMetaInfo>> serviceInstanceList = serviceDiscovery
-                    .queryForInstances(serviceKey);
-
-            // Parse service information
-            List<ServiceMetaInfo> serviceMetaInfoList = serviceInstanceList.stream()
-                    .map(ServiceInstance::getPayload)
-                    .collect(Collectors.toList());
-
-            // Write to service cache
-            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
-            return serviceMetaInfoList;
+            // Load the service once and keep the cache up to date from its Curator cache
+            return getServiceWatch(serviceKey).load();
         } catch (Exception e) {
             throw new RuntimeException("Failed to obtain service list", e);
         }
     }
 
+    @Override
+    public CompletableFuture<List<ServiceMetaInfo>> serviceDiscoveryAsync(String serviceKey) {
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
+        if (cachedServiceMetaInfoList != null) {
+            return CompletableFuture.completedFuture(cachedServiceMetaInfoList);
+        }
+        return getServiceWatch(serviceKey).loadAsync();
+    }
+
     @Override
     public void sendHeartBeat() {
         // No heartbeat mechanism is needed, as temporary nodes are established; if the server fails
@@ -135,32 +176,35 @@ public class ZooKeeperRegistry implements Registry {
     }
 
     /**
-     * Listen (on the consumer side)
+     * Watch all nodes of a service with a single Curator cache, loading them first if the
+     * service is not watched yet.
      *
-     * @param serviceNodeKey Service node key
+     * @param serviceKey The key of the service whose nodes should be watched.
      */
     @Override
-    public void watch(String serviceNodeKey) {
-        String watchKey = ZOOKEEPER_ROOT_PATH + "/" + serviceNodeKey;
-        boolean newWatch = watchingKeySet.add(watchKey);
-        if (newWatch) {
-            CuratorCache curatorCache = CuratorCache.build(client, watchKey);
-            curatorCache.start();
-            curatorCache.listenable().addListener(
-                    CuratorCacheListener
-                            .builder()
-                            .forDeletes(childData -> registryServiceCache.clearCache())
-                            .forChanges((oldNode, node) -> registryServiceCache.clearCache())
-                            .build()
-            );
+    public void watch(String serviceKey) {
+        try {
+            getServiceWatch(serviceKey).load();
+        } catch (Exception e) {
+            log.error("Failed to watch service: {}", serviceKey, e);
+            throw new RuntimeException(serviceKey + " failed to watch", e);
         }
     }
 
+    private ServiceWatch getServiceWatch(String serviceKey) {
+        return serviceWatchMap.computeIfAbsent(serviceKey, ServiceWatch::new);
+    }
+
+    @Override
+    public void setServiceChangeListener(BiConsumer<String, List<ServiceMetaInfo>> listener) {
+        registryServiceCache.setChangeListener(listener);
+    }
+
     @Override
     public void destroy() {
         log.info("Deactivate current node");
 
-        for (String key : localRegisterNodeKeySet) {
+        for (String key : localRegisteredNodeMap.keySet()) {
             try {
                 client.delete().guaranteed().forPath(key);
             } catch (Exception e) {
@@ -169,11 +213,85 @@ public class ZooKeeperRegistry implements Registry {
         }
 
         // Release resources
+        serviceWatchMap.values().forEach(ServiceWatch::close);
+        serviceWatchMap.clear();
         if (client != null) {
             client.close();
         }
     }
 
+    private static String getRegisterKey(ServiceMetaInfo serviceMetaInfo) {
+        return ZOOKEEPER_ROOT_PATH + "/" + serviceMetaInfo.getServiceNodeKey();
+    }
+
+    /**
+     * Create the ephemeral instance node of a service in the background.
+     *
+     * @param path            The path of the node.
+     * @param serviceMetaInfo The service.
+     * @param replaceExisting Whether a node already at the path is deleted and created again, as
+     *                        Curator's service discovery does, so that it belongs to this session
+     *                        and watchers see the change.
+     * @return A future completed once the node is created.
+     */
+    private CompletableFuture<Void> createNodeAsync(String path, ServiceMetaInfo serviceMetaInfo,
+                                                    boolean replaceExisting) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            byte[] data = serializer.serialize(buildServiceInstance(serviceMetaInfo));
+            client.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL)
+                    .inBackground((curatorClient, event) -> {
+                        int resultCode = event.getResultCode();
+                        if (resultCode == KeeperException.Code.OK.intValue()) {
+                            future.complete(null);
+                        } else if (replaceExisting
+                                && resultCode == KeeperException.Code.NODEEXISTS.intValue()) {
+                            deleteNodeAsync(path)
+                                    .thenCompose(v -> createNodeAsync(path, serviceMetaInfo, false))
+                                    .whenComplete((v, e) -> {
+                                        if (e != null) {
+                                            future.completeExceptionally(e);
+                                        } else {
+                                            future.complete(null);
+                                        }
+                                    });
+                        } else {
+                            future.completeExceptionally(KeeperException.create(
+                                    KeeperException.Code.get(resultCode), path));
+                        }
+                    })
+                    .forPath(path, data);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Delete a node in the background, succeeding if it does not exist.
+     *
+     * @param path The path of the node.
+     * @return A future completed once the node is gone.
+     */
+    private CompletableFuture<Void> deleteNodeAsync(String path) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            client.delete().guaranteed().inBackground((curatorClient, event) -> {
+                int resultCode = event.getResultCode();
+                if (resultCode == KeeperException.Code.OK.intValue()
+                        || resultCode == KeeperException.Code.NONODE.intValue()) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(KeeperException.create(
+                            KeeperException.Code.get(resultCode), path));
+                }
+            }).forPath(path);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     private ServiceInstance<ServiceMetaInfo> buildServiceInstance(ServiceMetaInfo serviceMetaInfo) {
         String serviceAddress = serviceMetaInfo.getServiceHost() + ":" +
                 serviceMetaInfo.getServicePort();
@@ -189,4 +307,122 @@ public class ZooKeeperRegistry implements Registry {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The Curator cache of one service.
+     * <p>
+     * Curator delivers the events of a cache on a single thread, and its initialized event
+     * follows the events of the initial load. The cached list is therefore written in full when
+     * the cache is initialized and changed only by the events after it, all on that thread.
+     */
+    private class ServiceWatch {
+
+        private final String serviceKey;
+
+        private final String path;
+
+        /**
+         * Completed once the cached list has been written for the first time
+         */
+        private final CompletableFuture<Void> initialized = new CompletableFuture<>();
+
+        private CuratorCache curatorCache;
+
+        private ServiceWatch(String serviceKey) {
+            this.serviceKey = serviceKey;
+            this.path = ZOOKEEPER_ROOT_PATH + "/" + serviceKey;
+        }
+
+        /**
+         * Start the Curator cache unless already started, and wait for its initial load.
+         *
+         * @return The current provider list.
+         * @throws Exception If the initial load fails or times out.
+         */
+        List<ServiceMetaInfo> load() throws Exception {
+            start();
+            initialized.get(timeout, TimeUnit.MILLISECONDS);
+            return registryServiceCache.readCache(serviceKey);
+        }
+
+        /**
+         * Start the Curator cache unless already started.
+         *
+         * @return A future of the provider list, completed once the initial load is cached and
+         *         failed if it times out.
+         */
+        CompletableFuture<List<ServiceMetaInfo>> loadAsync() {
+            start();
+            return initialized.<List<ServiceMetaInfo>>thenApply(v ->
+                            registryServiceCache.readCache(serviceKey))
+                    .orTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        private void start() {
+            synchronized (this) {
+                if (curatorCache == null) {
+                    curatorCache = CuratorCache.build(client, path);
+                    curatorCache.listenable().addListener(CuratorCacheListener.builder()
+                            .forCreates(this::put)
+                            .forChanges((oldNode, node) -> put(node))
+                            .forDeletes(this::remove)
+                            .forInitialized(this::publish)
+                            .build());
+                    curatorCache.start();
+                }
+            }
+        }
+
+        private void put(ChildData childData) {
+            ServiceMetaInfo serviceMetaInfo = toServiceMetaInfo(childData);
+            if (serviceMetaInfo != null) {
+                registryServiceCache.updateCache(serviceKey, serviceMetaInfo);
+            }
+        }
+
+        private void remove(ChildData childData) {
+            ServiceMetaInfo serviceMetaInfo = toServiceMetaInfo(childData);
+            if (serviceMetaInfo != null) {
+                registryServiceCache.removeCache(serviceKey, serviceMetaInfo.getServiceNodeKey());
+            }
+        }
+
+        /**
+         * Write the whole provider list from the Curator cache.
+         */
+        private void publish() {
+            registryServiceCache.writeCache(serviceKey, curatorCache.stream()
+                    .map(this::toServiceMetaInfo)
+                    .filter(serviceMetaInfo -> serviceMetaInfo != null)
+                    .collect(Collectors.toList()));
+            initialized.complete(null);
+        }
+
+        private synchronized void close() {
+            if (curatorCache != null) {
+                curatorCache.close();
+                curatorCache = null;
+            }
+            registryServiceCache.clearCache(serviceKey);
+        }
+
+        /**
+         * Parse an instance node of the service.
+         *
+         * @param childData The node.
+         * @return The provider, or null if the node is not an instance of the service.
+         */
+        private ServiceMetaInfo toServiceMetaInfo(ChildData childData) {
+            byte[] data = childData.getData();
+            if (!childData.getPath().startsWith(path + "/") || data == null || data.length == 0) {
+                return null;
+            }
+            try {
+                return serializer.deserialize(data).getPayload();
+            } catch (Exception e) {
+                log.warn("Failed to parse service node: {}", childData.getPath(), e);
+                return null;
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import com.caucho.hessian.io.HessianOutput;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Serializer Hessian implementation
@@ -21,10 +23,23 @@ public class HessianSerializer implements Serializer {
         return byteArrayOutputStream.toByteArray();
     }
 
+    @Override
+    public <T> void serialize(T object, OutputStream outputStream) throws IOException {
+        HessianOutput hessianOutput = new HessianOutput(outputStream);
+        hessianOutput.writeObject(object);
+        hessianOutput.flush();
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> type) throws IOException {
         ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
         HessianInput hessianInput = new HessianInput(byteArrayInputStream);
         return (T) hessianInput.readObject(type);
     }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> type) throws IOException {
+        HessianInput hessianInput = new HessianInput(inputStream);
+        return (T) hessianInput.readObject(type);
+    }
 }
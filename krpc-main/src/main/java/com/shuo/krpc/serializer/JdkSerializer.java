@@ -26,6 +26,21 @@ public class JdkSerializer implements Serializer {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Streaming serialization implementation based on JDK
+     *
+     * @param object
+     * @param outputStream
+     * @param <T>
+     * @throws IOException
+     */
+    @Override
+    public <T> void serialize(T object, OutputStream outputStream) throws IOException {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.flush();
+    }
+
     /**
      * Deserialization implementation based on JDK
      *
@@ -47,4 +62,23 @@ public class JdkSerializer implements Serializer {
             objectInputStream.close();
         }
     }
+
+    /**
+     * Streaming deserialization implementation based on JDK
+     *
+     * @param inputStream
+     * @param type
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> type) throws IOException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
+        try {
+            return (T) objectInputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
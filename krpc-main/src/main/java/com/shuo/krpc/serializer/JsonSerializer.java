@@ -1,10 +1,14 @@
 package com.shuo.krpc.serializer;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Serializer JSON implementation
@@ -14,15 +18,42 @@ import java.io.IOException;
 public class JsonSerializer implements Serializer {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    /**
+     * Writer that leaves the target stream open after writing
+     */
+    private static final ObjectWriter STREAM_WRITER =
+            OBJECT_MAPPER.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     @Override
     public <T> byte[] serialize(T object) throws IOException {
         return OBJECT_MAPPER.writeValueAsBytes(object);
     }
 
+    @Override
+    public <T> void serialize(T object, OutputStream outputStream) throws IOException {
+        STREAM_WRITER.writeValue(outputStream, object);
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> type) throws IOException {
-        T object = OBJECT_MAPPER.readValue(bytes, type);
+        return restoreTypes(OBJECT_MAPPER.readValue(bytes, type), type);
+    }
 
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> type) throws IOException {
+        return restoreTypes(OBJECT_MAPPER.readValue(inputStream, type), type);
+    }
+
+
+    /**
+     * Restore the declared types of request arguments and response data after deserialization.
+     * @param object
+     * @param type
+     * @return
+     * @param <T>
+     * @throws IOException
+     */
+    private <T> T restoreTypes(T object, Class<T> type) throws IOException {
         if (object instanceof RpcRequest) {
             return handleRequest((RpcRequest) object, type);
         }
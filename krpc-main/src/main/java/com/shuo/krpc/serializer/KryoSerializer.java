@@ -7,6 +7,8 @@ import com.esotericsoftware.kryo.io.Output;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Serializer Kryo implementation
@@ -35,6 +37,13 @@ public class KryoSerializer implements Serializer {
         return byteArrayOutputStream.toByteArray();
     }
 
+    @Override
+    public <T> void serialize(T object, OutputStream outputStream) throws IOException {
+        Output output = new Output(outputStream);
+        KRYO_THREAD_LOCAL.get().writeObject(output, object);
+        output.flush();
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> type) throws IOException {
         ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
@@ -43,4 +52,10 @@ public class KryoSerializer implements Serializer {
         input.close();
         return result;
     }
+
+    @Override
+    public <T> T deserialize(InputStream inputStream, Class<T> type) throws IOException {
+        Input input = new Input(inputStream);
+        return KRYO_THREAD_LOCAL.get().readObject(input, type);
+    }
 }
@@ -1,6 +1,8 @@
 package com.shuo.krpc.serializer;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Serializer interface
@@ -19,6 +21,22 @@ public interface Serializer {
      */
     <T> byte[] serialize(T object) throws IOException;
 
+    /**
+     * Streaming serialization function
+     * <p>
+     * Writes the serialized form of the object straight into the given stream, such as one backed
+     * by a network buffer, without materializing it as an intermediate byte array. The stream is
+     * flushed but left open. The default implementation falls back to {@link #serialize(Object)}.
+     *
+     * @param object       The object to serialize.
+     * @param outputStream The stream receiving the serialized bytes.
+     * @param <T>          The type of the object.
+     * @throws IOException If writing to the stream fails.
+     */
+    default <T> void serialize(T object, OutputStream outputStream) throws IOException {
+        outputStream.write(serialize(object));
+    }
+
     /**
      * Deserialization function
      *
@@ -29,4 +47,21 @@ public interface Serializer {
      * @throws IOException
      */
     <T> T deserialize(byte[] bytes, Class<T> type) throws IOException;
+
+    /**
+     * Streaming deserialization function
+     * <p>
+     * Reads the object from the given stream, such as one over a slice of a network buffer,
+     * without first copying the serialized bytes into an array. The default implementation falls
+     * back to {@link #deserialize(byte[], Class)}.
+     *
+     * @param inputStream The stream holding exactly the serialized bytes.
+     * @param type        The class of the object.
+     * @param <T>         The type of the object.
+     * @return The deserialized object.
+     * @throws IOException If reading from the stream fails.
+     */
+    default <T> T deserialize(InputStream inputStream, Class<T> type) throws IOException {
+        return deserialize(inputStream.readAllBytes(), type);
+    }
 }
@@ -0,0 +1,85 @@
+package com.shuo.krpc.server;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.registry.MethodInvoker;
+import com.shuo.krpc.registry.ServiceInstanceProvider;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * Service Invoker
+ * <p>
+ * Invokes a requested service method on behalf of a server, whatever its transport. A method
+ * returning a {@link CompletionStage} is answered once the stage completes and keeps its service
+ * instance until then; any other method is answered as soon as it returns.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public final class ServiceInvoker {
+
+    private ServiceInvoker() {
+    }
+
+    /**
+     * Invoke the requested service method and hand its response to the server.
+     *
+     * @param rpcRequest The request.
+     * @param responder  Sends the response, possibly from the thread completing an asynchronous
+     *                   result.
+     */
+    public static void invoke(RpcRequest rpcRequest, Consumer<RpcResponse> responder) {
+        // Construct the response object
+        RpcResponse rpcResponse = new RpcResponse();
+        try {
+            // Invoke the method through the invoker table built at registration
+            String serviceName = rpcRequest.getServiceName();
+            MethodInvoker methodInvoker = LocalRegistry.getInvoker(serviceName,
+                    rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
+            ServiceInstanceProvider instanceProvider =
+                    LocalRegistry.getInstanceProvider(serviceName);
+            Object instance = instanceProvider.acquire();
+            Object result;
+            try {
+                result = methodInvoker.invoke(instance, rpcRequest.getArgs());
+            } catch (Throwable e) {
+                instanceProvider.release(instance);
+                throw e;
+            }
+            // Asynchronous services are answered once their result is ready, and keep their
+            // instance until then
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<?>) result).whenComplete((data, e) -> {
+                    instanceProvider.release(instance);
+                    if (e != null) {
+                        setException(rpcResponse, e);
+                    } else {
+                        rpcResponse.setData(data);
+                        rpcResponse.setDataType(data == null ? Object.class : data.getClass());
+                        rpcResponse.setMessage("ok");
+                    }
+                    responder.accept(rpcResponse);
+                });
+                return;
+            }
+            instanceProvider.release(instance);
+            // Package the return result
+            rpcResponse.setData(result);
+            rpcResponse.setDataType(methodInvoker.getReturnType());
+            rpcResponse.setMessage("ok");
+        } catch (Throwable e) {
+            e.printStackTrace();
+            setException(rpcResponse, e);
+        }
+
+        responder.accept(rpcResponse);
+    }
+
+    private static void setException(RpcResponse rpcResponse, Throwable e) {
+        rpcResponse.setMessage(e.getMessage());
+        rpcResponse.setException(e instanceof Exception ? (Exception) e
+                : new RuntimeException(e));
+    }
+}
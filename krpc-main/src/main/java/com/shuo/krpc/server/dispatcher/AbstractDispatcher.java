@@ -0,0 +1,63 @@
+package com.shuo.krpc.server.dispatcher;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Abstract Dispatcher
+ * <p>
+ * This class records queue depth and queue wait time for every dispatched invocation, leaving
+ * subclasses to decide only where the invocation runs.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public abstract class AbstractDispatcher implements Dispatcher {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final LongAdder startedCount = new LongAdder();
+
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+
+    private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Long::max, 0L);
+
+    @Override
+    public void dispatch(Runnable task) {
+        long acceptTime = System.nanoTime();
+        queueDepth.incrementAndGet();
+        try {
+            execute(() -> {
+                long queueWaitNanos = System.nanoTime() - acceptTime;
+                queueDepth.decrementAndGet();
+                startedCount.increment();
+                totalQueueWaitNanos.add(queueWaitNanos);
+                maxQueueWaitNanos.accumulate(queueWaitNanos);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            queueDepth.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public DispatcherStats getStats() {
+        long started = startedCount.sum();
+        double averageQueueWaitMillis = started == 0 ? 0 :
+                totalQueueWaitNanos.sum() / NANOS_PER_MILLI / started;
+        return new DispatcherStats(queueDepth.get(), started, averageQueueWaitMillis,
+                maxQueueWaitNanos.get() / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Run the task according to the dispatch mode.
+     *
+     * @param task The wrapped invocation.
+     * @throws RejectedExecutionException If the task cannot be accepted.
+     */
+    protected abstract void execute(Runnable task);
+}
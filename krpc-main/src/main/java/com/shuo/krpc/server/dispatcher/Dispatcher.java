@@ -0,0 +1,39 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.config.RpcConfig;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatcher Interface
+ * <p>
+ * This interface defines where the server runs service invocations. Requests are decoded on the
+ * Vert.x event loop and then handed to a dispatcher, which may run them inline on the event loop
+ * or offload them to other threads so that a slow service does not stall other connections.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public interface Dispatcher {
+
+    /**
+     * Initialize the dispatcher with the provided configuration. Calling it again has no effect.
+     *
+     * @param rpcConfig The configuration, providing thread and queue sizes.
+     */
+    void init(RpcConfig rpcConfig);
+
+    /**
+     * Dispatch a service invocation.
+     *
+     * @param task The invocation, including sending its response.
+     * @throws RejectedExecutionException If the dispatcher cannot accept more work.
+     */
+    void dispatch(Runnable task);
+
+    /**
+     * Get the statistics used to size the dispatcher.
+     *
+     * @return A snapshot of the queue depth and queue wait time.
+     */
+    DispatcherStats getStats();
+}
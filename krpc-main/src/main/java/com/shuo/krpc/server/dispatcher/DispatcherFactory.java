@@ -0,0 +1,30 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.spi.SpiLoader;
+
+/**
+ * Dispatcher Factory (Factory Pattern for obtaining dispatcher instances)
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class DispatcherFactory {
+
+    static {
+        SpiLoader.load(Dispatcher.class);
+    }
+
+    /**
+     * Default dispatcher instance.
+     */
+    private static final Dispatcher DEFAULT_DISPATCHER = new WorkerPoolDispatcher();
+
+    /**
+     * Get an instance of the dispatcher.
+     *
+     * @param key The key used to identify the dispatcher instance.
+     * @return The dispatcher instance corresponding to the key.
+     */
+    public static Dispatcher getInstance(String key) {
+        return SpiLoader.getInstance(Dispatcher.class, key);
+    }
+}
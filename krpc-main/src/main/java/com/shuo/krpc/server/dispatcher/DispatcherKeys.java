@@ -0,0 +1,14 @@
+package com.shuo.krpc.server.dispatcher;
+
+/**
+ * Dispatcher Key Constants
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public interface DispatcherKeys {
+
+    String INLINE = "inline";
+    String WORKER = "worker";
+    String VIRTUAL = "virtual";
+
+}
@@ -0,0 +1,38 @@
+package com.shuo.krpc.server.dispatcher;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Dispatcher Statistics
+ * <p>
+ * A snapshot of how much work is waiting in a dispatcher and how long it waits before running.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DispatcherStats {
+
+    /**
+     * Number of invocations accepted but not yet started
+     */
+    private int queueDepth;
+
+    /**
+     * Number of invocations started
+     */
+    private long startedCount;
+
+    /**
+     * Average time between acceptance and start, in milliseconds
+     */
+    private double averageQueueWaitMillis;
+
+    /**
+     * Longest time between acceptance and start, in milliseconds
+     */
+    private double maxQueueWaitMillis;
+}
@@ -0,0 +1,24 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.config.RpcConfig;
+
+/**
+ * Inline Dispatcher
+ * <p>
+ * This dispatcher runs the invocation directly on the Vert.x event loop. It avoids any thread
+ * hand-off and suits services whose methods are trivially fast and never block.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class InlineDispatcher extends AbstractDispatcher {
+
+    @Override
+    public void init(RpcConfig rpcConfig) {
+        // Nothing to initialize
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        task.run();
+    }
+}
@@ -0,0 +1,44 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.config.RpcConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual Thread Dispatcher
+ * <p>
+ * This dispatcher starts a new virtual thread for every invocation, so blocking services cost no
+ * platform thread while they wait. Virtual threads need Java 21 or later; on older runtimes the
+ * dispatcher falls back to the bounded worker pool.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class VirtualThreadDispatcher extends AbstractDispatcher {
+
+    private volatile ExecutorService executorService;
+
+    @Override
+    public synchronized void init(RpcConfig rpcConfig) {
+        if (executorService != null) {
+            return;
+        }
+        try {
+            // Looked up reflectively since the framework is compiled for an older release
+            executorService = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on Java {}, using worker pool instead",
+                    Runtime.version().feature());
+            executorService = WorkerPoolDispatcher.createExecutor(rpcConfig);
+        }
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        executorService.execute(task);
+    }
+}
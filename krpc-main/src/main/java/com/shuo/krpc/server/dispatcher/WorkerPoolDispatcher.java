@@ -0,0 +1,49 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.config.RpcConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker Pool Dispatcher
+ * <p>
+ * This dispatcher runs invocations on a fixed-size pool of worker threads with a bounded queue.
+ * When both the workers and the queue are full, new invocations are rejected instead of piling
+ * up without limit.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class WorkerPoolDispatcher extends AbstractDispatcher {
+
+    private volatile ExecutorService executorService;
+
+    @Override
+    public synchronized void init(RpcConfig rpcConfig) {
+        if (executorService == null) {
+            executorService = createExecutor(rpcConfig);
+        }
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+        executorService.execute(task);
+    }
+
+    /**
+     * Create the bounded worker pool described by the configuration.
+     *
+     * @param rpcConfig The configuration providing the thread count and queue capacity.
+     * @return The worker pool.
+     */
+    static ExecutorService createExecutor(RpcConfig rpcConfig) {
+        int workerThreads = rpcConfig.getWorkerThreads();
+        return new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(rpcConfig.getWorkerQueueCapacity()),
+                new DefaultThreadFactory("krpc-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -3,16 +3,15 @@ package com.shuo.krpc.server.http;
 import com.shuo.krpc.RpcApplication;
 import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
-import com.shuo.krpc.registry.LocalRegistry;
 import com.shuo.krpc.serializer.Serializer;
 import com.shuo.krpc.serializer.SerializerFactory;
+import com.shuo.krpc.server.ServiceInvoker;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
 
 /**
  * HTTPServer interface handler
@@ -38,32 +37,17 @@ public class HttpServerHandler implements Handler<HttpServerRequest> {
                 e.printStackTrace();
             }
 
-            // Construct response object
-            RpcResponse rpcResponse = new RpcResponse();
-
             // Immediately return if request is null
             if (rpcRequest == null) {
+                RpcResponse rpcResponse = new RpcResponse();
                 rpcResponse.setMessage("rpc request is null");
                 doResponse(request, rpcResponse, serializer);
                 return;
             }
 
-            try {
-                // Access service implementation using reflection
-                Class<?> implClass = LocalRegistry.get(rpcRequest.getServiceName());
-                Method method = implClass.getMethod(rpcRequest.getMethodName(),
-                        rpcRequest.getParameterTypes());
-                Object result = method.invoke(implClass.newInstance(), rpcRequest.getArgs());
-                rpcResponse.setData(result);
-                rpcResponse.setDataType(method.getReturnType());
-                rpcResponse.setMessage("ok");
-            } catch (Exception e) {
-                e.printStackTrace();
-                rpcResponse.setMessage(e.getMessage());
-                rpcResponse.setException(e);
-            }
-
-            doResponse(request, rpcResponse, serializer);
+            // Asynchronous services are answered once their result is ready
+            ServiceInvoker.invoke(rpcRequest,
+                    rpcResponse -> doResponse(request, rpcResponse, serializer));
         });
     }
 
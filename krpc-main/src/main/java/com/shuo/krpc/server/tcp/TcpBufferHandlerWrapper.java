@@ -1,77 +1,108 @@
 package com.shuo.krpc.server.tcp;
 
 import com.shuo.krpc.protocol.ProtocolConstant;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
+
+import java.util.List;
 
 /**
  * TcpBufferHandlerWrapper
  * <p>
- * This class wraps a RecordParser around a buffer handler to enhance its functionality by using
- * the decorator pattern. It reads and processes both the header and body of protocol messages in
- * a structured manner.
+ * This class wraps a frame assembler around a buffer handler to enhance its functionality by
+ * using the decorator pattern. It splits the received byte stream into complete protocol messages
+ * (header + body) and hands each of them to the wrapped handler.
+ * <p>
+ * Received buffers are accumulated as components of a composite buffer rather than copied, and
+ * each complete message is emitted as a slice over the received bytes. A message that arrived in
+ * a single read is a plain slice of it; one split across reads is a composite of slices.
+ * <p>
+ * A header with an invalid body length means the stream can no longer be split into messages.
+ * The received bytes are then dropped, the error handler is notified so that the connection can
+ * be closed, and any further bytes are discarded.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 public class TcpBufferHandlerWrapper implements Handler<Buffer> {
 
-    private final RecordParser recordParser;
+    /**
+     * Offset of the body length field within the header
+     */
+    private static final int BODY_LENGTH_OFFSET = 13;
+
+    private final Handler<Buffer> bufferHandler;
+
+    private final Handler<Throwable> errorHandler;
 
     /**
-     * Constructor for TcpBufferHandlerWrapper.
+     * Received bytes that do not form a complete message yet
+     */
+    private final CompositeByteBuf cumulation = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+
+    /**
+     * Whether the stream was found corrupt
+     */
+    private boolean corrupted = false;
+
+    /**
+     * Constructor for TcpBufferHandlerWrapper, discarding the stream once it is found corrupt.
      *
-     * @param bufferHandler The buffer handler to be wrapped and enhanced with record parsing
+     * @param bufferHandler The buffer handler to be wrapped and enhanced with frame assembly
      *                      capability.
      */
     public TcpBufferHandlerWrapper(Handler<Buffer> bufferHandler) {
-        recordParser = initRecordParser(bufferHandler);
-    }
-
-    @Override
-    public void handle(Buffer buffer) {
-        recordParser.handle(buffer);
+        this(bufferHandler, e -> {
+        });
     }
 
     /**
-     * The parser starts in fixed-size mode to read the header length, then switches to read the
-     * body based on the size specified in the header. This ensures complete messages (header +
-     * body) are read before being processed.
+     * Constructor for TcpBufferHandlerWrapper.
      *
-     * @param bufferHandler The handler for processing complete messages.
-     * @return The initialized RecordParser.
+     * @param bufferHandler The buffer handler to be wrapped and enhanced with frame assembly
+     *                      capability.
+     * @param errorHandler  Notified once if the stream is found corrupt, typically closing the
+     *                      connection.
      */
-    private RecordParser initRecordParser(Handler<Buffer> bufferHandler) {
-        // Create the parser to initially read the header length
-        RecordParser parser = RecordParser.newFixed(ProtocolConstant.MESSAGE_HEADER_LENGTH);
-
-        parser.setOutput(new Handler<Buffer>() {
-            // Initial state to indicate that the message body size is not yet known
-            int size = -1;
-            // Buffer to store the complete message (header + body)
-            Buffer resultBuffer = Buffer.buffer();
+    public TcpBufferHandlerWrapper(Handler<Buffer> bufferHandler,
+                                   Handler<Throwable> errorHandler) {
+        this.bufferHandler = bufferHandler;
+        this.errorHandler = errorHandler;
+    }
 
-            @Override
-            public void handle(Buffer buffer) {
-                if (size == -1) {
-                    // Read the message body length from the header
-                    size = buffer.getInt(13);
-                    parser.fixedSizeMode(size);
-                    // Append the header information to the result buffer
-                    resultBuffer.appendBuffer(buffer);
-                } else {
-                    // Append the body information to the result buffer
-                    resultBuffer.appendBuffer(buffer);
-                    // The complete message is now assembled, process it
-                    bufferHandler.handle(resultBuffer);
-                    // Reset for the next message
-                    parser.fixedSizeMode(ProtocolConstant.MESSAGE_HEADER_LENGTH);
-                    size = -1;
-                    resultBuffer = Buffer.buffer();
-                }
+    @Override
+    public void handle(Buffer buffer) {
+        if (corrupted) {
+            return;
+        }
+        cumulation.addComponent(true, buffer.getByteBuf());
+        while (cumulation.readableBytes() >= ProtocolConstant.MESSAGE_HEADER_LENGTH) {
+            // Read the message body length from the header
+            int readerIndex = cumulation.readerIndex();
+            int bodyLength = cumulation.getInt(readerIndex + BODY_LENGTH_OFFSET);
+            if (bodyLength < 0) {
+                // No later message boundary can be found, so stop reading the stream
+                corrupted = true;
+                cumulation.removeComponents(0, cumulation.numComponents());
+                errorHandler.handle(
+                        new RuntimeException("Invalid message body length: " + bodyLength));
+                return;
             }
-        });
-
-        return parser;
+            int frameLength = ProtocolConstant.MESSAGE_HEADER_LENGTH + bodyLength;
+            if (cumulation.readableBytes() < frameLength) {
+                // Wait for the rest of the message
+                break;
+            }
+            // Slice the complete message out of the received buffers it spans
+            List<ByteBuf> parts = cumulation.decompose(readerIndex, frameLength);
+            cumulation.skipBytes(frameLength);
+            ByteBuf frame = parts.size() == 1 ? parts.get(0)
+                    : Unpooled.wrappedBuffer(parts.size(), parts.toArray(new ByteBuf[0]));
+            bufferHandler.handle(Buffer.buffer(frame));
+        }
+        // Drop the received buffers that have been fully emitted
+        cumulation.discardReadComponents();
     }
 }
@@ -0,0 +1,213 @@
+package com.shuo.krpc.server.tcp;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.protocol.ProtocolConstant;
+import com.shuo.krpc.protocol.ProtocolMessage;
+import com.shuo.krpc.protocol.ProtocolMessageDecoder;
+import com.shuo.krpc.protocol.ProtocolMessageEncoder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TCP Connection
+ * <p>
+ * This class wraps a persistent {@link NetSocket} to a service provider and multiplexes many
+ * concurrent requests over it. Every outgoing request is recorded in a pending table keyed by the
+ * request ID carried in {@link ProtocolMessage.Header}, and responses are matched back to their
+ * callers by that ID, so responses may arrive in any order.
+ * <p>
+ * Each request can carry a timeout. Deadlines of all connections are tracked by one shared
+ * hashed-wheel timer, so arming and cancelling a deadline costs O(1) regardless of how many calls
+ * are in flight. An expired request is removed from the pending table and failed with a
+ * {@link TimeoutException}; a response arriving after that is discarded.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Slf4j
+public class TcpConnection {
+
+    /**
+     * Timer enforcing request deadlines, shared by all connections
+     */
+    private static final Timer TIMEOUT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("krpc-request-timeout", true),
+            10, TimeUnit.MILLISECONDS, 512);
+
+    private final NetSocket socket;
+
+    /**
+     * Requests that have been written but not yet answered, keyed by request ID
+     */
+    private final Map<Long, CompletableFuture<RpcResponse>> pendingRequests =
+            new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for TcpConnection.
+     *
+     * @param socket The connected socket to the service provider.
+     */
+    public TcpConnection(NetSocket socket) {
+        this.socket = socket;
+        socket.handler(new TcpBufferHandlerWrapper(this::handleResponse, e -> {
+            log.error("Invalid response stream from {}, closing connection",
+                    socket.remoteAddress(), e);
+            socket.close();
+            close(e);
+        }));
+        socket.exceptionHandler(e -> log.error("TCP connection error: {}",
+                socket.remoteAddress(), e));
+        socket.closeHandler(v -> close(new RuntimeException("TCP connection closed: " +
+                socket.remoteAddress())));
+    }
+
+    /**
+     * Sends a request over this connection.
+     *
+     * @param protocolMessage The request message, with a request ID unique to this connection.
+     * @param timeoutMillis   The time to wait for the response in milliseconds, or 0 to wait
+     *                        without limit.
+     * @return A future completed with the response matching the request ID.
+     */
+    public CompletableFuture<RpcResponse> send(ProtocolMessage<RpcRequest> protocolMessage,
+                                               long timeoutMillis) {
+        long requestId = protocolMessage.getHeader().getRequestId();
+        CompletableFuture<RpcResponse> responseFuture = new CompletableFuture<>();
+        pendingRequests.put(requestId, responseFuture);
+        if (timeoutMillis > 0) {
+            Timeout timeout = TIMEOUT_TIMER.newTimeout(t -> fail(requestId,
+                    new TimeoutException("Request " + requestId + " timed out after " +
+                            timeoutMillis + " ms")), timeoutMillis, TimeUnit.MILLISECONDS);
+            responseFuture.whenComplete((rpcResponse, e) -> timeout.cancel());
+        }
+        // The connection may have been closed while the request was being registered
+        if (closed) {
+            fail(requestId, new RuntimeException("TCP connection closed: " +
+                    socket.remoteAddress()));
+            return responseFuture;
+        }
+
+        try {
+            ProtocolMessageEncoder.write(socket, protocolMessage)
+                    .onFailure(e -> fail(requestId, e));
+        } catch (Exception e) {
+            fail(requestId, new RuntimeException("Protocol message encoding error", e));
+        }
+        return responseFuture;
+    }
+
+    /**
+     * Derives a future that fails with a {@link TimeoutException} unless the given one completes
+     * in time, using the shared deadline timer. The given future itself is left untouched, so it
+     * may be shared by other callers.
+     *
+     * @param future        The future to bound.
+     * @param timeoutMillis The time to wait in milliseconds.
+     * @param message       The message of the timeout exception.
+     * @return A future completed like the given one, or failed once the time has passed.
+     */
+    static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMillis,
+                                                String message) {
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        Timeout timeout = TIMEOUT_TIMER.newTimeout(t -> bounded.completeExceptionally(
+                new TimeoutException(message)), timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> {
+            timeout.cancel();
+            if (e != null) {
+                bounded.completeExceptionally(e);
+            } else {
+                bounded.complete(result);
+            }
+        });
+        return bounded;
+    }
+
+    /**
+     * Whether this connection can still be used to send requests.
+     *
+     * @return true if the underlying socket has not been closed.
+     */
+    public boolean isActive() {
+        return !closed;
+    }
+
+    /**
+     * Number of requests waiting for a response on this connection.
+     *
+     * @return The number of in-flight requests.
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Closes the connection and fails all in-flight requests.
+     */
+    public void close() {
+        socket.close();
+        close(new RuntimeException("TCP connection closed: " + socket.remoteAddress()));
+    }
+
+    private void handleResponse(Buffer buffer) {
+        ProtocolMessage<RpcResponse> rpcResponseProtocolMessage;
+        try {
+            rpcResponseProtocolMessage =
+                    (ProtocolMessage<RpcResponse>) ProtocolMessageDecoder.decode(buffer);
+        } catch (Exception e) {
+            handleDecodingFailure(buffer, e);
+            return;
+        }
+        long requestId = rpcResponseProtocolMessage.getHeader().getRequestId();
+        CompletableFuture<RpcResponse> responseFuture = pendingRequests.remove(requestId);
+        if (responseFuture == null) {
+            // The request has already timed out or failed
+            log.warn("Discard late response for request: {}", requestId);
+            return;
+        }
+        responseFuture.complete(rpcResponseProtocolMessage.getBody());
+    }
+
+    /**
+     * Fail the request whose response could not be decoded. The frame was read whole, so the
+     * stream is still in step unless its header is corrupt, in which case the connection is
+     * closed and all of its requests fail.
+     */
+    private void handleDecodingFailure(Buffer buffer, Exception e) {
+        if (buffer.getByte(0) != ProtocolConstant.PROTOCOL_MAGIC) {
+            log.error("Invalid response from {}, closing connection", socket.remoteAddress(), e);
+            socket.close();
+            close(new RuntimeException("Protocol message decoding error", e));
+            return;
+        }
+        long requestId = buffer.getLong(5);
+        log.error("Failed to decode response for request: {}", requestId, e);
+        fail(requestId, new RuntimeException("Protocol message decoding error", e));
+    }
+
+    private void close(Throwable cause) {
+        closed = true;
+        for (Long requestId : pendingRequests.keySet()) {
+            fail(requestId, cause);
+        }
+    }
+
+    private void fail(long requestId, Throwable cause) {
+        CompletableFuture<RpcResponse> responseFuture = pendingRequests.remove(requestId);
+        if (responseFuture != null) {
+            responseFuture.completeExceptionally(cause);
+        }
+    }
+}
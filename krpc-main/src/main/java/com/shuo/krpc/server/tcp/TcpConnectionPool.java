@@ -0,0 +1,103 @@
+package com.shuo.krpc.server.tcp;
+
+import io.vertx.core.net.NetClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TCP Connection Pool
+ * <p>
+ * This class keeps a small, fixed number of persistent connections to a single provider address.
+ * Connections are created lazily on first use and handed out in round-robin order; since every
+ * connection multiplexes requests, a handful of sockets is enough to carry many concurrent calls.
+ * A connection that fails to connect or gets closed is replaced on the next acquisition.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+public class TcpConnectionPool {
+
+    private final NetClient netClient;
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * Connection slots, each holding a connection that is either established or in progress
+     */
+    private final AtomicReferenceArray<CompletableFuture<TcpConnection>> connections;
+
+    /**
+     * The next slot for round-robin selection.
+     */
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    /**
+     * Constructor for TcpConnectionPool.
+     *
+     * @param netClient The client used to open connections.
+     * @param host      The provider host.
+     * @param port      The provider port.
+     * @param size      The maximum number of connections kept to the provider.
+     */
+    public TcpConnectionPool(NetClient netClient, String host, int port, int size) {
+        this.netClient = netClient;
+        this.host = host;
+        this.port = port;
+        this.connections = new AtomicReferenceArray<>(Math.max(size, 1));
+    }
+
+    /**
+     * Acquires a connection to the provider, connecting first if the selected slot is empty or
+     * its connection is no longer usable.
+     *
+     * @return A future completed with an active connection.
+     */
+    public CompletableFuture<TcpConnection> acquire() {
+        int index = Math.floorMod(nextIndex.getAndIncrement(), connections.length());
+        while (true) {
+            CompletableFuture<TcpConnection> current = connections.get(index);
+            if (current != null && isUsable(current)) {
+                return current;
+            }
+            CompletableFuture<TcpConnection> connectFuture = new CompletableFuture<>();
+            if (connections.compareAndSet(index, current, connectFuture)) {
+                netClient.connect(port, host, result -> {
+                    if (result.succeeded()) {
+                        connectFuture.complete(new TcpConnection(result.result()));
+                    } else {
+                        connectFuture.completeExceptionally(new RuntimeException(
+                                "Failed to connect to TCP server " + host + ":" + port,
+                                result.cause()));
+                    }
+                });
+                return connectFuture;
+            }
+        }
+    }
+
+    /**
+     * Closes every connection in the pool.
+     */
+    public void close() {
+        for (int i = 0; i < connections.length(); i++) {
+            CompletableFuture<TcpConnection> connection = connections.getAndSet(i, null);
+            if (connection != null) {
+                connection.thenAccept(TcpConnection::close);
+            }
+        }
+    }
+
+    /**
+     * A connection in progress is shared by waiting callers; a finished one is reused only if it
+     * connected successfully and is still open.
+     */
+    private boolean isUsable(CompletableFuture<TcpConnection> connection) {
+        if (!connection.isDone()) {
+            return true;
+        }
+        return !connection.isCompletedExceptionally() && connection.join().isActive();
+    }
+}
@@ -3,13 +3,15 @@ package com.shuo.krpc.server.tcp;
 import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
 import com.shuo.krpc.protocol.*;
-import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.server.ServiceInvoker;
+import com.shuo.krpc.server.dispatcher.Dispatcher;
+import com.shuo.krpc.server.dispatcher.InlineDispatcher;
 import io.vertx.core.Handler;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.NetSocket;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * TcpServerHandler
@@ -17,11 +19,36 @@ import java.lang.reflect.Method;
  * TcpServerHandler processes the incoming request by decoding it, invoking the appropriate service
  * method, and sending back the response. It utilizes the ProtocolMessageDecoder and
  * ProtocolMessageEncoder to handle encoding and decoding of protocol messages.
+ * <p>
+ * Decoding happens on the Vert.x event loop, while the invocation itself is handed to a
+ * {@link Dispatcher} so that slow services do not stall other connections on the same loop.
  *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
+@Slf4j
 public class TcpServerHandler implements Handler<NetSocket> {
 
+    /**
+     * Dispatcher running service invocations
+     */
+    private final Dispatcher dispatcher;
+
+    /**
+     * Create a handler that invokes services directly on the event loop.
+     */
+    public TcpServerHandler() {
+        this(new InlineDispatcher());
+    }
+
+    /**
+     * Create a handler that hands service invocations to the given dispatcher.
+     *
+     * @param dispatcher The dispatcher running service invocations.
+     */
+    public TcpServerHandler(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     @Override
     public void handle(NetSocket netSocket) {
         // Handle the connection
@@ -36,40 +63,53 @@ public class TcpServerHandler implements Handler<NetSocket> {
                 throw new RuntimeException("Protocol message decoding error");
             }
 
-            // Process the request
-            RpcRequest rpcRequest = protocolMessage.getBody();
-
-            // Construct the response object
-            RpcResponse rpcResponse = new RpcResponse();
+            // Process the request off the event loop unless the dispatcher runs it inline
             try {
-                // Get the service implementation class and invoke the method via reflection
-                Class<?> implClass = LocalRegistry.get(rpcRequest.getServiceName());
-                Method method = implClass.getMethod(rpcRequest.getMethodName(),
-                        rpcRequest.getParameterTypes());
-                Object result = method.invoke(implClass.getDeclaredConstructor().newInstance(),
-                        rpcRequest.getArgs());
-                // Package the return result
-                rpcResponse.setData(result);
-                rpcResponse.setDataType(method.getReturnType());
-                rpcResponse.setMessage("ok");
-            } catch (Exception e) {
-                e.printStackTrace();
-                rpcResponse.setMessage(e.getMessage());
+                dispatcher.dispatch(() -> doInvoke(netSocket, protocolMessage));
+            } catch (RejectedExecutionException e) {
+                RpcResponse rpcResponse = new RpcResponse();
+                rpcResponse.setMessage("Server is busy");
                 rpcResponse.setException(e);
+                ProtocolMessage.Header header = protocolMessage.getHeader();
+                header.setStatus((byte) ProtocolMessageStatusEnum.BAD_RESPONSE.getValue());
+                doResponse(netSocket, header, rpcResponse);
             }
-
-            // Send the response by encoding it
-            ProtocolMessage.Header header = protocolMessage.getHeader();
-            header.setType((byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
-            ProtocolMessage<RpcResponse> responseProtocolMessage = new ProtocolMessage<>(header,
-                    rpcResponse);
-            try {
-                Buffer encode = ProtocolMessageEncoder.encode(responseProtocolMessage);
-                netSocket.write(encode);
-            } catch (IOException e) {
-                throw new RuntimeException("Protocol message encoding error");
-            }
+        }, e -> {
+            log.error("Invalid request stream from {}, closing connection",
+                    netSocket.remoteAddress(), e);
+            netSocket.close();
         });
         netSocket.handler(bufferHandlerWrapper);
     }
+
+    /**
+     * Invoke the requested service method and send back its result.
+     *
+     * @param netSocket       The connection the request arrived on.
+     * @param protocolMessage The decoded request.
+     */
+    private void doInvoke(NetSocket netSocket, ProtocolMessage<RpcRequest> protocolMessage) {
+        ProtocolMessage.Header header = protocolMessage.getHeader();
+        ServiceInvoker.invoke(protocolMessage.getBody(),
+                rpcResponse -> doResponse(netSocket, header, rpcResponse));
+    }
+
+    /**
+     * Send the response by encoding it, reusing the request header so the client can correlate it.
+     *
+     * @param netSocket   The connection the request arrived on.
+     * @param header      The request header.
+     * @param rpcResponse The response to send.
+     */
+    private void doResponse(NetSocket netSocket, ProtocolMessage.Header header,
+                            RpcResponse rpcResponse) {
+        header.setType((byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
+        ProtocolMessage<RpcResponse> responseProtocolMessage = new ProtocolMessage<>(header,
+                rpcResponse);
+        try {
+            ProtocolMessageEncoder.write(netSocket, responseProtocolMessage);
+        } catch (IOException e) {
+            throw new RuntimeException("Protocol message encoding error");
+        }
+    }
 }
@@ -1,19 +1,22 @@
 package com.shuo.krpc.server.tcp;
 
-import cn.hutool.core.util.IdUtil;
 import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.config.RpcConfig;
+import com.shuo.krpc.loadbalancer.EndpointStats;
 import com.shuo.krpc.model.RpcRequest;
 import com.shuo.krpc.model.RpcResponse;
 import com.shuo.krpc.model.ServiceMetaInfo;
 import com.shuo.krpc.protocol.*;
 import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.NetClient;
-import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.NetClientOptions;
 
-import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Vertx TCP Client
@@ -21,11 +24,32 @@ import java.util.concurrent.ExecutionException;
  * This class represents a TCP client for sending requests using Vertx.
  * It allows sending RPC requests to a remote server over a TCP connection
  * and processes the response.
- * 
+ * <p>
+ * A single long-lived Vert.x instance and {@link NetClient} are shared by all calls. Each
+ * provider address gets a {@link TcpConnectionPool} of persistent connections, and concurrent
+ * requests are multiplexed over them and correlated by request ID.
+ *
  * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
  */
 public class VertxTcpClient {
 
+    private static final Vertx vertx = Vertx.vertx();
+
+    private static final NetClient netClient = vertx.createNetClient(new NetClientOptions()
+            .setTcpNoDelay(true)
+            .setTcpKeepAlive(true));
+
+    /**
+     * Connection pools keyed by provider address (host:port)
+     */
+    private static final Map<String, TcpConnectionPool> connectionPoolMap =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Request ID generator, unique within this client so responses can be correlated
+     */
+    private static final AtomicLong requestIdGenerator = new AtomicLong(0);
+
     /**
      * Sends a request to the specified service.
      *
@@ -37,55 +61,123 @@ public class VertxTcpClient {
      */
     public static RpcResponse doRequest(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo)
             throws InterruptedException, ExecutionException {
-        // Send TCP request
-        Vertx vertx = Vertx.vertx();
-        NetClient netClient = vertx.createNetClient();
-        CompletableFuture<RpcResponse> responseFuture = new CompletableFuture<>();
-        netClient.connect(serviceMetaInfo.getServicePort(), serviceMetaInfo.getServiceHost(),
-                result -> {
-            if (!result.succeeded()) {
-                System.err.println("Failed to connect to TCP server");
-                return;
-            }
-            NetSocket socket = result.result();
-            // Send data
-            // Construct the message
-            ProtocolMessage<RpcRequest> protocolMessage = new ProtocolMessage<>();
-            ProtocolMessage.Header header = new ProtocolMessage.Header();
-            header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
-            header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
-            header.setSerializer((byte) ProtocolMessageSerializerEnum
-                    .getEnumByValue(RpcApplication.getRpcConfig().getSerializer()).getKey());
-            header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
-            // Generate global request ID
-            header.setRequestId(IdUtil.getSnowflakeNextId());
-            protocolMessage.setHeader(header);
-            protocolMessage.setBody(rpcRequest);
-
-            // Encode the request
-            try {
-                Buffer encodeBuffer = ProtocolMessageEncoder.encode(protocolMessage);
-                socket.write(encodeBuffer);
-            } catch (IOException e) {
-                throw new RuntimeException("Protocol message encoding error");
-            }
-
-            // Receive response
-            TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(buffer -> {
-                try {
-                    ProtocolMessage<RpcResponse> rpcResponseProtocolMessage =
-                            (ProtocolMessage<RpcResponse>) ProtocolMessageDecoder.decode(buffer);
-                    responseFuture.complete(rpcResponseProtocolMessage.getBody());
-                } catch (IOException e) {
-                    throw new RuntimeException("Protocol message decoding error");
-                }
-            });
-            socket.handler(bufferHandlerWrapper);
-        });
-
-        RpcResponse rpcResponse = responseFuture.get();
-        // Close the connection
-        netClient.close();
-        return rpcResponse;
+        return doRequestAsync(rpcRequest, serviceMetaInfo).get();
+    }
+
+    /**
+     * Sends a request to the specified service with a timeout.
+     *
+     * @param rpcRequest      The RPC request to be sent.
+     * @param serviceMetaInfo Metadata about the service to which the request should be sent.
+     * @param timeoutMillis   The time to wait for the response in milliseconds, or 0 to wait
+     *                        without limit.
+     * @return The response received from the remote service.
+     * @throws InterruptedException If the thread is interrupted while waiting for the response.
+     * @throws ExecutionException   If an error occurs during the execution of the request,
+     *                              including a {@link java.util.concurrent.TimeoutException}.
+     */
+    public static RpcResponse doRequest(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo,
+                                        long timeoutMillis)
+            throws InterruptedException, ExecutionException {
+        return doRequestAsync(rpcRequest, serviceMetaInfo, timeoutMillis).get();
+    }
+
+    /**
+     * Sends a request to the specified service without blocking the calling thread.
+     * <p>
+     * The returned future is completed from the Vert.x event loop when the correlated response
+     * arrives, or exceptionally if the connection or the write fails.
+     *
+     * @param rpcRequest      The RPC request to be sent.
+     * @param serviceMetaInfo Metadata about the service to which the request should be sent.
+     * @return A future of the response received from the remote service.
+     */
+    public static CompletableFuture<RpcResponse> doRequestAsync(RpcRequest rpcRequest,
+                                                                ServiceMetaInfo serviceMetaInfo) {
+        return doRequestAsync(rpcRequest, serviceMetaInfo,
+                RpcApplication.getRpcConfig().getTimeout());
+    }
+
+    /**
+     * Sends a request to the specified service without blocking the calling thread, failing it
+     * with a {@link java.util.concurrent.TimeoutException} if no response arrives in time.
+     *
+     * @param rpcRequest      The RPC request to be sent.
+     * @param serviceMetaInfo Metadata about the service to which the request should be sent.
+     * @param timeoutMillis   The time to wait for the response in milliseconds, or 0 to wait
+     *                        without limit.
+     * @return A future of the response received from the remote service.
+     */
+    public static CompletableFuture<RpcResponse> doRequestAsync(RpcRequest rpcRequest,
+                                                                ServiceMetaInfo serviceMetaInfo,
+                                                                long timeoutMillis) {
+        RpcConfig rpcConfig = RpcApplication.getRpcConfig();
+        TcpConnectionPool connectionPool = getConnectionPool(serviceMetaInfo, rpcConfig);
+
+        // Construct the message
+        ProtocolMessage<RpcRequest> protocolMessage = new ProtocolMessage<>();
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum
+                .getEnumByValue(rpcConfig.getSerializer()).getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
+        header.setRequestId(requestIdGenerator.incrementAndGet());
+        protocolMessage.setHeader(header);
+        protocolMessage.setBody(rpcRequest);
+
+        // Send over a pooled connection, completing with the correlated response, and track the
+        // call and its latency for load-aware balancers until it completes either way
+        EndpointStats endpointStats = EndpointStats.of(serviceMetaInfo);
+        endpointStats.onSend();
+        long startNanos = System.nanoTime();
+        CompletableFuture<TcpConnection> connectionFuture = connectionPool.acquire();
+        if (timeoutMillis > 0 && !connectionFuture.isDone()) {
+            // Connecting counts against the deadline of the call
+            connectionFuture = TcpConnection.withTimeout(connectionFuture, timeoutMillis,
+                    "Request " + header.getRequestId() + " timed out after " + timeoutMillis
+                            + " ms while connecting");
+        }
+        return connectionFuture
+                .thenCompose(connection -> connection.send(protocolMessage,
+                        remainingMillis(startNanos, timeoutMillis)))
+                .whenComplete((rpcResponse, throwable) -> {
+                    if (throwable == null) {
+                        endpointStats.onComplete(System.nanoTime() - startNanos);
+                    } else {
+                        endpointStats.onFailure();
+                    }
+                });
+    }
+
+    /**
+     * Time left of a call's deadline once its connection is acquired.
+     *
+     * @param startNanos    The time the call started.
+     * @param timeoutMillis The timeout of the call in milliseconds, or 0 for no limit.
+     * @return The remaining time in milliseconds, at least 1, or 0 for no limit.
+     */
+    private static long remainingMillis(long startNanos, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return 0;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return Math.max(timeoutMillis - elapsedMillis, 1);
+    }
+
+    /**
+     * Closes all pooled connections.
+     */
+    public static void close() {
+        connectionPoolMap.values().forEach(TcpConnectionPool::close);
+        connectionPoolMap.clear();
+    }
+
+    private static TcpConnectionPool getConnectionPool(ServiceMetaInfo serviceMetaInfo,
+                                                       RpcConfig rpcConfig) {
+        String address = serviceMetaInfo.getServiceHost() + ":" + serviceMetaInfo.getServicePort();
+        return connectionPoolMap.computeIfAbsent(address, key -> new TcpConnectionPool(netClient,
+                serviceMetaInfo.getServiceHost(), serviceMetaInfo.getServicePort(),
+                rpcConfig.getConnectionPoolSize()));
     }
-}
\ No newline at end of file
+}
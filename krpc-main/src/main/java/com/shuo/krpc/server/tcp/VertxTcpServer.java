@@ -1,6 +1,10 @@
 package com.shuo.krpc.server.tcp;
 
+import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.config.RpcConfig;
 import com.shuo.krpc.server.Server;
+import com.shuo.krpc.server.dispatcher.Dispatcher;
+import com.shuo.krpc.server.dispatcher.DispatcherFactory;
 import io.vertx.core.Vertx;
 import io.vertx.core.net.NetServer;
 
@@ -27,8 +31,13 @@ public class VertxTcpServer implements Server {
         // Create a TCP server
         NetServer server = vertx.createNetServer();
 
+        // Prepare the dispatcher running service invocations
+        RpcConfig rpcConfig = RpcApplication.getRpcConfig();
+        Dispatcher dispatcher = DispatcherFactory.getInstance(rpcConfig.getDispatcher());
+        dispatcher.init(rpcConfig);
+
         // Set the connection handler
-        server.connectHandler(new TcpServerHandler());
+        server.connectHandler(new TcpServerHandler(dispatcher));
 
         // Start the TCP server and listen on the specified port
         server.listen(port, result -> {
@@ -1,8 +1,12 @@
 package com.shuo.krpc.fault.retry;
 
+import org.junit.Assert;
 import org.junit.Test;
 import com.shuo.krpc.model.RpcResponse;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RetryStrategyTest {
 
     RetryStrategy retryStrategy = new FixedIntervalRetryStrategy();
@@ -20,4 +24,20 @@ public class RetryStrategyTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void doRetryAsync() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<RpcResponse> responseFuture = retryStrategy.doRetryAsync(() -> {
+            if (attempts.incrementAndGet() < 2) {
+                return CompletableFuture.failedFuture(
+                        new RuntimeException("Simulated retry failure"));
+            }
+            return CompletableFuture.completedFuture(new RpcResponse());
+        });
+        // The caller is not blocked while the retry is pending
+        Assert.assertFalse(responseFuture.isDone());
+        Assert.assertNotNull(responseFuture.get());
+        Assert.assertEquals(2, attempts.get());
+    }
 }
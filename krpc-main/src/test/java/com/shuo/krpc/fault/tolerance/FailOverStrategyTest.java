@@ -0,0 +1,127 @@
+package com.shuo.krpc.fault.tolerance;
+
+import com.shuo.krpc.RpcApplication;
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.server.tcp.VertxTcpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class FailOverStrategyTest {
+
+    private static final int PORT = 18082;
+
+    private final FailOverStrategy failOverStrategy = new FailOverStrategy();
+
+    public static class EchoServiceImpl {
+        public String echo(String message) {
+            return message;
+        }
+    }
+
+    @BeforeClass
+    public static void startServer() throws InterruptedException {
+        LocalRegistry.register("failOverEchoService", EchoServiceImpl.class);
+        new VertxTcpServer().doStart(PORT);
+        // Wait for the server to bind
+        Thread.sleep(1000L);
+    }
+
+    @After
+    public void resetAttempts() {
+        RpcApplication.getRpcConfig().setFailOverAttempts(2);
+    }
+
+    @Test
+    public void testFailsOverToAnotherProvider() throws Exception {
+        ServiceMetaInfo failed = createServiceMetaInfo(freePort());
+        ServiceMetaInfo live = createServiceMetaInfo(PORT);
+        Map<String, Object> context = createContext(Arrays.asList(failed, live), failed);
+
+        Assert.assertEquals("hello",
+                failOverStrategy.doTolerance(context, new RuntimeException("refused")).getData());
+        Assert.assertEquals(1, getFailedNodes(context).size());
+    }
+
+    @Test
+    public void testAsyncFailOverSkipsFailedProviders() throws Exception {
+        ServiceMetaInfo failed = createServiceMetaInfo(freePort());
+        ServiceMetaInfo down = createServiceMetaInfo(freePort());
+        ServiceMetaInfo live = createServiceMetaInfo(PORT);
+        Map<String, Object> context = createContext(Arrays.asList(failed, down, live), failed);
+
+        Assert.assertEquals("hello", failOverStrategy.doToleranceAsync(context,
+                new RuntimeException("refused")).get(5, TimeUnit.SECONDS).getData());
+        Assert.assertFalse(getFailedNodes(context).contains(live));
+    }
+
+    @Test
+    public void testAttemptBudgetIsRespected() throws Exception {
+        RpcApplication.getRpcConfig().setFailOverAttempts(1);
+        ServiceMetaInfo failed = createServiceMetaInfo(freePort());
+        Map<String, Object> context = createContext(Arrays.asList(failed,
+                createServiceMetaInfo(freePort()), createServiceMetaInfo(freePort())), failed);
+
+        try {
+            failOverStrategy.doTolerance(context, new RuntimeException("refused"));
+            Assert.fail("Expected the call to fail once the budget is spent");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Service fault", e.getMessage());
+        }
+        // The failed provider and the single other one tried
+        Assert.assertEquals(2, getFailedNodes(context).size());
+    }
+
+    private Map<String, Object> createContext(List<ServiceMetaInfo> serviceMetaInfoList,
+                                              ServiceMetaInfo failed) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .serviceName("failOverEchoService")
+                .methodName("echo")
+                .parameterTypes(new Class[]{String.class})
+                .args(new Object[]{"hello"})
+                .build();
+        Set<ServiceMetaInfo> failedNodes = new HashSet<>();
+        failedNodes.add(failed);
+        Map<String, Object> context = new HashMap<>();
+        context.put(ToleranceContextKeys.RPC_REQUEST, rpcRequest);
+        context.put(ToleranceContextKeys.SERVICE_NODES, serviceMetaInfoList);
+        context.put(ToleranceContextKeys.FAILED_NODES, failedNodes);
+        context.put(ToleranceContextKeys.TIMEOUT, 2000L);
+        return context;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<ServiceMetaInfo> getFailedNodes(Map<String, Object> context) {
+        return (Set<ServiceMetaInfo>) context.get(ToleranceContextKeys.FAILED_NODES);
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("failOverEchoService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+
+    /**
+     * A port nothing listens on
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
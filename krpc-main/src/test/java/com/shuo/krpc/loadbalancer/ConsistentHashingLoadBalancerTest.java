@@ -0,0 +1,108 @@
+package com.shuo.krpc.loadbalancer;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.ServiceSnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConsistentHashingLoadBalancerTest {
+
+    private static final int KEY_COUNT = 10_000;
+
+    @Test
+    public void sameKeySelectsSameProvider() {
+        LoadBalancer loadBalancer = new ConsistentHashingLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = createServiceMetaInfoList(5);
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> requestParams = Collections.singletonMap("methodName", "m" + i);
+            Assert.assertSame(loadBalancer.select(requestParams, serviceMetaInfoList),
+                    loadBalancer.select(requestParams, new ArrayList<>(serviceMetaInfoList)));
+        }
+    }
+
+    @Test
+    public void requestKeyIsHashedLikeVirtualNodes() {
+        LoadBalancer loadBalancer = new ConsistentHashingLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = createServiceMetaInfoList(5);
+        ConsistentHashRing ring = ConsistentHashRing.build(serviceMetaInfoList, 100, null);
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> requestParams = Collections.singletonMap("methodName", "m" + i);
+            Assert.assertSame(ring.select(MurmurHash.hash32(requestParams.toString())),
+                    loadBalancer.select(requestParams, serviceMetaInfoList));
+        }
+    }
+
+    @Test
+    public void keysAreSpreadAcrossProviders() {
+        LoadBalancer loadBalancer = new ConsistentHashingLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = createServiceMetaInfoList(4);
+        Map<ServiceMetaInfo, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            counts.merge(loadBalancer.select(Collections.singletonMap("methodName", "m" + i),
+                    serviceMetaInfoList), 1, Integer::sum);
+        }
+        Assert.assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            Assert.assertTrue("Unbalanced share: " + count, count > KEY_COUNT / 8);
+        }
+    }
+
+    @Test
+    public void removingProviderOnlyMovesItsKeys() {
+        LoadBalancer loadBalancer = new ConsistentHashingLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = createServiceMetaInfoList(5);
+        List<ServiceMetaInfo> before = new ArrayList<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            before.add(loadBalancer.select(Collections.singletonMap("methodName", "m" + i),
+                    serviceMetaInfoList));
+        }
+
+        ServiceMetaInfo removed = serviceMetaInfoList.get(2);
+        List<ServiceMetaInfo> remaining = new ArrayList<>(serviceMetaInfoList);
+        remaining.remove(removed);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            ServiceMetaInfo selected = loadBalancer.select(
+                    Collections.singletonMap("methodName", "m" + i), remaining);
+            Assert.assertNotSame(removed, selected);
+            if (before.get(i) != removed) {
+                Assert.assertSame(before.get(i), selected);
+            }
+        }
+    }
+
+    @Test
+    public void newSnapshotVersionRebuildsRing() {
+        LoadBalancer loadBalancer = new ConsistentHashingLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = createServiceMetaInfoList(5);
+        ServiceSnapshot snapshot = ServiceSnapshot.of(serviceMetaInfoList);
+        for (int i = 0; i < 100; i++) {
+            loadBalancer.select(Collections.singletonMap("methodName", "m" + i), snapshot);
+        }
+
+        ServiceMetaInfo removed = serviceMetaInfoList.remove(0);
+        ServiceSnapshot nextSnapshot = ServiceSnapshot.of(serviceMetaInfoList);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNotSame(removed, loadBalancer.select(
+                    Collections.singletonMap("methodName", "m" + i), nextSnapshot));
+        }
+    }
+
+    private List<ServiceMetaInfo> createServiceMetaInfoList(int size) {
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceName("myService");
+            serviceMetaInfo.setServiceHost("10.0.0." + (i + 1));
+            serviceMetaInfo.setServicePort(8080);
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+        return serviceMetaInfoList;
+    }
+}
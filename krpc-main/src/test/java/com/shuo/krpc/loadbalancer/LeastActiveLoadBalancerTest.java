@@ -0,0 +1,59 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class LeastActiveLoadBalancerTest {
+
+    private final LoadBalancer loadBalancer = new LeastActiveLoadBalancer();
+
+    @Test
+    public void testSelectsFewestOutstanding() {
+        ServiceMetaInfo busy = createServiceMetaInfo("10.0.12.1", 8080);
+        ServiceMetaInfo idle = createServiceMetaInfo("10.0.12.2", 8080);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(busy, idle);
+
+        EndpointStats busyStats = EndpointStats.of(busy);
+        busyStats.onSend();
+        busyStats.onSend();
+        try {
+            for (int i = 0; i < 20; i++) {
+                Assert.assertSame(idle, loadBalancer.select(Collections.emptyMap(),
+                        serviceMetaInfoList));
+            }
+        } finally {
+            busyStats.onComplete(0);
+            busyStats.onComplete(0);
+        }
+        Assert.assertEquals(0, busyStats.getActiveCount());
+    }
+
+    @Test
+    public void testBreaksTiesAtRandom() {
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(
+                createServiceMetaInfo("10.0.12.3", 8080),
+                createServiceMetaInfo("10.0.12.4", 8080),
+                createServiceMetaInfo("10.0.12.5", 8080));
+
+        Set<ServiceMetaInfo> selected = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            selected.add(loadBalancer.select(Collections.emptyMap(), serviceMetaInfoList));
+        }
+        Assert.assertEquals(3, selected.size());
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceHost, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceHost(serviceHost);
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
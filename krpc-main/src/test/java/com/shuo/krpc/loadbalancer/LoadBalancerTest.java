@@ -16,7 +16,10 @@ public class LoadBalancerTest {
         return Arrays.asList(new Object[][]{
                 {new ConsistentHashingLoadBalancer(), "apple"},
                 {new RandomLoadBalancer(), "banana"},
-                {new RoundRobinLoadBalancer(), "cherry"}
+                {new RoundRobinLoadBalancer(), "cherry"},
+                {new LeastActiveLoadBalancer(), "durian"},
+                {new PeakEwmaLoadBalancer(), "elderberry"},
+                {new WeightedRoundRobinLoadBalancer(), "fig"}
         });
     }
 
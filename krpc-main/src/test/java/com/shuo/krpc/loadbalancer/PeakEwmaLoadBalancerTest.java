@@ -0,0 +1,117 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PeakEwmaLoadBalancerTest {
+
+    private final LoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+
+    @Test
+    public void testPrefersFasterProvider() {
+        ServiceMetaInfo slow = createServiceMetaInfo("10.0.13.1", 8080);
+        ServiceMetaInfo fast = createServiceMetaInfo("10.0.13.2", 8080);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(slow, fast);
+        record(EndpointStats.of(slow), TimeUnit.MILLISECONDS.toNanos(200));
+        record(EndpointStats.of(fast), TimeUnit.MILLISECONDS.toNanos(2));
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(fast, loadBalancer.select(Collections.emptyMap(),
+                    serviceMetaInfoList));
+        }
+    }
+
+    @Test
+    public void testPeakReplacesAverage() {
+        EndpointStats endpointStats = EndpointStats.of(createServiceMetaInfo("10.0.13.3", 8080));
+        record(endpointStats, TimeUnit.MILLISECONDS.toNanos(1));
+        record(endpointStats, TimeUnit.MILLISECONDS.toNanos(100));
+
+        // A slower sample is taken at once rather than averaged in
+        Assert.assertTrue(endpointStats.getLatencyEwma() > TimeUnit.MILLISECONDS.toNanos(99));
+        // Faster samples lower the average gradually
+        record(endpointStats, TimeUnit.MILLISECONDS.toNanos(1));
+        double latencyEwma = endpointStats.getLatencyEwma();
+        Assert.assertTrue(latencyEwma > TimeUnit.MILLISECONDS.toNanos(1));
+        // (the average drifts towards the penalty while it is read, so allow a little above)
+        Assert.assertTrue(latencyEwma < TimeUnit.MILLISECONDS.toNanos(101));
+    }
+
+    @Test
+    public void testScoreCountsOutstandingCalls() {
+        EndpointStats endpointStats = EndpointStats.of(createServiceMetaInfo("10.0.13.4", 8080));
+        record(endpointStats, TimeUnit.MILLISECONDS.toNanos(10));
+        double idleScore = endpointStats.getScore();
+
+        endpointStats.onSend();
+        endpointStats.onSend();
+        Assert.assertTrue(endpointStats.getScore() > 2 * idleScore);
+        endpointStats.onComplete(0);
+        endpointStats.onComplete(0);
+    }
+
+    @Test
+    public void testNewProviderIsNotFlooded() {
+        ServiceMetaInfo started = createServiceMetaInfo("10.0.13.5", 8080);
+        ServiceMetaInfo warm = createServiceMetaInfo("10.0.13.6", 8080);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(started, warm);
+        record(EndpointStats.of(warm), TimeUnit.MILLISECONDS.toNanos(10));
+
+        // Until its first response, a new provider is scored at the penalty latency
+        EndpointStats startedStats = EndpointStats.of(started);
+        Assert.assertEquals(EndpointStats.PENALTY_NANOS, startedStats.getLatencyEwma(), 0);
+        startedStats.onSend();
+        Assert.assertSame(warm, loadBalancer.select(Collections.emptyMap(), serviceMetaInfoList));
+
+        // Its first response replaces the penalty
+        startedStats.onComplete(TimeUnit.MILLISECONDS.toNanos(2));
+        Assert.assertTrue(startedStats.getLatencyEwma() < TimeUnit.MILLISECONDS.toNanos(3));
+    }
+
+    @Test
+    public void testFailureRecordsPenalty() {
+        EndpointStats endpointStats = EndpointStats.of(createServiceMetaInfo("10.0.13.7", 8080));
+        record(endpointStats, TimeUnit.MILLISECONDS.toNanos(2));
+
+        // A refused connection fails fast but must not make the provider look fast
+        endpointStats.onSend();
+        endpointStats.onFailure();
+        Assert.assertTrue(endpointStats.getLatencyEwma() >= EndpointStats.PENALTY_NANOS - 1);
+        Assert.assertEquals(0, endpointStats.getActiveCount());
+    }
+
+    @Test
+    public void testIdleStatsAreDropped() {
+        ServiceMetaInfo idle = createServiceMetaInfo("10.0.13.8", 8080);
+        ServiceMetaInfo busy = createServiceMetaInfo("10.0.13.9", 8080);
+        EndpointStats idleStats = EndpointStats.of(idle);
+        record(idleStats, TimeUnit.MILLISECONDS.toNanos(2));
+        EndpointStats busyStats = EndpointStats.of(busy);
+        busyStats.onSend();
+
+        EndpointStats.evictIdle(System.nanoTime() + EndpointStats.EXPIRE_TIME_NANOS + 1);
+        Assert.assertNotSame(idleStats, EndpointStats.of(idle));
+        // Statistics with calls in flight are kept
+        Assert.assertSame(busyStats, EndpointStats.of(busy));
+        busyStats.onComplete(0);
+    }
+
+    private void record(EndpointStats endpointStats, long latencyNanos) {
+        endpointStats.onSend();
+        endpointStats.onComplete(latencyNanos);
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceHost, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceHost(serviceHost);
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
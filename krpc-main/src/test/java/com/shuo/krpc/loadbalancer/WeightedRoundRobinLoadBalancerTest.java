@@ -0,0 +1,76 @@
+package com.shuo.krpc.loadbalancer;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class WeightedRoundRobinLoadBalancerTest {
+
+    @Test
+    public void testSmoothSequence() {
+        LoadBalancer loadBalancer = new WeightedRoundRobinLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(
+                createServiceMetaInfo("a", 5), createServiceMetaInfo("b", 1),
+                createServiceMetaInfo("c", 1));
+
+        // The sequence Nginx produces for weights 5, 1, 1
+        Assert.assertEquals("aabacaa", selectHosts(loadBalancer, serviceMetaInfoList, 7));
+    }
+
+    @Test
+    public void testStateSurvivesRefresh() {
+        LoadBalancer loadBalancer = new WeightedRoundRobinLoadBalancer();
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(
+                createServiceMetaInfo("a", 5), createServiceMetaInfo("b", 1),
+                createServiceMetaInfo("c", 1));
+        String head = selectHosts(loadBalancer, serviceMetaInfoList, 3);
+
+        // A refreshed list holds new objects for the same providers
+        List<ServiceMetaInfo> refreshedList = Arrays.asList(
+                createServiceMetaInfo("a", 5), createServiceMetaInfo("b", 1),
+                createServiceMetaInfo("c", 1));
+        Assert.assertEquals("aabacaa", head + selectHosts(loadBalancer, refreshedList, 4));
+    }
+
+    @Test
+    public void testWarmupRamp() {
+        long now = System.currentTimeMillis();
+        ServiceMetaInfo serviceMetaInfo = createServiceMetaInfo("a", 100);
+        serviceMetaInfo.setWarmup(10_000L);
+        serviceMetaInfo.setRegisterTime(now - 2_500);
+        Assert.assertEquals(25, WeightedRoundRobinSchedule.getEffectiveWeight(serviceMetaInfo,
+                now));
+
+        serviceMetaInfo.setRegisterTime(now);
+        Assert.assertEquals(1, WeightedRoundRobinSchedule.getEffectiveWeight(serviceMetaInfo,
+                now));
+
+        serviceMetaInfo.setRegisterTime(now - 20_000);
+        Assert.assertEquals(100, WeightedRoundRobinSchedule.getEffectiveWeight(serviceMetaInfo,
+                now));
+    }
+
+    private String selectHosts(LoadBalancer loadBalancer, List<ServiceMetaInfo> serviceMetaInfoList,
+                               int count) {
+        List<String> hosts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hosts.add(loadBalancer.select(Collections.emptyMap(), serviceMetaInfoList)
+                    .getServiceHost());
+        }
+        return String.join("", hosts);
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceHost, int weight) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceHost(serviceHost);
+        serviceMetaInfo.setServicePort(8080);
+        serviceMetaInfo.setWeight(weight);
+        return serviceMetaInfo;
+    }
+}
@@ -3,6 +3,7 @@ package com.shuo.krpc.protocol;
 import cn.hutool.core.util.IdUtil;
 import com.shuo.krpc.constant.RpcConstant;
 import com.shuo.krpc.model.RpcRequest;
+import io.netty.buffer.ByteBuf;
 import io.vertx.core.buffer.Buffer;
 import org.junit.Assert;
 import org.junit.Test;
@@ -76,4 +77,39 @@ public class ProtocolMessageTest {
         Assert.assertEquals(protocolMessage.getHeader().getRequestId(), message.getHeader().getRequestId());
         Assert.assertEquals(protocolMessage.getBody(), message.getBody());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPooledEncodeWithEverySerializer() throws IOException {
+        for (ProtocolMessageSerializerEnum serializerEnum : ProtocolMessageSerializerEnum.values()) {
+            ProtocolMessage<RpcRequest> protocolMessage = new ProtocolMessage<>();
+            ProtocolMessage.Header header = new ProtocolMessage.Header();
+            header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+            header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+            header.setSerializer((byte) serializerEnum.getKey());
+            header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
+            header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+            header.setRequestId(IdUtil.getSnowflakeNextId());
+            RpcRequest rpcRequest = new RpcRequest();
+            rpcRequest.setServiceName("myService");
+            rpcRequest.setMethodName("myMethod");
+            rpcRequest.setServiceVersion(RpcConstant.DEFAULT_SERVICE_VERSION);
+            rpcRequest.setParameterTypes(new Class[]{String.class});
+            rpcRequest.setArgs(new Object[]{"aaa"});
+            protocolMessage.setHeader(header);
+            protocolMessage.setBody(rpcRequest);
+
+            ByteBuf byteBuf = ProtocolMessageEncoder.encodePooled(protocolMessage);
+            try {
+                // The body length is back-patched after the body has been streamed
+                Assert.assertEquals(byteBuf.readableBytes() - ProtocolConstant.MESSAGE_HEADER_LENGTH,
+                        byteBuf.getInt(13));
+                ProtocolMessage<?> message = ProtocolMessageDecoder.decode(Buffer.buffer(byteBuf));
+                Assert.assertEquals(serializerEnum.getValue(), rpcRequest,
+                        message.getBody());
+            } finally {
+                byteBuf.release();
+            }
+            Assert.assertEquals(0, byteBuf.refCnt());
+        }
+    }
+}
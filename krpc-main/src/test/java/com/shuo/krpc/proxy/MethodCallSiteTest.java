@@ -0,0 +1,167 @@
+package com.shuo.krpc.proxy;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.fault.retry.NoRetryStrategy;
+import com.shuo.krpc.fault.tolerance.FailFastStrategy;
+import com.shuo.krpc.loadbalancer.RoundRobinLoadBalancer;
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.registry.DiscoveryFrontend;
+import com.shuo.krpc.registry.Registry;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class MethodCallSiteTest {
+
+    /**
+     * Upper bound of bytes allocated per call: the argument array, the request and the call
+     * state, plus some slack for JIT-dependent escape analysis
+     */
+    private static final long MAX_BYTES_PER_CALL = 128;
+
+    /**
+     * Transport stand-in answering every request with the same response. It keeps the last
+     * request, so that, as on the wire, the request escapes the call
+     */
+    private static final RpcTransport FIXED_TRANSPORT = new RpcTransport() {
+
+        private final RpcResponse rpcResponse = new RpcResponse();
+
+        private volatile RpcRequest lastRequest;
+
+        {
+            rpcResponse.setData("hello");
+        }
+
+        @Override
+        public RpcResponse send(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo,
+                                long timeoutMillis) {
+            lastRequest = rpcRequest;
+            return rpcResponse;
+        }
+
+        @Override
+        public CompletableFuture<RpcResponse> sendAsync(RpcRequest rpcRequest,
+                                                        ServiceMetaInfo serviceMetaInfo,
+                                                        long timeoutMillis) {
+            lastRequest = rpcRequest;
+            return CompletableFuture.completedFuture(rpcResponse);
+        }
+    };
+
+    public interface GreetingService {
+        String greet(String name);
+    }
+
+    /**
+     * Registry stand-in returning a fixed provider list
+     */
+    private static class FixedRegistry implements Registry {
+
+        private final List<ServiceMetaInfo> serviceMetaInfoList;
+
+        FixedRegistry(List<ServiceMetaInfo> serviceMetaInfoList) {
+            this.serviceMetaInfoList = serviceMetaInfoList;
+        }
+
+        @Override
+        public void init(RegistryConfig registryConfig) {
+        }
+
+        @Override
+        public void register(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public void unregister(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+            return serviceMetaInfoList;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void sendHeartBeat() {
+        }
+
+        @Override
+        public void watch(String serviceNodeKey) {
+        }
+    }
+
+    @Test
+    public void resolvesCallMetadataOnce() throws Exception {
+        MethodCallSite callSite = createCallSite();
+        Assert.assertEquals(GreetingService.class.getName() + ":1.0", callSite.getServiceKey());
+        RpcRequest rpcRequest = callSite.newRequest(new Object[]{"krpc"});
+        Assert.assertEquals(GreetingService.class.getName(), rpcRequest.getServiceName());
+        Assert.assertEquals("greet", rpcRequest.getMethodName());
+        Assert.assertArrayEquals(new Class[]{String.class}, rpcRequest.getParameterTypes());
+    }
+
+    @Test
+    public void steadyStateProxyCallAllocatesOnlyItsState() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean =
+                (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+
+        GreetingService greetingService = (GreetingService) Proxy.newProxyInstance(
+                GreetingService.class.getClassLoader(), new Class[]{GreetingService.class},
+                new ServiceProxy(method -> createCallSite(method)));
+        int iterations = 100_000;
+        // Warm up so that the measured loop runs compiled code
+        long checksum = runCalls(greetingService, iterations);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+        checksum += runCalls(greetingService, iterations);
+        long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertTrue(checksum != 0);
+        long bytesPerCall = allocated / iterations;
+        Assert.assertTrue("Allocated " + bytesPerCall + " bytes per call",
+                bytesPerCall <= MAX_BYTES_PER_CALL);
+    }
+
+    private long runCalls(GreetingService greetingService, int iterations) {
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += greetingService.greet("krpc").length();
+        }
+        return checksum;
+    }
+
+    private MethodCallSite createCallSite() throws NoSuchMethodException {
+        return createCallSite(GreetingService.class.getMethod("greet", String.class));
+    }
+
+    private MethodCallSite createCallSite(Method method) {
+        ServiceMetaInfo first = new ServiceMetaInfo();
+        first.setServiceHost("localhost");
+        first.setServicePort(8080);
+        ServiceMetaInfo second = new ServiceMetaInfo();
+        second.setServiceHost("localhost");
+        second.setServicePort(8081);
+        return new MethodCallSite(method, 1000,
+                new DiscoveryFrontend(new FixedRegistry(Arrays.asList(first, second)),
+                        new RegistryConfig()), new RoundRobinLoadBalancer(),
+                new NoRetryStrategy(), new FailFastStrategy(), FIXED_TRANSPORT);
+    }
+}
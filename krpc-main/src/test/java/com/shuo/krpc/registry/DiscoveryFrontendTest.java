@@ -0,0 +1,271 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+public class DiscoveryFrontendTest {
+
+    private static final String SERVICE_KEY = "myService:1.0";
+
+    /**
+     * Registry stand-in that counts lookups and returns whatever list it is given
+     */
+    private static class CountingRegistry implements Registry {
+
+        private final AtomicInteger lookupCount = new AtomicInteger();
+
+        private volatile List<ServiceMetaInfo> serviceMetaInfoList;
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        private volatile BiConsumer<String, List<ServiceMetaInfo>> listener;
+
+        @Override
+        public void init(RegistryConfig registryConfig) {
+        }
+
+        @Override
+        public void register(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public void unregister(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+            lookupCount.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return serviceMetaInfoList;
+        }
+
+        @Override
+        public void setServiceChangeListener(
+                BiConsumer<String, List<ServiceMetaInfo>> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void sendHeartBeat() {
+        }
+
+        @Override
+        public void watch(String serviceNodeKey) {
+        }
+    }
+
+    private final CountingRegistry registry = new CountingRegistry();
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final DiscoveryFrontend discoveryFrontend;
+
+    public DiscoveryFrontendTest() {
+        RegistryConfig registryConfig = new RegistryConfig();
+        registryConfig.setDiscoveryCacheTtl(1000L);
+        registryConfig.setDiscoveryRefreshAhead(200L);
+        registryConfig.setDiscoveryNegativeTtl(100L);
+        // Background refreshes run inline so the test can observe them
+        discoveryFrontend = new DiscoveryFrontend(registry, registryConfig, clock::get,
+                Runnable::run);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        registry.serviceMetaInfoList = providers(1234);
+        registry.gate = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<ServiceMetaInfo>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() ->
+                        discoveryFrontend.serviceDiscovery(SERVICE_KEY)));
+            }
+            // Let every caller reach the front-end before the single lookup returns
+            Thread.sleep(200);
+            registry.gate.countDown();
+            for (Future<List<ServiceMetaInfo>> future : futures) {
+                Assert.assertEquals(1, future.get(5, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(1, registry.lookupCount.get());
+    }
+
+    @Test
+    public void testAsyncDiscoveryDoesNotWaitForRegistry() throws Exception {
+        registry.serviceMetaInfoList = providers(1234);
+        registry.gate = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            DiscoveryFrontend asyncFrontend = new DiscoveryFrontend(registry,
+                    new RegistryConfig(), clock::get, executorService);
+            // The lookup of a cold key is started elsewhere while the registry is stuck
+            CompletableFuture<List<ServiceMetaInfo>> first =
+                    asyncFrontend.serviceDiscoveryAsync(SERVICE_KEY);
+            CompletableFuture<List<ServiceMetaInfo>> second =
+                    asyncFrontend.serviceDiscoveryAsync(SERVICE_KEY);
+            Assert.assertFalse(first.isDone());
+
+            registry.gate.countDown();
+            Assert.assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+            Assert.assertSame(first.get(), second.get(5, TimeUnit.SECONDS));
+            Assert.assertSame(first.get(), asyncFrontend.serviceDiscoveryAsync(SERVICE_KEY).get());
+        } finally {
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(1, registry.lookupCount.get());
+    }
+
+    @Test
+    public void testRefreshAheadServesCurrentList() {
+        List<ServiceMetaInfo> first = providers(1234);
+        registry.serviceMetaInfoList = first;
+        Assert.assertSame(first, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+
+        clock.addAndGet(500);
+        Assert.assertSame(first, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        Assert.assertEquals(1, registry.lookupCount.get());
+
+        // Inside the refresh-ahead window the current list is returned and refreshed behind it
+        List<ServiceMetaInfo> second = providers(1234, 1235);
+        registry.serviceMetaInfoList = second;
+        clock.addAndGet(400);
+        Assert.assertSame(first, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        Assert.assertEquals(2, registry.lookupCount.get());
+        Assert.assertSame(second, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+    }
+
+    @Test
+    public void testStaleListSurvivesRegistryFailure() {
+        List<ServiceMetaInfo> first = providers(1234);
+        registry.serviceMetaInfoList = first;
+        discoveryFrontend.serviceDiscovery(SERVICE_KEY);
+
+        registry.serviceMetaInfoList = null;
+        clock.addAndGet(5000);
+        Assert.assertSame(first, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        // The failed refresh backs off for the negative TTL
+        Assert.assertSame(first, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        Assert.assertEquals(2, registry.lookupCount.get());
+    }
+
+    @Test
+    public void testMissingServiceIsNegativelyCached() {
+        registry.serviceMetaInfoList = Collections.emptyList();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(discoveryFrontend.serviceDiscovery(SERVICE_KEY).isEmpty());
+        }
+        Assert.assertEquals(1, registry.lookupCount.get());
+
+        registry.serviceMetaInfoList = providers(1234);
+        clock.addAndGet(150);
+        Assert.assertEquals(1, discoveryFrontend.serviceDiscovery(SERVICE_KEY).size());
+        Assert.assertEquals(2, registry.lookupCount.get());
+    }
+
+    @Test
+    public void testPushedChangesReplaceCachedList() {
+        registry.serviceMetaInfoList = providers(1234, 1235);
+        Assert.assertEquals(2, discoveryFrontend.serviceDiscovery(SERVICE_KEY).size());
+
+        // A provider removed through the registry watch is dropped without waiting for the TTL
+        List<ServiceMetaInfo> pushed = ServiceSnapshot.of(providers(1235));
+        registry.listener.accept(SERVICE_KEY, pushed);
+        Assert.assertSame(pushed, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        Assert.assertEquals(1, registry.lookupCount.get());
+
+        // A service the registry no longer holds is looked up again on the next discovery
+        registry.serviceMetaInfoList = providers(1236);
+        registry.listener.accept(SERVICE_KEY, null);
+        discoveryFrontend.serviceDiscovery(SERVICE_KEY);
+        Assert.assertEquals(2, registry.lookupCount.get());
+        Assert.assertSame(registry.serviceMetaInfoList,
+                discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+    }
+
+    @Test
+    public void testLookupDoesNotOverwriteNewerPush() throws Exception {
+        registry.serviceMetaInfoList = ServiceSnapshot.of(providers(1234, 1235));
+        registry.gate = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<ServiceMetaInfo>> lookup = executorService.submit(() ->
+                    discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+            Thread.sleep(100);
+            // A change pushed while the lookup of the older list is in flight
+            List<ServiceMetaInfo> pushed = ServiceSnapshot.of(providers(1235));
+            registry.listener.accept(SERVICE_KEY, pushed);
+            registry.gate.countDown();
+
+            Assert.assertSame(pushed, lookup.get(5, TimeUnit.SECONDS));
+            Assert.assertSame(pushed, discoveryFrontend.serviceDiscovery(SERVICE_KEY));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSnapshotServesLastKnownProviders() throws Exception {
+        Path file = Files.createTempFile("discovery", ".json");
+        try {
+            registry.serviceMetaInfoList = providers(1234, 1235);
+            discoveryFrontend.enableSnapshot(file);
+            discoveryFrontend.serviceDiscovery(SERVICE_KEY);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (new DiscoverySnapshot(file).load().isEmpty()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // A new process loads the snapshot and serves it while the registry is down
+            CountingRegistry downRegistry = new CountingRegistry();
+            DiscoveryFrontend restarted = new DiscoveryFrontend(downRegistry,
+                    new RegistryConfig(), clock::get, Runnable::run);
+            restarted.enableSnapshot(file);
+            Assert.assertEquals(2, restarted.serviceDiscovery(SERVICE_KEY).size());
+            Assert.assertEquals(2, restarted.serviceDiscovery(SERVICE_KEY).size());
+            Assert.assertEquals(1, downRegistry.lookupCount.get());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private List<ServiceMetaInfo> providers(int... servicePorts) {
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+        for (int servicePort : servicePorts) {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceName("myService");
+            serviceMetaInfo.setServiceHost("localhost");
+            serviceMetaInfo.setServicePort(servicePort);
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+        return serviceMetaInfoList;
+    }
+}
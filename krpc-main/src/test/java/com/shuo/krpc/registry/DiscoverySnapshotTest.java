@@ -0,0 +1,58 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class DiscoverySnapshotTest {
+
+    private static final String SERVICE_KEY = "myService:1.0";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteThenLoad() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("snapshot/discovery.json");
+        DiscoverySnapshot discoverySnapshot = new DiscoverySnapshot(file);
+        ServiceMetaInfo serviceMetaInfo = createServiceMetaInfo(1234);
+        serviceMetaInfo.setWeight(200);
+        discoverySnapshot.write(Collections.singletonMap(SERVICE_KEY,
+                ServiceSnapshot.of(Arrays.asList(serviceMetaInfo, createServiceMetaInfo(1235)))));
+
+        Map<String, List<ServiceMetaInfo>> serviceMap = new DiscoverySnapshot(file).load();
+        Assert.assertEquals(2, serviceMap.get(SERVICE_KEY).size());
+        Assert.assertEquals(serviceMetaInfo, serviceMap.get(SERVICE_KEY).get(0));
+        // No temporary file is left next to the snapshot
+        try (var files = Files.list(file.getParent())) {
+            Assert.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testUnreadableFileIsIgnored() throws Exception {
+        Path file = temporaryFolder.newFile("discovery.json").toPath();
+        Files.writeString(file, "{\"myService:1.0\": [", StandardCharsets.UTF_8);
+        Assert.assertTrue(new DiscoverySnapshot(file).load().isEmpty());
+        Assert.assertTrue(new DiscoverySnapshot(file.resolveSibling("missing.json")).load()
+                .isEmpty());
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
@@ -0,0 +1,162 @@
+package com.shuo.krpc.registry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class EmbeddedRegistryTest {
+
+    private EmbeddedRegistryServer server;
+
+    private RegistryConfig registryConfig;
+
+    private EmbeddedRegistry provider;
+
+    private EmbeddedRegistry consumer;
+
+    @Before
+    public void init() {
+        server = new EmbeddedRegistryServer();
+        int port = server.start(0);
+        registryConfig = new RegistryConfig();
+        registryConfig.setRegistry(RegistryKeys.EMBEDDED);
+        registryConfig.setAddress("localhost:" + port);
+        provider = new EmbeddedRegistry();
+        provider.init(registryConfig);
+        consumer = new EmbeddedRegistry();
+        consumer.init(registryConfig);
+    }
+
+    @After
+    public void destroy() {
+        consumer.destroy();
+        provider.destroy();
+        server.close();
+    }
+
+    @Test
+    public void testRegisterAndDiscover() {
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            serviceMetaInfoList.add(createServiceMetaInfo("1.0", 10_000 + i));
+        }
+        serviceMetaInfoList.add(createServiceMetaInfo("2.0", 1234));
+        provider.registerAll(serviceMetaInfoList);
+
+        Assert.assertEquals(10_000, consumer.serviceDiscovery("myService:1.0").size());
+        Assert.assertEquals(1, consumer.serviceDiscovery("myService:2.0").size());
+        Assert.assertTrue(consumer.serviceDiscovery("otherService:1.0").isEmpty());
+    }
+
+    @Test
+    public void testChangesArePushedToConsumers() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        provider.register(createServiceMetaInfo("2.0", 1234));
+        Assert.assertEquals(1, consumer.serviceDiscovery("myService:1.0").size());
+        List<ServiceMetaInfo> other = consumer.serviceDiscovery("myService:2.0");
+
+        provider.register(createServiceMetaInfo("1.0", 1235));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 2);
+
+        provider.unregister(createServiceMetaInfo("1.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        Assert.assertEquals(Integer.valueOf(1235),
+                consumer.serviceDiscovery("myService:1.0").get(0).getServicePort());
+        Assert.assertSame(other, consumer.serviceDiscovery("myService:2.0"));
+    }
+
+    @Test
+    public void testAsyncRegisterAndDiscover() throws Exception {
+        provider.registerAllAsync(List.of(createServiceMetaInfo("1.0", 1234),
+                createServiceMetaInfo("1.0", 1235))).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, consumer.serviceDiscoveryAsync("myService:1.0")
+                .get(5, TimeUnit.SECONDS).size());
+
+        provider.unregisterAsync(createServiceMetaInfo("1.0", 1234)).get(5, TimeUnit.SECONDS);
+        awaitTrue(() -> consumer.serviceDiscoveryAsync("myService:1.0").join().size() == 1);
+    }
+
+    @Test
+    public void testLeaseGrantCompletedSynchronously() {
+        // A grant that has completed before its callbacks are attached
+        EmbeddedRegistry immediate = new EmbeddedRegistry() {
+            @Override
+            CompletableFuture<JsonNode> grantAsync() {
+                return CompletableFuture.completedFuture(super.grantAsync().join());
+            }
+        };
+        immediate.init(registryConfig);
+        try {
+            immediate.register(createServiceMetaInfo("1.0", 1234));
+            Assert.assertEquals(1, consumer.serviceDiscovery("myService:1.0").size());
+        } finally {
+            immediate.destroy();
+        }
+    }
+
+    @Test
+    public void testExpiredLeaseRemovesNodes() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        // A provider whose lease runs out before its first heartbeat
+        EmbeddedRegistry expiring = new EmbeddedRegistry();
+        expiring.leaseDuration = 500;
+        expiring.init(registryConfig);
+        try {
+            expiring.register(createServiceMetaInfo("1.0", 1235));
+            Assert.assertEquals(2, consumer.serviceDiscovery("myService:1.0").size());
+            awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        } finally {
+            expiring.destroy();
+        }
+    }
+
+    @Test
+    public void testServerStartedInProcess() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        RegistryConfig localConfig = new RegistryConfig();
+        localConfig.setRegistry(RegistryKeys.EMBEDDED);
+        localConfig.setAddress("localhost:" + port);
+        EmbeddedRegistry localProvider = new EmbeddedRegistry();
+        localProvider.init(localConfig);
+        EmbeddedRegistry localConsumer = new EmbeddedRegistry();
+        localConsumer.init(localConfig);
+        try {
+            localProvider.register(createServiceMetaInfo("1.0", 1234));
+            Assert.assertEquals(1, localConsumer.serviceDiscovery("myService:1.0").size());
+        } finally {
+            localConsumer.destroy();
+            localProvider.destroy();
+        }
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceVersion, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceVersion(serviceVersion);
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
@@ -0,0 +1,130 @@
+package com.shuo.krpc.registry;
+
+import cn.hutool.json.JSONUtil;
+import com.google.protobuf.ByteString;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.Client;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.Watch;
+import io.etcd.jetcd.api.Event;
+import io.etcd.jetcd.api.KeyValue;
+import io.etcd.jetcd.api.RangeResponse;
+import io.etcd.jetcd.api.ResponseHeader;
+import io.etcd.jetcd.kv.GetResponse;
+import io.etcd.jetcd.watch.WatchResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class EtcdRegistryTest {
+
+    private static final long LISTING_REVISION = 5;
+
+    /**
+     * Listener of the last watch started on the stub client
+     */
+    private Watch.Listener watchListener;
+
+    private EtcdRegistry registry;
+
+    @Before
+    public void init() {
+        registry = new EtcdRegistry(createClient());
+    }
+
+    @Test
+    public void testBatchRegistrationIsWatched() {
+        Assert.assertTrue(registry.serviceDiscovery("myService:1.0").isEmpty());
+
+        // A batched registerAll writes all of its nodes in one transaction, at one revision
+        io.etcd.jetcd.api.WatchResponse.Builder response = io.etcd.jetcd.api.WatchResponse
+                .newBuilder()
+                .setHeader(ResponseHeader.newBuilder().setRevision(LISTING_REVISION + 1));
+        for (int port = 1234; port < 1237; port++) {
+            response.addEvents(createPutEvent(createServiceMetaInfo(port), LISTING_REVISION + 1));
+        }
+        watchListener.onNext(new WatchResponse(response.build()));
+        Assert.assertEquals(3, registry.serviceDiscovery("myService:1.0").size());
+
+        // A replayed event of the same transaction is not applied again
+        watchListener.onNext(new WatchResponse(io.etcd.jetcd.api.WatchResponse.newBuilder()
+                .addEvents(createPutEvent(createServiceMetaInfo(1237), LISTING_REVISION + 1))
+                .build()));
+        Assert.assertEquals(3, registry.serviceDiscovery("myService:1.0").size());
+
+        // The next transaction is applied
+        String removedKey = getKey(createServiceMetaInfo(1234));
+        watchListener.onNext(new WatchResponse(io.etcd.jetcd.api.WatchResponse.newBuilder()
+                .addEvents(Event.newBuilder()
+                        .setType(Event.EventType.DELETE)
+                        .setKv(KeyValue.newBuilder()
+                                .setKey(ByteString.copyFromUtf8(removedKey))
+                                .setModRevision(LISTING_REVISION + 2)))
+                .build()));
+        List<ServiceMetaInfo> serviceMetaInfoList = registry.serviceDiscovery("myService:1.0");
+        Assert.assertEquals(2, serviceMetaInfoList.size());
+        Assert.assertEquals(Integer.valueOf(1235), serviceMetaInfoList.get(0).getServicePort());
+    }
+
+    private Event createPutEvent(ServiceMetaInfo serviceMetaInfo, long modRevision) {
+        return Event.newBuilder()
+                .setType(Event.EventType.PUT)
+                .setKv(KeyValue.newBuilder()
+                        .setKey(ByteString.copyFromUtf8(getKey(serviceMetaInfo)))
+                        .setValue(ByteString.copyFromUtf8(JSONUtil.toJsonStr(serviceMetaInfo)))
+                        .setModRevision(modRevision))
+                .build();
+    }
+
+    private String getKey(ServiceMetaInfo serviceMetaInfo) {
+        return "/rpc/" + serviceMetaInfo.getServiceNodeKey();
+    }
+
+    /**
+     * A client whose listings are empty at {@link #LISTING_REVISION} and whose watches are driven
+     * by the test through {@link #watchListener}.
+     */
+    private Client createClient() {
+        GetResponse emptyListing = new GetResponse(RangeResponse.newBuilder()
+                .setHeader(ResponseHeader.newBuilder().setRevision(LISTING_REVISION))
+                .build(), ByteSequence.EMPTY);
+        KV kv = stub(KV.class, (method, args) -> "get".equals(method)
+                ? CompletableFuture.completedFuture(emptyListing) : null);
+        Watch.Watcher watcher = stub(Watch.Watcher.class, (method, args) -> null);
+        Watch watch = stub(Watch.class, (method, args) -> {
+            if ("watch".equals(method)) {
+                watchListener = (Watch.Listener) args[2];
+                return watcher;
+            }
+            return null;
+        });
+        return stub(Client.class, (method, args) -> switch (method) {
+            case "getKVClient" -> kv;
+            case "getWatchClient" -> watch;
+            default -> null;
+        });
+    }
+
+    private interface StubHandler {
+        Object handle(String method, Object[] args);
+    }
+
+    private static <T> T stub(Class<T> type, StubHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.handle(method.getName(), args)));
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceVersion("1.0");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
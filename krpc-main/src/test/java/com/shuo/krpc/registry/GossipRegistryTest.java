@@ -0,0 +1,108 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+public class GossipRegistryTest {
+
+    private final List<GossipRegistry> members = new ArrayList<>();
+
+    @After
+    public void destroy() {
+        for (GossipRegistry member : members) {
+            try {
+                member.destroy();
+            } catch (Exception e) {
+                // Already closed
+            }
+        }
+    }
+
+    @Test
+    public void testMembersConverge() throws Exception {
+        GossipRegistry seed = start(null);
+        for (int i = 0; i < 3; i++) {
+            start(seed.getMemberId());
+        }
+
+        members.get(1).register(createServiceMetaInfo("1.0", 1234));
+        members.get(2).register(createServiceMetaInfo("1.0", 1235));
+        members.get(3).register(createServiceMetaInfo("2.0", 1234));
+
+        for (GossipRegistry member : members) {
+            awaitTrue(() -> member.serviceDiscovery("myService:1.0").size() == 2
+                    && member.serviceDiscovery("myService:2.0").size() == 1);
+        }
+        Assert.assertTrue(seed.serviceDiscovery("otherService:1.0").isEmpty());
+    }
+
+    @Test
+    public void testUnregisterPropagates() throws Exception {
+        GossipRegistry provider = start(null);
+        GossipRegistry consumer = start(provider.getMemberId());
+
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        provider.register(createServiceMetaInfo("1.0", 1235));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 2);
+
+        provider.unregister(createServiceMetaInfo("1.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        Assert.assertEquals(Integer.valueOf(1235),
+                consumer.serviceDiscovery("myService:1.0").get(0).getServicePort());
+    }
+
+    @Test
+    public void testFailedMemberIsRemoved() throws Exception {
+        GossipRegistry seed = start(null);
+        GossipRegistry consumer = start(seed.getMemberId());
+        GossipRegistry provider = start(seed.getMemberId());
+
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1
+                && seed.serviceDiscovery("myService:1.0").size() == 1);
+
+        // Crash without leaving: the others have to detect it
+        provider.close();
+        members.remove(provider);
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").isEmpty()
+                && seed.serviceDiscovery("myService:1.0").isEmpty());
+    }
+
+    private GossipRegistry start(String seed) {
+        RegistryConfig registryConfig = new RegistryConfig();
+        registryConfig.setRegistry(RegistryKeys.GOSSIP);
+        registryConfig.setAddress(seed == null ? "" : seed);
+        registryConfig.setGossipHost("127.0.0.1");
+        registryConfig.setGossipPort(0);
+        registryConfig.setGossipInterval(100L);
+        registryConfig.setGossipPingTimeout(50L);
+        GossipRegistry registry = new GossipRegistry();
+        registry.init(registryConfig);
+        members.add(registry);
+        return registry;
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceVersion, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceVersion(serviceVersion);
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
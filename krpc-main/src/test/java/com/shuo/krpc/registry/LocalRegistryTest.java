@@ -0,0 +1,140 @@
+package com.shuo.krpc.registry;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LocalRegistryTest {
+
+    public static class GreetingServiceImpl {
+        public String greet() {
+            return "hello";
+        }
+
+        public String greet(String name) {
+            return "hello " + name;
+        }
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("boom");
+        }
+
+        public static GreetingServiceImpl create() {
+            return new GreetingServiceImpl();
+        }
+    }
+
+    @BeforeClass
+    public static void register() {
+        LocalRegistry.register("greetingService", GreetingServiceImpl.class);
+    }
+
+    @Test
+    public void invokesOverloads() throws Throwable {
+        Object instance = LocalRegistry.getInstanceProvider("greetingService").acquire();
+        MethodInvoker noArgs = LocalRegistry.getInvoker("greetingService", "greet", null);
+        Assert.assertEquals("hello", noArgs.invoke(instance, null));
+        MethodInvoker oneArg = LocalRegistry.getInvoker("greetingService", "greet",
+                new Class[]{String.class});
+        Assert.assertEquals("hello krpc", oneArg.invoke(instance, new Object[]{"krpc"}));
+    }
+
+    @Test
+    public void unboxesPrimitives() throws Throwable {
+        MethodInvoker methodInvoker = LocalRegistry.getInvoker("greetingService", "add",
+                new Class[]{int.class, int.class});
+        Assert.assertEquals(3, methodInvoker.invoke(LocalRegistry.getInstanceProvider("greetingService").acquire(),
+                new Object[]{1, 2}));
+        Assert.assertEquals(int.class, methodInvoker.getReturnType());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagatesServiceException() throws Throwable {
+        LocalRegistry.getInvoker("greetingService", "fail", new Class[0])
+                .invoke(LocalRegistry.getInstanceProvider("greetingService").acquire(), null);
+    }
+
+    @Test
+    public void singletonScopeSharesInstance() {
+        ServiceInstanceProvider instanceProvider =
+                LocalRegistry.getInstanceProvider("greetingService");
+        Assert.assertSame(instanceProvider.acquire(), instanceProvider.acquire());
+    }
+
+    @Test
+    public void registersExistingInstance() {
+        GreetingServiceImpl bean = new GreetingServiceImpl();
+        LocalRegistry.register("beanService", bean);
+        Assert.assertSame(bean, LocalRegistry.getInstanceProvider("beanService").acquire());
+        Assert.assertEquals(GreetingServiceImpl.class, LocalRegistry.get("beanService"));
+    }
+
+    @Test
+    public void prototypeScopeCreatesInstancePerCall() {
+        LocalRegistry.register("prototypeService", GreetingServiceImpl.class,
+                ServiceScopeEnum.PROTOTYPE, LocalRegistry.DEFAULT_POOL_SIZE);
+        ServiceInstanceProvider instanceProvider =
+                LocalRegistry.getInstanceProvider("prototypeService");
+        Assert.assertNotSame(instanceProvider.acquire(), instanceProvider.acquire());
+    }
+
+    @Test
+    public void pooledScopeReusesBoundedInstances() throws Exception {
+        LocalRegistry.register("pooledService", GreetingServiceImpl.class,
+                ServiceScopeEnum.POOLED, 2);
+        ServiceInstanceProvider instanceProvider =
+                LocalRegistry.getInstanceProvider("pooledService");
+        Object first = instanceProvider.acquire();
+        Object second = instanceProvider.acquire();
+        Assert.assertNotSame(first, second);
+
+        instanceProvider.release(first);
+        Assert.assertSame(first, instanceProvider.acquire());
+        Assert.assertEquals(2, ((PooledInstanceProvider) instanceProvider).getCreatedCount());
+    }
+
+    @Test
+    public void pooledScopeWaitsForReleasedInstance() throws Exception {
+        PooledInstanceProvider instanceProvider =
+                new PooledInstanceProvider(GreetingServiceImpl.class, 1, 5000L);
+        Object first = instanceProvider.acquire();
+
+        // A second caller waits until the instance is released
+        CompletableFuture<Object> second = CompletableFuture.supplyAsync(instanceProvider::acquire);
+        Thread.sleep(100L);
+        Assert.assertFalse(second.isDone());
+        instanceProvider.release(first);
+        Assert.assertSame(first, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pooledScopeFailsWhenExhausted() {
+        PooledInstanceProvider instanceProvider =
+                new PooledInstanceProvider(GreetingServiceImpl.class, 1, 50L);
+        instanceProvider.acquire();
+        try {
+            instanceProvider.acquire();
+            Assert.fail("Expected the wait for an instance to time out");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Service instance pool exhausted"));
+        }
+        Assert.assertEquals(1, instanceProvider.getCreatedCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void skipsStaticMethods() {
+        LocalRegistry.getInvoker("greetingService", "create", null);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsUnknownMethod() {
+        LocalRegistry.getInvoker("greetingService", "greet", new Class[]{int.class});
+    }
+}
@@ -0,0 +1,142 @@
+package com.shuo.krpc.registry;
+
+import cn.hutool.json.JSONUtil;
+import com.github.fppt.jedismock.RedisServer;
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+public class RedisRegistryTest {
+
+    private RedisServer redisServer;
+
+    private RedisRegistry provider;
+
+    private RedisRegistry consumer;
+
+    @Before
+    public void init() throws Exception {
+        redisServer = RedisServer.newRedisServer().start();
+        RegistryConfig registryConfig = new RegistryConfig();
+        registryConfig.setRegistry(RegistryKeys.REDIS);
+        registryConfig.setAddress("redis://127.0.0.1:" + redisServer.getBindPort());
+        provider = new RedisRegistry();
+        provider.init(registryConfig);
+        consumer = new RedisRegistry();
+        consumer.init(registryConfig);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        consumer.destroy();
+        provider.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void testRegisterAndDiscover() {
+        provider.registerAll(Arrays.asList(createServiceMetaInfo("1.0", 1234),
+                createServiceMetaInfo("1.0", 1235), createServiceMetaInfo("2.0", 1234)));
+
+        Assert.assertEquals(2, consumer.serviceDiscovery("myService:1.0").size());
+        Assert.assertEquals(1, consumer.serviceDiscovery("myService:2.0").size());
+        Assert.assertTrue(consumer.serviceDiscovery("otherService:1.0").isEmpty());
+    }
+
+    @Test
+    public void testChangesArePushedToConsumers() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        List<ServiceMetaInfo> first = consumer.serviceDiscovery("myService:1.0");
+        Assert.assertEquals(1, first.size());
+
+        provider.register(createServiceMetaInfo("1.0", 1235));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 2);
+
+        provider.unregister(createServiceMetaInfo("1.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        Assert.assertEquals(Integer.valueOf(1235),
+                consumer.serviceDiscovery("myService:1.0").get(0).getServicePort());
+    }
+
+    @Test
+    public void testExpiredNodesAreSwept() {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+
+        // A node registered by a process that died without unregistering
+        ServiceMetaInfo dead = createServiceMetaInfo("1.0", 1235);
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + redisServer.getBindPort());
+        RedissonClient redissonClient = Redisson.create(config);
+        try {
+            RMap<String, String> nodeMap = redissonClient.getMap("rpc:{myService:1.0}:nodes",
+                    StringCodec.INSTANCE);
+            nodeMap.fastPut(dead.getServiceNodeKey(), JSONUtil.toJsonStr(dead));
+            redissonClient.getScoredSortedSet("rpc:{myService:1.0}:expiry", StringCodec.INSTANCE)
+                    .add(System.currentTimeMillis() - 1000, dead.getServiceNodeKey());
+
+            // Expired nodes are not discovered, and the next heartbeat removes them
+            List<ServiceMetaInfo> serviceMetaInfoList = consumer.serviceDiscovery("myService:1.0");
+            Assert.assertEquals(1, serviceMetaInfoList.size());
+            Assert.assertEquals(Integer.valueOf(1234), serviceMetaInfoList.get(0).getServicePort());
+            provider.renew();
+            consumer.sweep();
+            Assert.assertEquals(1, nodeMap.size());
+            Assert.assertFalse(nodeMap.containsKey(dead.getServiceNodeKey()));
+        } finally {
+            redissonClient.shutdown();
+        }
+    }
+
+    @Test
+    public void testRenewRestoresSweptNodes() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        Assert.assertEquals(1, consumer.serviceDiscovery("myService:1.0").size());
+
+        // The provider paused past its expiry and another process swept its node
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + redisServer.getBindPort());
+        RedissonClient redissonClient = Redisson.create(config);
+        try {
+            redissonClient.getScoredSortedSet("rpc:{myService:1.0}:expiry", StringCodec.INSTANCE)
+                    .add(System.currentTimeMillis() - 1000,
+                            createServiceMetaInfo("1.0", 1234).getServiceNodeKey());
+        } finally {
+            redissonClient.shutdown();
+        }
+        consumer.sweep();
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").isEmpty());
+
+        // Its next heartbeat brings the node back to consumers
+        provider.renew();
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceVersion, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceVersion(serviceVersion);
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
@@ -0,0 +1,79 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RegistryServiceCacheTest {
+
+    private static final String SERVICE_KEY = "myService:1.0";
+
+    @Test
+    public void testUpdatePublishesNewSnapshot() {
+        RegistryServiceCache registryServiceCache = new RegistryServiceCache();
+        ServiceSnapshot written = registryServiceCache.writeCache(SERVICE_KEY, Arrays.asList(
+                createServiceMetaInfo(1234), createServiceMetaInfo(1235)));
+        Assert.assertSame(written, registryServiceCache.readCache(SERVICE_KEY));
+
+        ServiceMetaInfo updated = createServiceMetaInfo(1235);
+        updated.setWeight(200);
+        registryServiceCache.updateCache(SERVICE_KEY, updated);
+        registryServiceCache.updateCache(SERVICE_KEY, createServiceMetaInfo(1236));
+
+        // The snapshot a reader already holds is never modified
+        Assert.assertEquals(2, written.size());
+        ServiceSnapshot current = registryServiceCache.readCache(SERVICE_KEY);
+        Assert.assertTrue(current.getVersion() > written.getVersion());
+        Assert.assertEquals(3, current.size());
+        Assert.assertTrue(current.contains(updated));
+
+        registryServiceCache.removeCache(SERVICE_KEY, updated.getServiceNodeKey());
+        Assert.assertEquals(2, registryServiceCache.readCache(SERVICE_KEY).size());
+        Assert.assertEquals(3, current.size());
+    }
+
+    @Test
+    public void testBatchUpdateAppliesChangesInOrder() {
+        RegistryServiceCache registryServiceCache = new RegistryServiceCache();
+        registryServiceCache.writeCache(SERVICE_KEY, Arrays.asList(
+                createServiceMetaInfo(1234), createServiceMetaInfo(1235)));
+
+        Map<String, ServiceMetaInfo> changes = new LinkedHashMap<>();
+        ServiceMetaInfo added = createServiceMetaInfo(1236);
+        changes.put(added.getServiceNodeKey(), added);
+        changes.put(createServiceMetaInfo(1234).getServiceNodeKey(), null);
+        registryServiceCache.updateCache(SERVICE_KEY, changes);
+
+        ServiceSnapshot current = registryServiceCache.readCache(SERVICE_KEY);
+        Assert.assertEquals(2, current.size());
+        Assert.assertEquals(Integer.valueOf(1235), current.get(0).getServicePort());
+        Assert.assertSame(added, current.get(1));
+    }
+
+    @Test
+    public void testUpdateIgnoresUncachedService() {
+        RegistryServiceCache registryServiceCache = new RegistryServiceCache();
+        registryServiceCache.updateCache(SERVICE_KEY, createServiceMetaInfo(1234));
+        Assert.assertNull(registryServiceCache.readCache(SERVICE_KEY));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        List<ServiceMetaInfo> snapshot = ServiceSnapshot.of(Arrays.asList(
+                createServiceMetaInfo(1234)));
+        snapshot.add(createServiceMetaInfo(1235));
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
@@ -0,0 +1,103 @@
+package com.shuo.krpc.registry;
+
+import com.shuo.krpc.config.RegistryConfig;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class ZooKeeperRegistryTest {
+
+    private TestingServer zooKeeperServer;
+
+    private ZooKeeperRegistry provider;
+
+    private ZooKeeperRegistry consumer;
+
+    @Before
+    public void init() throws Exception {
+        zooKeeperServer = new TestingServer();
+        RegistryConfig registryConfig = new RegistryConfig();
+        registryConfig.setRegistry(RegistryKeys.ZOOKEEPER);
+        registryConfig.setAddress(zooKeeperServer.getConnectString());
+        provider = new ZooKeeperRegistry();
+        provider.init(registryConfig);
+        consumer = new ZooKeeperRegistry();
+        consumer.init(registryConfig);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        consumer.destroy();
+        provider.destroy();
+        zooKeeperServer.close();
+    }
+
+    @Test
+    public void testRegisterAndDiscover() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        provider.register(createServiceMetaInfo("1.0", 1235));
+        provider.register(createServiceMetaInfo("2.0", 1234));
+
+        // The registry re-creates its nodes when its session reconnects, so a node may briefly
+        // vanish
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 2);
+        awaitTrue(() -> consumer.serviceDiscovery("myService:2.0").size() == 1);
+        Assert.assertTrue(consumer.serviceDiscovery("otherService:1.0").isEmpty());
+    }
+
+    @Test
+    public void testChangesOnlyTouchTheirService() throws Exception {
+        provider.register(createServiceMetaInfo("1.0", 1234));
+        provider.register(createServiceMetaInfo("2.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        awaitTrue(() -> consumer.serviceDiscovery("myService:2.0").size() == 1);
+        List<ServiceMetaInfo> other = consumer.serviceDiscovery("myService:2.0");
+
+        provider.register(createServiceMetaInfo("1.0", 1235));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 2);
+
+        provider.unregister(createServiceMetaInfo("1.0", 1234));
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+        Assert.assertEquals(Integer.valueOf(1235),
+                consumer.serviceDiscovery("myService:1.0").get(0).getServicePort());
+        // The other service keeps its cached list
+        Assert.assertSame(other, consumer.serviceDiscovery("myService:2.0"));
+    }
+
+    @Test
+    public void testAsyncRegisterAndUnregister() throws Exception {
+        provider.registerAsync(createServiceMetaInfo("1.0", 1234)).get(5, TimeUnit.SECONDS);
+        // Registering a node that already exists replaces it
+        provider.registerAsync(createServiceMetaInfo("1.0", 1234)).get(5, TimeUnit.SECONDS);
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").size() == 1);
+
+        provider.unregisterAsync(createServiceMetaInfo("1.0", 1234)).get(5, TimeUnit.SECONDS);
+        awaitTrue(() -> consumer.serviceDiscovery("myService:1.0").isEmpty());
+        // Unregistering a node that is already gone succeeds
+        provider.unregisterAsync(createServiceMetaInfo("1.0", 1234)).get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo(String serviceVersion, int servicePort) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("myService");
+        serviceMetaInfo.setServiceVersion(serviceVersion);
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(servicePort);
+        return serviceMetaInfo;
+    }
+}
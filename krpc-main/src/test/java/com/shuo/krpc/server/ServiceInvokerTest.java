@@ -0,0 +1,51 @@
+package com.shuo.krpc.server;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.registry.LocalRegistry;
+import com.shuo.krpc.registry.ServiceInstanceProvider;
+import com.shuo.krpc.registry.ServiceScopeEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ServiceInvokerTest {
+
+    private static final CompletableFuture<String> PENDING = new CompletableFuture<>();
+
+    public static class AsyncServiceImpl {
+        public CompletableFuture<String> load() {
+            return PENDING;
+        }
+    }
+
+    @Test
+    public void answersAsyncMethodOnceCompleted() {
+        LocalRegistry.register("asyncService", AsyncServiceImpl.class, ServiceScopeEnum.POOLED, 1);
+        ServiceInstanceProvider instanceProvider =
+                LocalRegistry.getInstanceProvider("asyncService");
+        AtomicReference<RpcResponse> response = new AtomicReference<>();
+        ServiceInvoker.invoke(RpcRequest.builder()
+                .serviceName("asyncService")
+                .methodName("load")
+                .parameterTypes(new Class[0])
+                .args(new Object[0])
+                .build(), response::set);
+
+        // The future itself is not sent, and the instance stays busy until it completes
+        Assert.assertNull(response.get());
+        try {
+            instanceProvider.acquire();
+            Assert.fail("Expected the instance to be kept by the pending call");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Service instance pool exhausted"));
+        }
+
+        PENDING.complete("done");
+        Assert.assertEquals("done", response.get().getData());
+        Assert.assertEquals(String.class, response.get().getDataType());
+        instanceProvider.release(instanceProvider.acquire());
+    }
+}
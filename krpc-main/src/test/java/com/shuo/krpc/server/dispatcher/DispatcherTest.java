@@ -0,0 +1,57 @@
+package com.shuo.krpc.server.dispatcher;
+
+import com.shuo.krpc.config.RpcConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DispatcherTest {
+
+    @Test
+    public void inlineRunsOnCaller() {
+        Dispatcher dispatcher = DispatcherFactory.getInstance(DispatcherKeys.INLINE);
+        dispatcher.init(new RpcConfig());
+        Thread caller = Thread.currentThread();
+        Thread[] runner = new Thread[1];
+        dispatcher.dispatch(() -> runner[0] = Thread.currentThread());
+        Assert.assertSame(caller, runner[0]);
+    }
+
+    @Test
+    public void workerPoolRejectsWhenFull() throws InterruptedException {
+        RpcConfig rpcConfig = new RpcConfig();
+        rpcConfig.setWorkerThreads(1);
+        rpcConfig.setWorkerQueueCapacity(1);
+        Dispatcher dispatcher = new WorkerPoolDispatcher();
+        dispatcher.init(rpcConfig);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        dispatcher.dispatch(blocking);
+        dispatcher.dispatch(blocking);
+        try {
+            dispatcher.dispatch(() -> {
+            });
+            Assert.fail("Expected the full worker pool to reject the task");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        DispatcherStats stats = dispatcher.getStats();
+        Assert.assertEquals(0, stats.getQueueDepth());
+        Assert.assertEquals(2, stats.getStartedCount());
+    }
+}
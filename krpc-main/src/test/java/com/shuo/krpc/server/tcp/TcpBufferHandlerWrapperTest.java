@@ -0,0 +1,79 @@
+package com.shuo.krpc.server.tcp;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.protocol.ProtocolConstant;
+import com.shuo.krpc.protocol.ProtocolMessage;
+import com.shuo.krpc.protocol.ProtocolMessageDecoder;
+import com.shuo.krpc.protocol.ProtocolMessageEncoder;
+import com.shuo.krpc.protocol.ProtocolMessageSerializerEnum;
+import com.shuo.krpc.protocol.ProtocolMessageStatusEnum;
+import com.shuo.krpc.protocol.ProtocolMessageTypeEnum;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TcpBufferHandlerWrapperTest {
+
+    @Test
+    public void assemblesMessagesAcrossArbitraryChunks() throws IOException {
+        Buffer stream = Buffer.buffer();
+        for (int i = 0; i < 3; i++) {
+            stream.appendBuffer(ProtocolMessageEncoder.encode(createMessage(i, "method-" + i)));
+        }
+
+        // Split the stream at every chunk size, including single bytes and whole messages
+        for (int chunkSize = 1; chunkSize <= stream.length(); chunkSize += 7) {
+            List<ProtocolMessage<?>> messages = new ArrayList<>();
+            TcpBufferHandlerWrapper wrapper = new TcpBufferHandlerWrapper(buffer -> {
+                try {
+                    messages.add(ProtocolMessageDecoder.decode(buffer));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            for (int start = 0; start < stream.length(); start += chunkSize) {
+                wrapper.handle(stream.getBuffer(start,
+                        Math.min(start + chunkSize, stream.length())));
+            }
+
+            Assert.assertEquals(3, messages.size());
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(i, messages.get(i).getHeader().getRequestId());
+                Assert.assertEquals("method-" + i,
+                        ((RpcRequest) messages.get(i).getBody()).getMethodName());
+            }
+        }
+    }
+
+    @Test
+    public void reportsCorruptLengthOnceAndDiscardsStream() throws IOException {
+        List<Buffer> frames = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        TcpBufferHandlerWrapper wrapper = new TcpBufferHandlerWrapper(frames::add, errors::add);
+        Buffer corrupt = ProtocolMessageEncoder.encode(createMessage(0, "method"));
+        corrupt.setInt(13, -1);
+
+        wrapper.handle(corrupt);
+        wrapper.handle(ProtocolMessageEncoder.encode(createMessage(1, "method")));
+        Assert.assertTrue(frames.isEmpty());
+        Assert.assertEquals(1, errors.size());
+    }
+
+    private ProtocolMessage<RpcRequest> createMessage(long requestId, String methodName) {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum.JDK.getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
+        header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+        header.setRequestId(requestId);
+        RpcRequest rpcRequest = new RpcRequest();
+        rpcRequest.setServiceName("myService");
+        rpcRequest.setMethodName(methodName);
+        return new ProtocolMessage<>(header, rpcRequest);
+    }
+}
@@ -0,0 +1,184 @@
+package com.shuo.krpc.server.tcp;
+
+import com.shuo.krpc.model.RpcRequest;
+import com.shuo.krpc.model.RpcResponse;
+import com.shuo.krpc.model.ServiceMetaInfo;
+import com.shuo.krpc.protocol.ProtocolConstant;
+import com.shuo.krpc.protocol.ProtocolMessageTypeEnum;
+import com.shuo.krpc.registry.LocalRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class VertxTcpClientTest {
+
+    private static final int PORT = 18081;
+
+    public static class EchoServiceImpl {
+        public String echo(String message) {
+            return message;
+        }
+
+        public CompletableFuture<String> echoAsync(String message) {
+            return CompletableFuture.supplyAsync(() -> message);
+        }
+
+        public CompletableFuture<String> never(String message) {
+            return new CompletableFuture<>();
+        }
+    }
+
+    @BeforeClass
+    public static void startServer() throws InterruptedException {
+        LocalRegistry.register("echoService", EchoServiceImpl.class);
+        new VertxTcpServer().doStart(PORT);
+        // Wait for the server to bind
+        Thread.sleep(1000L);
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCorrelated() throws Exception {
+        ServiceMetaInfo serviceMetaInfo = createServiceMetaInfo();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        List<Future<RpcResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            RpcRequest rpcRequest = RpcRequest.builder()
+                    .serviceName("echoService")
+                    .methodName("echo")
+                    .parameterTypes(new Class[]{String.class})
+                    .args(new Object[]{"message-" + i})
+                    .build();
+            futures.add(executorService.submit(() ->
+                    VertxTcpClient.doRequest(rpcRequest, serviceMetaInfo)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals("message-" + i, futures.get(i).get().getData());
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testAsyncRequestToAsyncService() throws Exception {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .serviceName("echoService")
+                .methodName("echoAsync")
+                .parameterTypes(new Class[]{String.class})
+                .args(new Object[]{"async"})
+                .build();
+        CompletableFuture<RpcResponse> responseFuture =
+                VertxTcpClient.doRequestAsync(rpcRequest, createServiceMetaInfo());
+        Assert.assertEquals("async", responseFuture.get(5, TimeUnit.SECONDS).getData());
+    }
+
+    @Test
+    public void testRequestTimesOut() throws Exception {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .serviceName("echoService")
+                .methodName("never")
+                .parameterTypes(new Class[]{String.class})
+                .args(new Object[]{"lost"})
+                .build();
+        try {
+            VertxTcpClient.doRequest(rpcRequest, createServiceMetaInfo(), 200);
+            Assert.fail("Expected the request to time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testDeadlineCoversConnecting() throws Exception {
+        // A listener whose backlog is full leaves further connection attempts pending
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<Socket> queued = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Socket socket = new Socket();
+                socket.connect(serverSocket.getLocalSocketAddress(), 1000);
+                queued.add(socket);
+            }
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceHost(InetAddress.getLoopbackAddress().getHostAddress());
+            serviceMetaInfo.setServicePort(serverSocket.getLocalPort());
+            RpcRequest rpcRequest = RpcRequest.builder()
+                    .serviceName("echoService")
+                    .methodName("echo")
+                    .parameterTypes(new Class[]{String.class})
+                    .args(new Object[]{"unreachable"})
+                    .build();
+
+            long startMillis = System.currentTimeMillis();
+            try {
+                VertxTcpClient.doRequest(rpcRequest, serviceMetaInfo, 200);
+                Assert.fail("Expected the request to time out");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            Assert.assertTrue(System.currentTimeMillis() - startMillis < 5000);
+            for (Socket socket : queued) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUndecodableResponseFailsRequest() throws Exception {
+        // A provider answering every request with a body that cannot be deserialized
+        Vertx vertx = Vertx.vertx();
+        NetServer netServer = vertx.createNetServer().connectHandler(socket ->
+                socket.handler(new TcpBufferHandlerWrapper(request -> {
+                    Buffer response = request.getBuffer(0, ProtocolConstant.MESSAGE_HEADER_LENGTH);
+                    response.setByte(3, (byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
+                    response.setInt(13, 4);
+                    socket.write(response.appendInt(0xDEADBEEF));
+                })));
+        try {
+            int port = netServer.listen(0).toCompletionStage().toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS).actualPort();
+            ServiceMetaInfo serviceMetaInfo = createServiceMetaInfo();
+            serviceMetaInfo.setServicePort(port);
+            RpcRequest rpcRequest = RpcRequest.builder()
+                    .serviceName("echoService")
+                    .methodName("echo")
+                    .parameterTypes(new Class[]{String.class})
+                    .args(new Object[]{"garbled"})
+                    .build();
+
+            // Without a deadline the request would otherwise wait forever
+            try {
+                VertxTcpClient.doRequestAsync(rpcRequest, serviceMetaInfo, 0)
+                        .get(5, TimeUnit.SECONDS);
+                Assert.fail("Expected the request to fail");
+            } catch (ExecutionException e) {
+                Assert.assertEquals("Protocol message decoding error", e.getCause().getMessage());
+                Assert.assertNotNull(e.getCause().getCause());
+            }
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private ServiceMetaInfo createServiceMetaInfo() {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("echoService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(PORT);
+        return serviceMetaInfo;
+    }
+}
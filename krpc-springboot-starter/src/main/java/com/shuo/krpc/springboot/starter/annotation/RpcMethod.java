@@ -0,0 +1,33 @@
+package com.shuo.krpc.springboot.starter.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * RPC Method Annotation (for method-level reference settings)
+ * <p>
+ * This annotation is used inside {@link RpcReference#methods()} to override the reference-level
+ * settings for a single method of the service interface.
+ *
+ * @author <a href="https://github.com/Kev1nWangsus">shuo</a>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface RpcMethod {
+
+    /**
+     * Method name
+     *
+     * @return The name of the service interface method these settings apply to.
+     */
+    String name();
+
+    /**
+     * Call timeout in milliseconds
+     *
+     * @return The timeout, or 0 to use the reference-level setting.
+     */
+    long timeout() default 0;
+}
@@ -63,6 +63,20 @@ public @interface RpcReference {
      */
     String toleranceStrategy() default ToleranceStrategyKeys.FAIL_FAST;
 
+    /**
+     * Call timeout in milliseconds for all methods of the service
+     *
+     * @return The timeout, or 0 to use the global configuration.
+     */
+    long timeout() default 0;
+
+    /**
+     * Method-level settings
+     *
+     * @return The settings overriding the reference-level ones for individual methods.
+     */
+    RpcMethod[] methods() default {};
+
     /**
      * Developer mock mode
      *
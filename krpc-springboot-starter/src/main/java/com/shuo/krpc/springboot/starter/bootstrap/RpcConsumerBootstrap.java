@@ -1,6 +1,8 @@
 package com.shuo.krpc.springboot.starter.bootstrap;
 
+import com.shuo.krpc.config.ReferenceConfig;
 import com.shuo.krpc.proxy.ServiceProxyFactory;
+import com.shuo.krpc.springboot.starter.annotation.RpcMethod;
 import com.shuo.krpc.springboot.starter.annotation.RpcReference;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
@@ -46,7 +48,8 @@ public class RpcConsumerBootstrap implements BeanPostProcessor {
                     interfaceClass = field.getType();
                 }
                 field.setAccessible(true);
-                Object proxyObject = ServiceProxyFactory.getProxy(interfaceClass);
+                Object proxyObject = ServiceProxyFactory.getProxy(interfaceClass,
+                        buildReferenceConfig(rpcReference));
                 try {
                     field.set(bean, proxyObject);
                     field.setAccessible(false);
@@ -57,4 +60,24 @@ public class RpcConsumerBootstrap implements BeanPostProcessor {
         }
         return BeanPostProcessor.super.postProcessAfterInitialization(bean, beanName);
     }
+
+    /**
+     * Builds the reference settings from the annotation, leaving unset values to the global
+     * configuration.
+     *
+     * @param rpcReference The annotation on the injected field.
+     * @return The reference settings.
+     */
+    private ReferenceConfig buildReferenceConfig(RpcReference rpcReference) {
+        ReferenceConfig referenceConfig = new ReferenceConfig();
+        if (rpcReference.timeout() > 0) {
+            referenceConfig.setTimeout(rpcReference.timeout());
+        }
+        for (RpcMethod rpcMethod : rpcReference.methods()) {
+            if (rpcMethod.timeout() > 0) {
+                referenceConfig.getMethodTimeouts().put(rpcMethod.name(), rpcMethod.timeout());
+            }
+        }
+        return referenceConfig;
+    }
 }
@@ -52,8 +52,9 @@ public class RpcProviderBootstrap implements BeanPostProcessor {
             String serviceVersion = rpcService.serviceVersion();
 
             // 2. Register the service
-            // Local registration
-            LocalRegistry.register(serviceName, beanClass);
+            // Local registration of the Spring-managed bean itself, so its injected
+            // dependencies and lifecycle are kept
+            LocalRegistry.register(serviceName, bean);
 
             // Global configuration
             final RpcConfig rpcConfig = RpcApplication.getRpcConfig();
@@ -65,6 +66,9 @@ public class RpcProviderBootstrap implements BeanPostProcessor {
             serviceMetaInfo.setServiceVersion(serviceVersion);
             serviceMetaInfo.setServiceHost(rpcConfig.getServerHost());
             serviceMetaInfo.setServicePort(rpcConfig.getServerPort());
+            serviceMetaInfo.setWeight(rpcConfig.getWeight());
+            serviceMetaInfo.setWarmup(rpcConfig.getWarmup());
+            serviceMetaInfo.setRegisterTime(System.currentTimeMillis());
             try {
                 registry.register(serviceMetaInfo);
             } catch (Exception e) {